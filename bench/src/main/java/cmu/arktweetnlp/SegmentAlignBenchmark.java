@@ -0,0 +1,245 @@
+package cmu.arktweetnlp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cmu.arktweetnlp.bench.TweetGenerator;
+
+/**
+ * The raw/tokenized alignment and the whitespace growing of simpleSegment,
+ * the old substring-and-regex way against the current char-by-char way.
+ *
+ * Setup checks that both produce the very same output on every tweet first,
+ * including the same failure on tweets that don't align at all (those are
+ * then left out). This lives in cmu.arktweetnlp, as align is package-private.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SegmentAlignBenchmark {
+
+    @Param({ "default" })
+    public String mix;
+
+    @Param({ "140" })
+    public int length;
+
+    @Param({ "42" })
+    public long seed;
+
+    private static final Pattern WHITESPACE = Pattern.compile("[\\s\\p{Zs}]+", Pattern.UNICODE_CHARACTER_CLASS);
+
+    private String[] raw;
+    private String[] tok;
+    private SpanList[] spans;
+    private final StringBuilder sb = new StringBuilder();
+    private int next;
+
+    @Setup
+    public void setup() {
+        Twokenizer tk = Twokenizer.DEFAULT;
+        List<String> rawList = new ArrayList<String>(), tokList = new ArrayList<String>();
+        List<SpanList> spanList = new ArrayList<SpanList>();
+        for (String tweet : new TweetGenerator(seed, mix, Math.max(1, length / 4), length).tweets(1024)) {
+            String line = tk.normalizeTextForTagger(tweet);
+            String r = tk.squeezeWhitespace(line);
+            String t = join(tk.tokenize(line));
+            SpanList sp = tk.separatorSpans(r);
+            String expected;
+            try {
+                expected = legacyAlign(r, sp, t);
+            } catch (RuntimeException e) {
+                try {
+                    Twokenizer.align(r, sp, t, new StringBuilder(), null);
+                } catch (RuntimeException e2) {
+                    if (!String.valueOf(e.getMessage()).equals(String.valueOf(e2.getMessage())))
+                        throw new AssertionError("different failure on: " + line);
+                    continue;
+                }
+                throw new AssertionError("old alignment fails, new one doesn't on: " + line);
+            }
+            StringBuilder current = new StringBuilder();
+            Twokenizer.align(r, sp, t, current, null);
+            if (!expected.equals(current.toString()))
+                throw new AssertionError("alignment differs on: " + line);
+            if (legacyGrowSum(r, sp) != growSum(r, sp))
+                throw new AssertionError("whitespace growing differs on: " + line);
+            rawList.add(r);
+            tokList.add(t);
+            spanList.add(sp);
+        }
+        raw = rawList.toArray(new String[0]);
+        tok = tokList.toArray(new String[0]);
+        spans = spanList.toArray(new SpanList[0]);
+    }
+
+    private int next() {
+        int i = next;
+        next = i + 1 == raw.length ? 0 : i + 1;
+        return i;
+    }
+
+    @Benchmark
+    public String alignLegacy() {
+        int i = next();
+        return legacyAlign(raw[i], spans[i], tok[i]);
+    }
+
+    @Benchmark
+    public int align() {
+        int i = next();
+        sb.setLength(0);
+        Twokenizer.align(raw[i], spans[i], tok[i], sb, null);
+        return sb.length();
+    }
+
+    @Benchmark
+    public long growLegacy() {
+        int i = next();
+        return legacyGrowSum(raw[i], spans[i]);
+    }
+
+    @Benchmark
+    public long grow() {
+        int i = next();
+        return growSum(raw[i], spans[i]);
+    }
+
+    private static String join(List<String> tokens) {
+        StringBuilder sb = new StringBuilder();
+        for (String t : tokens) {
+            if (sb.length() > 0)
+                sb.append(' ');
+            sb.append(t);
+        }
+        return sb.toString();
+    }
+
+    // Grows every span endpoint over whitespace, like simpleSegmentRaw does; the sums are compared.
+    private static long growSum(String rawtext, SpanList spans) {
+        long sum = 0;
+        for (int i = 0; i < spans.size(); i++) {
+            int start = spans.start(i), end = spans.end(i);
+            while (start > 0 && CharTables.isWhitespace(rawtext.charAt(start-1)))
+                start--;
+            while (end < rawtext.length() - 1 && CharTables.isWhitespace(rawtext.charAt(end)))
+                end++;
+            sum += start + 31 * end;
+        }
+        return sum;
+    }
+
+    private static long legacyGrowSum(String rawtext, SpanList spans) {
+        long sum = 0;
+        Matcher whitespace = WHITESPACE.matcher("");
+        for (int i = 0; i < spans.size(); i++) {
+            int start = spans.start(i), end = spans.end(i);
+            while (start > 0 && whitespace.reset(rawtext.substring(start-1, start)).matches())
+                start--;
+            while (end < rawtext.length() - 1 && whitespace.reset(rawtext.substring(end, end+1)).matches())
+                end++;
+            sum += start + 31 * end;
+        }
+        return sum;
+    }
+
+    // The alignment loop of simpleSegment as it was, substrings and all.
+    private static String legacyAlign(String rawtext, SpanList rawSegments, String tokenized) {
+      StringBuilder segInstr = new StringBuilder();
+      int[] stateChangeIndices = new int[2 * rawSegments.size() + 1];
+      for(int i = 0; i < rawSegments.size(); i++){
+          stateChangeIndices[2*i] = rawSegments.start(i);
+          stateChangeIndices[2*i+1] = rawSegments.end(i);
+      }
+      stateChangeIndices[stateChangeIndices.length - 1] = rawtext.length();
+
+      int iRaw = 0, iTok = 0;
+      boolean isSep = false;
+      boolean first = true;
+      for(int iSC : stateChangeIndices) {
+        if(iRaw == rawtext.length())
+          break;
+        if(first && stateChangeIndices[0] == 0) {
+          first = false;
+          isSep = !isSep;
+          continue;
+        } else
+          first = false;
+
+        segInstr.append(isSep ? "sep\t" : "text\t");
+        boolean afterFirstNonSpace = false;
+        while(iRaw < iSC) {
+          char cTok = tokenized.charAt(iTok);
+          char cRaw = rawtext.charAt(iRaw);
+          String tok3 = (iTok < tokenized.length() - 2) ?
+                          tokenized.substring(iTok, iTok+3) :
+                        (iTok < tokenized.length() - 1) ?
+                          tokenized.substring(iTok, iTok+2) :
+                        "XX";
+          String raw3 = (iRaw < rawtext.length() - 2) ?
+                          rawtext.substring(iRaw, iRaw+3) :
+                        (iRaw < rawtext.length() - 1) ?
+                          rawtext.substring(iRaw, iRaw+2) :
+                        "XX";
+          if(cTok == cRaw
+              || cTok == '“' && (cRaw == '"' || cRaw == '«' || cRaw == '”')
+              || cTok == '”' && (cRaw == '"' || cRaw == '»' || cRaw == '“')
+              ) {
+            segInstr.append(cTok);
+            iRaw++;
+            iTok++;
+            afterFirstNonSpace = true;
+          } else if ((cTok == '“' || cTok == '”')
+                    && raw3.substring(0,2).equals("''")) {
+            segInstr.append(cTok);
+            iRaw += 2;
+            iTok++;
+            afterFirstNonSpace = true;
+          } else if (tok3.substring(0,2).equals("--")
+                    && (cRaw == '–' || cRaw == '—')) {
+            segInstr.append("--");
+            iRaw++;
+            iTok += 2;
+            afterFirstNonSpace = true;
+          } else if ((cTok == '…') && raw3.equals("...")) {
+            segInstr.append(cTok);
+            iRaw += 3;
+            iTok++;
+            afterFirstNonSpace = true;
+          } else if (tok3.equals("...") && (cRaw == '…')) {
+            segInstr.append("...");
+            iRaw++;
+            iTok += 3;
+            afterFirstNonSpace = true;
+          } else if (cTok == ' ') {
+            if(!isSep && afterFirstNonSpace)
+              segInstr.append(' ');
+            iTok++;
+          } else {
+            throw new RuntimeException("Unsure about cTok '"+cTok+"' and cRaw '"+cRaw+"'");
+          }
+        }
+        segInstr.append("\n");
+        isSep = !isSep;
+      }
+      return segInstr.toString();
+    }
+}
@@ -0,0 +1,52 @@
+package cmu.arktweetnlp.bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cmu.arktweetnlp.Segmentation;
+import cmu.arktweetnlp.Twokenize;
+import cmu.arktweetnlp.Twokenizer;
+
+/**
+ * The very first call in a fresh JVM: class loading, pattern compilation and
+ * all. Every fork runs one call and nothing before it, so nothing of ours has
+ * been loaded yet. For the time a whole process takes to its first line
+ * (JVM startup included, e.g. with and without an AppCDS archive), see
+ * {@link StartupTimer}.
+ *
+ * Try it with a class data sharing archive made by the parent's appcds profile:
+ * -jvmArgsAppend -XX:SharedArchiveFile=../target/twokenize.jsa (and the library
+ * jar first on the class path, as the archive wants).
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(20)
+public class StartupBenchmark {
+
+    private static final String TWEET = "RT @someone: Check this out http://t.co/AbC123xyz :) #awesome &lt;3";
+
+    @Benchmark
+    public List<String> firstTokenize() {
+        return Twokenize.tokenizeRawTweetText(TWEET);
+    }
+
+    @Benchmark
+    public List<String> firstTokenizeScanner() {
+        return Twokenizer.builder().engine(Twokenizer.Engine.SCANNER).build().tokenizeRawTweetText(TWEET);
+    }
+
+    @Benchmark
+    public Segmentation firstTokenizeAndSegment() {
+        return Twokenize.tokenizeAndSegment(Twokenize.normalizeTextForTagger(TWEET));
+    }
+}
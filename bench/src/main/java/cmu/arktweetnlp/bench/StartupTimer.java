@@ -0,0 +1,73 @@
+package cmu.arktweetnlp.bench;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Times whole processes from launch to their first line of output, JVM
+ * startup included, which JMH's forks can't see. By default it runs the
+ * Twokenize CLI on this JVM's class path; after "--" give any other command,
+ * e.g. the same one with -XX:SharedArchiveFile=target/twokenize.jsa, to see
+ * what an AppCDS archive buys.
+ *
+ *   java -cp target/benchmarks.jar cmu.arktweetnlp.bench.StartupTimer -runs 20
+ *   java -cp target/benchmarks.jar cmu.arktweetnlp.bench.StartupTimer -- java -XX:SharedArchiveFile=../target/twokenize.jsa -jar ../target/twokenize-1.0-SNAPSHOT.jar
+ */
+public class StartupTimer {
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int runs = 10;
+        String line = "RT @someone: Check this out http://t.co/AbC123xyz :) #awesome &lt;3";
+        List<String> command = null;
+        for (int a = 0; a < args.length; a++) {
+            if (args[a].equals("-runs") && a + 1 < args.length)
+                runs = Integer.parseInt(args[++a]);
+            else if (args[a].equals("-line") && a + 1 < args.length)
+                line = args[++a];
+            else if (args[a].equals("--") && a + 1 < args.length) {
+                command = Arrays.asList(args).subList(a + 1, args.length);
+                break;
+            } else
+                throw new IllegalArgumentException("unknown argument " + args[a]
+                        + "; usage: [-runs N] [-line TEXT] [-- command ...]");
+        }
+        if (command == null) {
+            command = new ArrayList<String>();
+            command.add(System.getProperty("java.home") + "/bin/java");
+            command.add("-cp");
+            command.add(System.getProperty("java.class.path"));
+            command.add("cmu.arktweetnlp.Twokenize");
+        }
+
+        long[] millis = new long[runs];
+        for (int r = 0; r < runs; r++) {
+            millis[r] = time(command, line);
+            System.err.printf("run %d: %d ms%n", r + 1, millis[r]);
+        }
+        Arrays.sort(millis);
+        System.out.printf("%s%nruns=%d min=%d median=%d max=%d ms%n",
+                command, runs, millis[0], millis[runs / 2], millis[runs - 1]);
+    }
+
+    /** Launches command, feeds it line, and waits for the first line it prints. */
+    private static long time(List<String> command, String line) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        Process p = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+        OutputStream in = p.getOutputStream();
+        in.write((line + "\n").getBytes("UTF-8"));
+        in.close();
+        BufferedReader out = new BufferedReader(new InputStreamReader(p.getInputStream(), "UTF-8"));
+        if (out.readLine() == null)
+            throw new IOException(command + " printed nothing, exit status " + p.waitFor());
+        long elapsed = (System.nanoTime() - start) / 1000000;
+        while (out.readLine() != null)
+            ;
+        p.waitFor();
+        return elapsed;
+    }
+}
@@ -0,0 +1,170 @@
+package cmu.arktweetnlp.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import cmu.arktweetnlp.Segmentation;
+import cmu.arktweetnlp.TokenSpans;
+import cmu.arktweetnlp.Twokenize;
+import cmu.arktweetnlp.Twokenizer;
+
+/**
+ * One benchmark per public entry point, each call on the next tweet of a
+ * generated corpus (see {@link TweetGenerator}).
+ *
+ * Every benchmark runs in throughput mode (ops/us) and in sample mode, which
+ * reports the per-call latency percentiles. Add "-prof gc" for the allocation
+ * rate, or run main(), which does.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TwokenizeBenchmark {
+
+    /** A TweetGenerator mix: default, plain, entities, links, emotes or kind=weight,... */
+    @Param({ "default" })
+    public String mix;
+
+    /** Maximum tweet length; tweets are between a quarter of it and all of it. */
+    @Param({ "140", "280" })
+    public int length;
+
+    @Param({ "42" })
+    public long seed;
+
+    private static final int CORPUS = 1024;  // a power of two
+
+    private String[] raw;         // HTML-escaped, as they come from Twitter
+    private String[] normalized;  // unescaped, what tokenize expects
+    // simpleSegment wants a raw text and its tokenization that line up; the
+    // few tweets where they don't are left out
+    private String[] segmentRaw;
+    private String[] segmentTokenized;
+    private final TokenSpans spans = new TokenSpans();
+    // big enough for the whole corpus, so after warmup every call is a hit
+    private final Twokenizer cached = Twokenizer.builder().cache(1 << 20).build();
+    private int next;
+
+    @Setup
+    public void setup() {
+        raw = new TweetGenerator(seed, mix, Math.max(1, length / 4), length).tweets(CORPUS);
+        normalized = new String[CORPUS];
+        List<String> segRaw = new ArrayList<String>(), segTok = new ArrayList<String>();
+        for (int i = 0; i < CORPUS; i++) {
+            normalized[i] = Twokenize.normalizeTextForTagger(raw[i]);
+            String tokenized = join(Twokenize.tokenize(normalized[i]));
+            try {
+                Twokenize.simpleSegment(normalized[i], tokenized);
+                segRaw.add(normalized[i]);
+                segTok.add(tokenized);
+            } catch (RuntimeException e) {
+                // doesn't align, see above
+            }
+        }
+        // keep the arrays CORPUS long, so next() works for them as well
+        segmentRaw = new String[CORPUS];
+        segmentTokenized = new String[CORPUS];
+        for (int i = 0; i < CORPUS; i++) {
+            segmentRaw[i] = segRaw.get(i % segRaw.size());
+            segmentTokenized[i] = segTok.get(i % segTok.size());
+        }
+    }
+
+    private static String join(List<String> tokens) {
+        StringBuilder sb = new StringBuilder();
+        for (String t : tokens) {
+            if (sb.length() > 0)
+                sb.append(' ');
+            sb.append(t);
+        }
+        return sb.toString();
+    }
+
+    private int next() {
+        int i = next;
+        next = (i + 1) & (CORPUS - 1);
+        return i;
+    }
+
+    @Benchmark
+    public List<String> tokenize() {
+        return Twokenize.tokenize(normalized[next()]);
+    }
+
+    @Benchmark
+    public int tokenizeSpans() {
+        return Twokenizer.DEFAULT.tokenize(normalized[next()], spans);
+    }
+
+    @Benchmark
+    public List<String> tokenizeRawTweetText() {
+        return Twokenize.tokenizeRawTweetText(raw[next()]);
+    }
+
+    /** The same with a result cache, as for a firehose of retweets. */
+    @Benchmark
+    public List<String> tokenizeRawTweetTextCached() {
+        return cached.tokenizeRawTweetText(raw[next()]);
+    }
+
+    @Benchmark
+    public String normalizeTextForTagger() {
+        return Twokenize.normalizeTextForTagger(raw[next()]);
+    }
+
+    @Benchmark
+    public String splitEdgePunct() {
+        return Twokenize.splitEdgePunct(normalized[next()]);
+    }
+
+    @Benchmark
+    public String squeezeWhitespace() {
+        return Twokenize.squeezeWhitespace(normalized[next()]);
+    }
+
+    @Benchmark
+    public String simpleSegment() {
+        int i = next();
+        return Twokenize.simpleSegment(segmentRaw[i], segmentTokenized[i]);
+    }
+
+    @Benchmark
+    public Segmentation segment() {
+        int i = next();
+        return Twokenize.segment(segmentRaw[i], segmentTokenized[i]);
+    }
+
+    @Benchmark
+    public Segmentation tokenizeAndSegment() {
+        return Twokenize.tokenizeAndSegment(normalized[next()]);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(TwokenizeBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,140 @@
+package cmu.arktweetnlp;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Runs a per-line function over one or more line-aligned inputs on a pool of
+ * worker threads, writing the results in input order.
+ *
+ * Lines are read in chunks; every chunk becomes one task. Pending chunks sit in
+ * a bounded queue, so the reader blocks (and memory stays bounded) whenever the
+ * writer falls behind.
+ */
+final class BatchRunner {
+
+    /** Turns one input record (one line per input, same line number) into output text. */
+    interface LineFunction {
+        void apply(String[] record, StringBuilder out);
+    }
+
+    private final int threads;
+    private final int chunkSize;
+
+    BatchRunner(int threads, int chunkSize) {
+        if (threads < 1)
+            throw new IllegalArgumentException("threads must be positive, got " + threads);
+        if (chunkSize < 1)
+            throw new IllegalArgumentException("chunkSize must be positive, got " + chunkSize);
+        this.threads = threads;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Reads the inputs in lockstep until any of them runs out, and writes the
+     * output of every record to out, in order. Does not close anything.
+     */
+    void run(final BufferedReader[] inputs, final LineFunction fn, Writer out) throws IOException {
+        final ExecutorService pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private int n = 0;
+            @Override
+            public synchronized Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "twokenize-worker-" + (n++));
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        // Two chunks per worker in flight is enough to keep everyone busy.
+        final BlockingQueue<Future<String>> pending = new ArrayBlockingQueue<Future<String>>(2 * threads);
+        final Future<String> endOfInput = new CompletableFuture<String>();
+        final IOException[] readError = new IOException[1];
+
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    List<String[]> chunk;
+                    while (!(chunk = readChunk(inputs)).isEmpty()) {
+                        pending.put(pool.submit(process(chunk, fn)));
+                    }
+                } catch (IOException e) {
+                    readError[0] = e;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (RejectedExecutionException e) {
+                    // the writer gave up on a failed chunk and shut the pool down
+                } finally {
+                    try {
+                        pending.put(endOfInput);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        }, "twokenize-reader");
+        reader.setDaemon(true);
+        reader.start();
+
+        try {
+            Future<String> next;
+            while ((next = pending.take()) != endOfInput) {
+                out.write(next.get());
+            }
+            reader.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while writing output", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new IOException(cause);
+        } finally {
+            reader.interrupt();
+            pool.shutdownNow();
+            out.flush();
+        }
+        if (readError[0] != null)
+            throw readError[0];
+    }
+
+    private List<String[]> readChunk(BufferedReader[] inputs) throws IOException {
+        List<String[]> chunk = new ArrayList<String[]>(chunkSize);
+        while (chunk.size() < chunkSize) {
+            String[] record = new String[inputs.length];
+            for (int i = 0; i < inputs.length; i++) {
+                if ((record[i] = inputs[i].readLine()) == null)
+                    return chunk;
+            }
+            chunk.add(record);
+        }
+        return chunk;
+    }
+
+    private static Callable<String> process(final List<String[]> chunk, final LineFunction fn) {
+        return new Callable<String>() {
+            @Override
+            public String call() {
+                StringBuilder sb = new StringBuilder(chunk.size() * 160);
+                for (String[] record : chunk)
+                    fn.apply(record, sb);
+                return sb.toString();
+            }
+        };
+    }
+}
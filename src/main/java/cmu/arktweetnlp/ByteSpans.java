@@ -0,0 +1,85 @@
+package cmu.arktweetnlp;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Token offsets into UTF-8 bytes, as filled in by
+ * {@link Twokenizer#tokenize(ByteBuffer, ByteSpans)}: indexes into the buffer,
+ * as for {@link ByteBuffer#get(int)}, never in the middle of a char's bytes.
+ *
+ * Like {@link TokenSpans}, reused from one call to the next without any
+ * allocation; only {@link #token(int)} and {@link #toList()} decode Strings.
+ */
+public final class ByteSpans {
+    private ByteBuffer bytes = ByteBuffer.allocate(0);
+    private int[] offsets;
+    private int size;
+
+    public ByteSpans() {
+        this(32);
+    }
+
+    public ByteSpans(int expectedTokens) {
+        offsets = new int[2 * Math.max(expectedTokens, 1)];
+    }
+
+    /** Forgets all tokens and makes these spans refer to bytes. */
+    void reset(ByteBuffer bytes) {
+        this.bytes = bytes;
+        this.size = 0;
+    }
+
+    /** Keeps the tokens, and makes them refer to bytes instead. */
+    void attach(ByteBuffer bytes) {
+        this.bytes = bytes;
+    }
+
+    void add(int start, int end) {
+        if (2 * size == offsets.length)
+            offsets = Arrays.copyOf(offsets, 2 * offsets.length);
+        offsets[2 * size] = start;
+        offsets[2 * size + 1] = end;
+        size++;
+    }
+
+    /** The buffer the offsets refer to. */
+    public ByteBuffer bytes() {
+        return bytes;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /** Start offset (inclusive) of the i-th token, in bytes. */
+    public int start(int i) {
+        if (i >= size)
+            throw new IndexOutOfBoundsException("token " + i + " of " + size);
+        return offsets[2 * i];
+    }
+
+    /** End offset (exclusive) of the i-th token, in bytes. */
+    public int end(int i) {
+        if (i >= size)
+            throw new IndexOutOfBoundsException("token " + i + " of " + size);
+        return offsets[2 * i + 1];
+    }
+
+    public String token(int i) {
+        byte[] b = new byte[end(i) - start(i)];
+        for (int k = 0; k < b.length; k++)
+            b[k] = bytes.get(start(i) + k);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    public List<String> toList() {
+        List<String> tokens = new ArrayList<String>(size);
+        for (int i = 0; i < size; i++)
+            tokens.add(token(i));
+        return tokens;
+    }
+}
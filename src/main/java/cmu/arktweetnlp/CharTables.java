@@ -0,0 +1,37 @@
+package cmu.arktweetnlp;
+
+/**
+ * Precomputed per-char lookups for the character classes Twokenize tests
+ * one char at a time, so those tests don't need a regex match (or a
+ * one-char substring) each.
+ */
+final class CharTables {
+    private CharTables() {}
+
+    // one bit per BMP char; whitespace never needs a surrogate pair
+    private static final long[] WHITESPACE = new long[(Character.MAX_VALUE + 1) / 64];
+    static {
+        for (int c = 0; c <= Character.MAX_VALUE; c++) {
+            // \s is White_Space with UNICODE_CHARACTER_CLASS, \p{Zs} is already part of it
+            int type = Character.getType(c);
+            boolean ws = type == Character.SPACE_SEPARATOR || type == Character.LINE_SEPARATOR
+                    || type == Character.PARAGRAPH_SEPARATOR || (c >= 0x9 && c <= 0xd) || c == 0x85;
+            if (ws)
+                WHITESPACE[c >>> 6] |= 1L << c;
+        }
+    }
+
+    /** Whether c matches "[\\s\\p{Zs}]" (with UNICODE_CHARACTER_CLASS), i.e. Twokenize's Whitespace. */
+    static boolean isWhitespace(char c) {
+        return (WHITESPACE[c >>> 6] & (1L << c)) != 0;
+    }
+
+    /** Whether code point c matches \w with UNICODE_CHARACTER_CLASS, which is also what \b goes by. */
+    static boolean isWordChar(int c) {
+        if (Character.isAlphabetic(c) || Character.isDigit(c) || c == '\u200c' || c == '\u200d')
+            return true;
+        int type = Character.getType(c);
+        return type == Character.NON_SPACING_MARK || type == Character.ENCLOSING_MARK
+                || type == Character.COMBINING_SPACING_MARK || type == Character.CONNECTOR_PUNCTUATION;
+    }
+}
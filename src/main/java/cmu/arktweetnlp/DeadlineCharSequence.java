@@ -0,0 +1,64 @@
+package cmu.arktweetnlp;
+
+/**
+ * A view of some text that gives up once a deadline has passed.
+ *
+ * java.util.regex has no timeouts, but a Matcher reads its input through
+ * charAt() and nothing else, so a backtracking pattern that runs away keeps
+ * calling charAt(). Every so many calls we look at the clock and, if we are
+ * late, throw {@link Exceeded} right out of the Matcher.
+ *
+ * Reusable: reset() points it at a new text and deadline.
+ */
+final class DeadlineCharSequence implements CharSequence {
+
+    /** Thrown from charAt() when the deadline has passed. Shared and without a stack trace, so it's cheap. */
+    static final class Exceeded extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private Exceeded() {
+            super("match deadline exceeded", null, false, false);
+        }
+    }
+
+    static final Exceeded EXCEEDED = new Exceeded();
+
+    // nanoTime() costs a few dozen charAt()s, so only look every this many
+    private static final int CHECK_EVERY = 1024;
+
+    private CharSequence text = "";
+    private long deadline;
+    private int countdown;
+
+    DeadlineCharSequence reset(CharSequence text, long deadline) {
+        this.text = text;
+        this.deadline = deadline;
+        this.countdown = CHECK_EVERY;
+        return this;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (--countdown < 0) {
+            countdown = CHECK_EVERY;
+            if (System.nanoTime() - deadline > 0)
+                throw EXCEEDED;
+        }
+        return text.charAt(index);
+    }
+
+    @Override
+    public int length() {
+        return text.length();
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return text.subSequence(start, end);
+    }
+
+    @Override
+    public String toString() {
+        return text.toString();
+    }
+}
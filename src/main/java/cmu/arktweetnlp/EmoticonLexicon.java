@@ -0,0 +1,319 @@
+package cmu.arktweetnlp;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A fixed list of emoticons, kaomoji and emoji, found in one pass over the
+ * text by an Aho-Corasick automaton, whatever the size of the list.
+ *
+ * The emoticon regexes only know the shapes they were written for; this is
+ * the "big precompiled lexicon" their TODO asks for. Hand one to
+ * {@link Twokenizer.Builder#emoticonLexicon(EmoticonLexicon)} and every entry
+ * it finds is protected like an {@link TokenClass#EMOTICON}, alongside what the
+ * regexes find: where a lexicon entry and a protected class match at the same
+ * place, the longer match wins.
+ *
+ * A match never starts or ends in the middle of a word, so "XD" is found in
+ * "lol XD" but not in "XDA". An emoji match also takes along any skin tone
+ * modifiers, variation selectors and zero-width-joined lexicon entries right
+ * after it, so a modified or joined emoji stays one token. Brackets and
+ * quotes inside an entry, as in "(ᵕᴗᵕ)", are not split off from it.
+ *
+ * {@link #defaults()} is the list bundled as emoticons.txt next to this class;
+ * {@link #read(Reader)} reads more in the same format: one entry per line,
+ * without whitespace, and lines starting with "# " are comments. Immutable.
+ */
+public final class EmoticonLexicon {
+
+    private static final String RESOURCE = "emoticons.txt";
+
+    private static final char ZWJ = '\u200d';
+
+    // loaded when first asked for
+    private static final class Defaults {
+        static final EmoticonLexicon LEXICON;
+        static {
+            InputStream in = EmoticonLexicon.class.getResourceAsStream(RESOURCE);
+            if (in == null)
+                throw new IllegalStateException("resource " + RESOURCE + " is missing from the class path");
+            try {
+                try {
+                    LEXICON = read(new InputStreamReader(in, "UTF-8"));
+                } finally {
+                    in.close();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private final Set<String> entries;
+
+    /*
+     * The automaton. State 0 is the root. The transitions of state s are
+     * keys[first[s]] .. keys[first[s + 1] - 1], sorted, to targets at the same
+     * indexes. fail is the usual failure link; length is the length of the
+     * entry a state spells if it is one, else 0; and output is the next state
+     * down the failure chain that spells an entry (-1 if none), so all the
+     * entries ending at a position are found without walking the whole chain.
+     */
+    private final int[] first;
+    private final char[] keys;
+    private final int[] targets;
+    private final int[] fail;
+    private final int[] length;
+    private final int[] output;
+
+    private EmoticonLexicon(Set<String> entries) {
+        this.entries = Collections.unmodifiableSet(entries);
+
+        // the trie, with a map per state while building
+        List<Map<Character, Integer>> children = new ArrayList<Map<Character, Integer>>();
+        List<Integer> lengths = new ArrayList<Integer>();
+        children.add(new HashMap<Character, Integer>());
+        lengths.add(0);
+        for (String entry : entries) {
+            int s = 0;
+            for (int i = 0; i < entry.length(); i++) {
+                Integer next = children.get(s).get(entry.charAt(i));
+                if (next == null) {
+                    next = children.size();
+                    children.add(new HashMap<Character, Integer>());
+                    lengths.add(0);
+                    children.get(s).put(entry.charAt(i), next);
+                }
+                s = next;
+            }
+            lengths.set(s, entry.length());
+        }
+
+        int states = children.size();
+        first = new int[states + 1];
+        int transitions = 0;
+        for (int s = 0; s < states; s++) {
+            first[s] = transitions;
+            transitions += children.get(s).size();
+        }
+        first[states] = transitions;
+        keys = new char[transitions];
+        targets = new int[transitions];
+        for (int s = 0; s < states; s++) {
+            Character[] sorted = children.get(s).keySet().toArray(new Character[0]);
+            Arrays.sort(sorted);
+            for (int k = 0; k < sorted.length; k++) {
+                keys[first[s] + k] = sorted[k];
+                targets[first[s] + k] = children.get(s).get(sorted[k]);
+            }
+        }
+        length = new int[states];
+        for (int s = 0; s < states; s++)
+            length[s] = lengths.get(s);
+
+        // failure and output links, breadth first
+        fail = new int[states];
+        output = new int[states];
+        output[0] = -1;
+        int[] queue = new int[states];
+        int head = 0, tail = 0;
+        for (int t = first[0]; t < first[1]; t++) {
+            int child = targets[t];
+            fail[child] = 0;
+            output[child] = -1;
+            queue[tail++] = child;
+        }
+        while (head < tail) {
+            int s = queue[head++];
+            for (int t = first[s]; t < first[s + 1]; t++) {
+                int child = targets[t];
+                int f = fail[s];
+                int next;
+                while ((next = step(f, keys[t])) < 0 && f != 0)
+                    f = fail[f];
+                fail[child] = next >= 0 ? next : 0;
+                output[child] = length[fail[child]] > 0 ? fail[child] : output[fail[child]];
+                queue[tail++] = child;
+            }
+        }
+    }
+
+    /** The bundled lexicon. */
+    public static EmoticonLexicon defaults() {
+        return Defaults.LEXICON;
+    }
+
+    /**
+     * Exactly these entries.
+     *
+     * @throws IllegalArgumentException for an empty entry or one with whitespace in it
+     */
+    public static EmoticonLexicon of(Collection<String> entries) {
+        Set<String> set = new LinkedHashSet<String>();
+        for (String entry : entries) {
+            boolean ok = !entry.isEmpty();
+            for (int i = 0; ok && i < entry.length(); i++)
+                ok = !CharTables.isWhitespace(entry.charAt(i));
+            if (!ok)
+                throw new IllegalArgumentException("not an emoticon: \"" + entry + "\"");
+            set.add(entry);
+        }
+        return new EmoticonLexicon(set);
+    }
+
+    /**
+     * Reads one entry per line. Blank lines and lines starting with "# " are
+     * ignored, so is whitespace around an entry.
+     *
+     * @throws IllegalArgumentException for a line with whitespace inside its entry
+     */
+    public static EmoticonLexicon read(Reader in) throws IOException {
+        BufferedReader lines = new BufferedReader(in);
+        List<String> entries = new ArrayList<String>();
+        for (String line; (line = lines.readLine()) != null; ) {
+            line = line.trim();
+            if (!line.isEmpty() && !line.equals("#") && !line.startsWith("# "))
+                entries.add(line);
+        }
+        return of(entries);
+    }
+
+    /** These entries and other's. */
+    public EmoticonLexicon plus(EmoticonLexicon other) {
+        if (entries.containsAll(other.entries))
+            return this;
+        Set<String> set = new LinkedHashSet<String>(entries);
+        set.addAll(other.entries);
+        return new EmoticonLexicon(set);
+    }
+
+    public Set<String> entries() {
+        return entries;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /** Whether text is exactly one entry. */
+    public boolean contains(CharSequence text) {
+        return entries.contains(text.toString());
+    }
+
+    // the transition from state s on c, or -1
+    private int step(int s, char c) {
+        int lo = first[s], hi = first[s + 1] - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            char k = keys[mid];
+            if (k < c)
+                lo = mid + 1;
+            else if (k > c)
+                hi = mid - 1;
+            else
+                return targets[mid];
+        }
+        return -1;
+    }
+
+    Matches matches() {
+        return new Matches();
+    }
+
+    /**
+     * The entries found in a text, as the longest one at every start,
+     * in start order. Not thread-safe; every thread gets its own.
+     */
+    final class Matches {
+        private CharSequence text = "";
+        private int[] longest = new int[256]; // by start: the end of the longest entry there, 0 for none
+        private int[] starts = new int[16];
+        private int count;
+        private int cursor; // index of the first start not yet passed, see nextStart
+
+        /** Runs the automaton over text, once. */
+        Matches reset(CharSequence text) {
+            this.text = text;
+            int n = text.length();
+            if (longest.length < n)
+                longest = new int[Math.max(n, 2 * longest.length)];
+            Arrays.fill(longest, 0, n, 0);
+
+            int s = 0;
+            for (int i = 0; i < n; i++) {
+                char c = text.charAt(i);
+                int next;
+                while ((next = step(s, c)) < 0 && s != 0)
+                    s = fail[s];
+                s = next >= 0 ? next : 0;
+                for (int o = length[s] > 0 ? s : output[s]; o >= 0; o = output[o]) {
+                    int end = i + 1, start = end - length[o];
+                    if (end > longest[start] && !insideWord(start) && !insideWord(end))
+                        longest[start] = end;
+                }
+            }
+
+            count = 0;
+            cursor = 0;
+            for (int i = 0; i < n; i++) {
+                if (longest[i] > 0) {
+                    if (count == starts.length)
+                        starts = Arrays.copyOf(starts, 2 * count);
+                    starts[count++] = i;
+                }
+            }
+            return this;
+        }
+
+        // whether i is between two word chars
+        private boolean insideWord(int i) {
+            return i > 0 && i < text.length()
+                    && CharTables.isWordChar(Character.codePointBefore(text, i))
+                    && CharTables.isWordChar(Character.codePointAt(text, i));
+        }
+
+        /** The first start of a match at or after from, or -1. */
+        int nextStart(int from) {
+            if (cursor > 0 && starts[cursor - 1] >= from)
+                cursor = 0; // went back, e.g. after find(from)
+            while (cursor < count && starts[cursor] < from)
+                cursor++;
+            return cursor < count ? starts[cursor] : -1;
+        }
+
+        /** Where the match at start ends, with the modifiers and joined emoji after it. */
+        int end(int start) {
+            int end = longest[start];
+            int n = text.length();
+            while (end < n) {
+                int c = Character.codePointAt(text, end);
+                if (c == '\ufe0f' || c == '\ufe0e' || (c >= 0x1f3fb && c <= 0x1f3ff))
+                    end += Character.charCount(c);
+                else if (c == ZWJ && end + 1 < n && longest[end + 1] > 0)
+                    end = longest[end + 1];
+                else
+                    break;
+            }
+            return end;
+        }
+
+        /** Whether text is one match, modifiers and all; resets this to it. */
+        boolean whole(CharSequence text) {
+            reset(text);
+            return count > 0 && starts[0] == 0 && end(0) == text.length();
+        }
+    }
+}
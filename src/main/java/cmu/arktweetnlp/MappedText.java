@@ -0,0 +1,71 @@
+package cmu.arktweetnlp;
+
+import java.util.Arrays;
+
+/**
+ * A reusable, growable char buffer that remembers, for every char, where it
+ * came from in some original text. Chars that were inserted and have no origin
+ * map to -1.
+ *
+ * Twokenize rewrites its input a few times (squeezing whitespace, splitting
+ * edge punctuation) before it looks for tokens; doing that in MappedTexts
+ * instead of Strings lets us report token offsets against the original text.
+ */
+final class MappedText implements CharSequence {
+    private char[] chars;
+    private int[] origins;
+    private int length;
+
+    MappedText(int capacity) {
+        chars = new char[capacity];
+        origins = new int[capacity];
+    }
+
+    void clear() {
+        length = 0;
+    }
+
+    void append(char c, int origin) {
+        if (length == chars.length) {
+            chars = Arrays.copyOf(chars, 2 * length + 16);
+            origins = Arrays.copyOf(origins, chars.length);
+        }
+        chars[length] = c;
+        origins[length] = origin;
+        length++;
+    }
+
+    /** Keeps only [start, end). */
+    void retain(int start, int end) {
+        if (start > 0) {
+            System.arraycopy(chars, start, chars, 0, end - start);
+            System.arraycopy(origins, start, origins, 0, end - start);
+        }
+        length = end - start;
+    }
+
+    /** Where the char at index came from, or -1 if it was inserted. */
+    int origin(int index) {
+        return origins[index];
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return chars[index];
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return new String(chars, start, end - start);
+    }
+
+    @Override
+    public String toString() {
+        return new String(chars, 0, length);
+    }
+}
@@ -0,0 +1,189 @@
+package cmu.arktweetnlp;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * The command line's tokenize mode for files, see --mmap: every file is
+ * memory-mapped, lines are found in the mapping, and tokens go out one line
+ * per input line through one large output buffer that is written only when
+ * full. No line is decoded into a String unless it has a '&' in it (an HTML
+ * entity to unescape) or isn't valid UTF-8 (so its malformed bytes become
+ * U+FFFD, as they do when read through a Reader); the rest are tokenized
+ * straight from the mapped bytes with
+ * {@link Twokenizer#tokenize(ByteBuffer, ByteSpans)}, and their tokens' bytes
+ * are copied to the output as they are.
+ *
+ * The output is the same as the default mode's for the same input: every
+ * line, as BufferedReader.readLine would give it (ended by '\n', '\r' or
+ * "\r\n"), tokenized with tokenizeRawTweetText, its tokens joined with
+ * spaces. Files are mapped a window of up to WINDOW bytes at a time,
+ * always starting at a line, so their size is not limited by a mapping's
+ * (only a single line longer than a window is cut in two).
+ * Not thread-safe.
+ */
+final class MappedTokenizer {
+
+    static final int WINDOW = 1 << 30;
+
+    private final Twokenizer tk;
+    private final WritableByteChannel out;
+    private final ByteBuffer output;
+    private final int windowSize;
+    private final ByteSpans tokens = new ByteSpans(64);
+    private byte[] lineBytes = new byte[1024]; // lines with a '&' in them, to decode
+    private long lines, bytesIn, bytesOut;
+
+    MappedTokenizer(Twokenizer tk, WritableByteChannel out, int bufferSize) {
+        this(tk, out, bufferSize, WINDOW);
+    }
+
+    /** Maps windowSize bytes at a time rather than WINDOW, for tests. */
+    MappedTokenizer(Twokenizer tk, WritableByteChannel out, int bufferSize, int windowSize) {
+        this.tk = tk;
+        this.out = out;
+        this.output = ByteBuffer.allocateDirect(bufferSize);
+        this.windowSize = windowSize;
+    }
+
+    void tokenize(List<String> files) throws IOException {
+        for (String file : files) {
+            RandomAccessFile f = new RandomAccessFile(file, "r");
+            try {
+                tokenize(f.getChannel());
+            } finally {
+                f.close();
+            }
+        }
+        flush();
+    }
+
+    private void tokenize(FileChannel in) throws IOException {
+        long size = in.size();
+        boolean afterCR = false; // the last line ended at a '\r', so a '\n' right after it ends nothing
+        boolean afterCut = false; // the last line was cut at the end of a window, so a line end right after it ends nothing
+        for (long at = 0; at < size; ) {
+            int n = (int) Math.min(windowSize, size - at);
+            ByteBuffer window = in.map(FileChannel.MapMode.READ_ONLY, at, n);
+            ByteBuffer line = window.duplicate(); // every line in turn
+            boolean last = at + n == size;
+            int start = 0;
+            while (start < n) {
+                if (afterCut) {
+                    afterCut = false;
+                    byte b = window.get(start);
+                    if (b == '\n' || b == '\r') {
+                        afterCR = b == '\r';
+                        start++;
+                        continue;
+                    }
+                }
+                if (afterCR) {
+                    afterCR = false;
+                    if (window.get(start) == '\n') {
+                        start++;
+                        continue;
+                    }
+                }
+                int end = start;
+                byte b = 0;
+                while (end < n && (b = window.get(end)) != '\n' && b != '\r')
+                    end++;
+                if (end == n && !last && start > 0)
+                    break; // the rest of this line is in the next window, start that one here
+                line(window, line, start, end);
+                afterCR = end < n && b == '\r';
+                afterCut = end == n && !last;
+                start = end + 1;
+            }
+            int used = Math.min(start, n);
+            bytesIn += used;
+            at += used;
+        }
+    }
+
+    private void line(ByteBuffer window, ByteBuffer line, int start, int end) throws IOException {
+        lines++;
+        boolean decode = false;
+        for (int i = start; i < end && !decode; i++)
+            decode = window.get(i) == '&';
+        decode = decode || !Utf8.isValid(window, start, end);
+        range(line, start, end);
+        if (decode) {
+            int n = end - start;
+            if (lineBytes.length < n)
+                lineBytes = new byte[Math.max(n, 2 * lineBytes.length)];
+            line.get(lineBytes, 0, n);
+            String text = new String(lineBytes, 0, n, StandardCharsets.UTF_8);
+            List<String> toks = tk.tokenizeRawTweetText(text);
+            for (int i = 0; i < toks.size(); i++) {
+                if (i > 0)
+                    put(' ');
+                put(ByteBuffer.wrap(toks.get(i).getBytes(StandardCharsets.UTF_8)));
+            }
+        } else {
+            tk.tokenize(line, tokens);
+            for (int i = 0; i < tokens.size(); i++) {
+                if (i > 0)
+                    put(' ');
+                put(range(line, tokens.start(i), tokens.end(i)));
+            }
+        }
+        put('\n');
+    }
+
+    // b's position and limit set to start and end; through Buffer, so this runs on Java 8 when built by a later javac
+    private static ByteBuffer range(ByteBuffer b, int start, int end) {
+        Buffer buffer = b;
+        buffer.limit(end);
+        buffer.position(start);
+        return b;
+    }
+
+    private void put(char c) throws IOException {
+        if (!output.hasRemaining())
+            flush();
+        output.put((byte) c);
+    }
+
+    private void put(ByteBuffer bytes) throws IOException {
+        if (bytes.remaining() > output.remaining()) {
+            flush();
+            if (bytes.remaining() > output.capacity()) {
+                write(bytes);
+                return;
+            }
+        }
+        output.put(bytes);
+    }
+
+    void flush() throws IOException {
+        ((Buffer) output).flip();
+        write(output);
+        ((Buffer) output).clear();
+    }
+
+    private void write(ByteBuffer bytes) throws IOException {
+        bytesOut += bytes.remaining();
+        while (bytes.hasRemaining())
+            out.write(bytes);
+    }
+
+    long lines() {
+        return lines;
+    }
+
+    long bytesIn() {
+        return bytesIn;
+    }
+
+    long bytesOut() {
+        return bytesOut;
+    }
+}
@@ -0,0 +1,233 @@
+package cmu.arktweetnlp;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Finds the protected spans of a text one after the other, the way
+ * {@code Protected.matcher(text).find()} always has. Not thread-safe; every
+ * thread gets its own finder and resets it for every text.
+ */
+abstract class ProtectedFinder {
+
+    abstract ProtectedFinder reset(CharSequence text);
+
+    abstract boolean find();
+
+    /** Resets and finds the first match that starts at from or later, like Matcher.find(int). */
+    abstract boolean find(int from);
+
+    abstract int start();
+
+    abstract int end();
+
+    /** The class of the last match. */
+    abstract TokenClass tokenClass();
+
+    /**
+     * The original engine: one big alternation of all protected classes.
+     * With the prefilter, the alternation is only tried where the scanner's
+     * table and guards say some class can start (see
+     * {@link ProtectedScanner.Triggers}), instead of at every offset. The
+     * matches are the same either way.
+     */
+    static final class Regex extends ProtectedFinder {
+        private final Matcher matcher;
+        private final UrlRecognizer urls;
+        private final ProtectedScanner.Triggers triggers; // null without the prefilter
+        private CharSequence text = "";
+        private int next; // where the next match may start, with the prefilter
+        private Matcher[] classMatchers; // for tokenClass(), made when first asked
+
+        Regex(Pattern protectedPattern, UrlRecognizer urls, boolean prefilter) {
+            matcher = protectedPattern.matcher("");
+            this.urls = urls;
+            if (prefilter) {
+                // tried at one offset at a time, lookarounds and \b must still see the whole text
+                matcher.useTransparentBounds(true).useAnchoringBounds(false);
+                triggers = new ProtectedScanner.Triggers();
+            } else {
+                triggers = null;
+            }
+        }
+
+        @Override
+        Regex reset(CharSequence text) {
+            matcher.reset(text);
+            this.text = text;
+            if (triggers != null) {
+                triggers.reset(text);
+                next = 0;
+            }
+            return this;
+        }
+
+        @Override
+        boolean find() {
+            if (triggers == null)
+                return matcher.find();
+            int length = text.length();
+            for (int i = triggers.next(next); i < length; i = triggers.next(i + 1)) {
+                matcher.region(i, length);
+                if (matcher.lookingAt()) {
+                    // like Matcher.find(), never get stuck on an empty match
+                    next = matcher.end() == i ? i + 1 : matcher.end();
+                    return true;
+                }
+            }
+            next = length;
+            return false;
+        }
+
+        @Override
+        boolean find(int from) {
+            if (triggers == null)
+                return matcher.find(from);
+            if (from < 0 || from > text.length())
+                throw new IndexOutOfBoundsException("Illegal start index");
+            next = from;
+            return find();
+        }
+
+        @Override
+        int start() {
+            return matcher.start();
+        }
+
+        @Override
+        int end() {
+            return matcher.end();
+        }
+
+        /**
+         * The alternation doesn't say which alternative matched, so try the
+         * classes one by one at the match, in order; the first that matches
+         * there is the one the alternation took. Slow, only for metrics.
+         */
+        @Override
+        TokenClass tokenClass() {
+            int start = matcher.start();
+            if (classMatchers == null) {
+                classMatchers = new Matcher[ClassPatterns.PATTERNS.length];
+                for (int i = 0; i < classMatchers.length; i++) {
+                    if (ClassPatterns.PATTERNS[i] != null)
+                        classMatchers[i] = ClassPatterns.PATTERNS[i].matcher("").useTransparentBounds(true).useAnchoringBounds(false);
+                }
+            }
+            for (int i = 0; i < classMatchers.length; i++) {
+                if (classMatchers[i] == null) {
+                    if (urls.url(text, start) >= 0)
+                        return TokenClass.URL;
+                    continue;
+                }
+                Matcher c = classMatchers[i].reset(text).region(start, text.length());
+                if (c.lookingAt())
+                    return ClassPatterns.CLASSES[i];
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Another finder's matches, plus the entries of an {@link EmoticonLexicon}.
+     * The leftmost match wins, and of two that start at the same place, the
+     * longer (the other finder's if they are as long). After a lexicon match,
+     * the other finder carries on from its end, as it would have after one of
+     * its own.
+     */
+    static final class WithLexicon extends ProtectedFinder {
+        private static final int UNKNOWN = -2, NONE = -1;
+
+        private final ProtectedFinder base;
+        private final EmoticonLexicon.Matches lexicon;
+        private int next;                        // where the next match may start
+        private int baseStart = UNKNOWN, baseEnd; // base's next match
+        private int start = -1, end = -1;
+        private boolean fromLexicon;
+
+        WithLexicon(ProtectedFinder base, EmoticonLexicon lexicon) {
+            this.base = base;
+            this.lexicon = lexicon.matches();
+        }
+
+        @Override
+        WithLexicon reset(CharSequence text) {
+            base.reset(text);
+            lexicon.reset(text);
+            next = 0;
+            baseStart = UNKNOWN;
+            start = end = -1;
+            return this;
+        }
+
+        @Override
+        boolean find() {
+            if (baseStart == UNKNOWN)
+                baseFound(base.find());
+            int lexStart = lexicon.nextStart(next);
+            int lexEnd = lexStart < 0 ? -1 : lexicon.end(lexStart);
+            if (lexStart >= 0 && (baseStart == NONE || lexStart < baseStart || (lexStart == baseStart && lexEnd > baseEnd))) {
+                start = lexStart;
+                end = lexEnd;
+                fromLexicon = true;
+                if (baseStart != NONE && baseStart < end)
+                    baseFound(base.find(end));
+            } else if (baseStart != NONE) {
+                start = baseStart;
+                end = baseEnd;
+                fromLexicon = false;
+                baseStart = UNKNOWN;
+            } else {
+                start = end = -1;
+                return false;
+            }
+            next = end;
+            return true;
+        }
+
+        private void baseFound(boolean found) {
+            baseStart = found ? base.start() : NONE;
+            baseEnd = found ? base.end() : NONE;
+        }
+
+        @Override
+        boolean find(int from) {
+            next = from;
+            baseFound(base.find(from));
+            return find();
+        }
+
+        @Override
+        int start() {
+            if (start < 0)
+                throw new IllegalStateException("No match available");
+            return start;
+        }
+
+        @Override
+        int end() {
+            if (start < 0)
+                throw new IllegalStateException("No match available");
+            return end;
+        }
+
+        @Override
+        TokenClass tokenClass() {
+            if (start < 0)
+                return null;
+            return fromLexicon ? TokenClass.EMOTICON : base.tokenClass();
+        }
+    }
+
+    // compiled when first needed, which is never unless someone keeps metrics; URLs go by the UrlRecognizer
+    private static final class ClassPatterns {
+        static final TokenClass[] CLASSES = TokenClass.values();
+        static final Pattern[] PATTERNS = new Pattern[CLASSES.length];
+        static {
+            for (TokenClass c : CLASSES) {
+                if (c != TokenClass.URL)
+                    PATTERNS[c.ordinal()] = Pattern.compile(c.regex(), Pattern.UNICODE_CHARACTER_CLASS);
+            }
+        }
+    }
+}
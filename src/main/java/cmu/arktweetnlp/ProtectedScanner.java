@@ -0,0 +1,305 @@
+package cmu.arktweetnlp;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A drop-in replacement for the big {@code Protected} alternation that doesn't
+ * make every alternative try every offset.
+ *
+ * We walk the text once, left to right. A table indexed by char tells us which
+ * token classes can possibly start with that char, and a few cheap guards
+ * (is there a '.' before the next space? an '@'? an apostrophe?) rule out more.
+ * Only the classes that survive get their own, much smaller pattern tried right
+ * there, in {@link TokenClass} order. That is exactly what the alternation
+ * would have done, so the output is identical -- the table and guards only
+ * ever skip attempts that are bound to fail. URLs don't even need a pattern:
+ * a {@link UrlRecognizer} finds them with a hash lookup of their top-level domain.
+ *
+ * Immutable and thread-safe; the per-thread state lives in {@link Cursor}.
+ */
+final class ProtectedScanner {
+
+    private static final int HEARTS = TokenClass.HEARTS.ordinal();
+    private static final int URL = TokenClass.URL.ordinal();
+    private static final int EMAIL = TokenClass.EMAIL.ordinal();
+    private static final int TIME_LIKE = TokenClass.TIME_LIKE.ordinal();
+    private static final int NUMBER_WITH_COMMAS = TokenClass.NUMBER_WITH_COMMAS.ordinal();
+    private static final int NUM_COMB = TokenClass.NUM_COMB.ordinal();
+    private static final int EMOTICON = TokenClass.EMOTICON.ordinal();
+    private static final int ARROWS = TokenClass.ARROWS.ordinal();
+    private static final int ENTITY = TokenClass.ENTITY.ordinal();
+    private static final int PUNCT_SEQ = TokenClass.PUNCT_SEQ.ordinal();
+    private static final int ARBITRARY_ABBREV = TokenClass.ARBITRARY_ABBREV.ordinal();
+    private static final int SEPARATORS = TokenClass.SEPARATORS.ordinal();
+    private static final int DECORATIONS = TokenClass.DECORATIONS.ordinal();
+    private static final int EMBEDDED_APOSTROPHE = TokenClass.EMBEDDED_APOSTROPHE.ordinal();
+    private static final int HASHTAG = TokenClass.HASHTAG.ordinal();
+    private static final int AT_MENTION = TokenClass.AT_MENTION.ordinal();
+
+    // Everything any of the emoticon alternatives can start with:
+    // (>|&gt;)? eyes, reversed mouths, eeLeft, bfLeft (case-insensitive), s3, s4, s5
+    private static final String EMOTICON_STARTS = ">&:=;" + "([{D)]}oO/\\vVSs|"
+            + "＼\\ƪԄԅ(（<>;ヽ-=~*" + "♥0oO°vV$tTxX;ಠ@ʘ•・◕^¬*" + "-<&>.";
+    // ...and those only the reversed version, "(?<=(?: |^))" + mouth, starts with.
+    private static final String REVERSED_ONLY_STARTS = "D)]}[{/|Ss";
+
+    /** For every char, a bit per TokenClass ordinal that may start there. */
+    private static final char[] STARTS = new char[Character.MAX_VALUE + 1];
+    static {
+        for (int c = 0; c <= Character.MAX_VALUE; c++)
+            STARTS[c] = (char) startsWith((char) c);
+    }
+
+    private static int startsWith (char c) {
+        // A surrogate pair can be a digit, a word char, or just anything that isn't a letter.
+        if (Character.isHighSurrogate(c))
+            return bits(URL, EMAIL, TIME_LIKE, NUMBER_WITH_COMMAS, NUM_COMB, ARBITRARY_ABBREV, EMBEDDED_APOSTROPHE);
+        if (Character.isLowSurrogate(c))
+            return bits(ARBITRARY_ABBREV, EMBEDDED_APOSTROPHE);
+
+        boolean asciiLetter = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+        boolean digit = Character.isDigit(c);
+        int mask = 0;
+        if (c == '<')
+            mask |= bits(HEARTS);
+        if (asciiLetter || digit || c == '-')
+            mask |= bits(URL);
+        if (CharTables.isWordChar(c) || c == '.' || c == '%' || c == '+' || c == '-')
+            mask |= bits(EMAIL);
+        if (digit)
+            mask |= bits(TIME_LIKE, NUMBER_WITH_COMMAS);
+        if (digit || Character.getType(c) == Character.CURRENCY_SYMBOL)
+            mask |= bits(NUM_COMB);
+        if (EMOTICON_STARTS.indexOf(c) >= 0)
+            mask |= bits(EMOTICON);
+        if ("<-―—=>".indexOf(c) >= 0 || (c >= '\u2190' && c <= '\u21ff'))
+            mask |= bits(ARROWS);
+        if (c == '&')
+            mask |= bits(ENTITY);
+        if ("'\"“”‘’.?!,…:;".indexOf(c) >= 0)
+            mask |= bits(PUNCT_SEQ);
+        if (asciiLetter || !Character.isAlphabetic(c))
+            mask |= bits(ARBITRARY_ABBREV);
+        if ("-―—~–=".indexOf(c) >= 0)
+            mask |= bits(SEPARATORS);
+        if ("♫♪★☆♥❤♡".indexOf(c) >= 0 || (c >= '\u2639' && c <= '\u263b') || (c >= '\ue001' && c <= '\uebbb'))
+            mask |= bits(DECORATIONS);
+        if (c != ' ' && ".,?\"".indexOf(c) < 0)
+            mask |= bits(EMBEDDED_APOSTROPHE);
+        if (c == '#')
+            mask |= bits(HASHTAG);
+        if (c == '@' || c == '＠')
+            mask |= bits(AT_MENTION);
+        return mask;
+    }
+
+    private static int bits (int... ordinals) {
+        int mask = 0;
+        for (int o : ordinals)
+            mask |= 1 << o;
+        return mask;
+    }
+
+    private static final TokenClass[] CLASSES = TokenClass.values();
+
+    private final Pattern[] patterns; // null for URL
+    private final UrlRecognizer urls;
+
+    ProtectedScanner(UrlRecognizer urls) {
+        this.urls = urls;
+        patterns = new Pattern[CLASSES.length];
+        for (TokenClass c : CLASSES) {
+            if (c != TokenClass.URL)
+                patterns[c.ordinal()] = Pattern.compile(c.regex(), Pattern.UNICODE_CHARACTER_CLASS);
+        }
+    }
+
+    Cursor cursor() {
+        return new Cursor();
+    }
+
+    // The classes with a guard in Triggers.candidates, on top of the table.
+    private static final int GUARDED = bits(URL, EMAIL, EMOTICON, ARBITRARY_ABBREV, EMBEDDED_APOSTROPHE);
+
+    // Per position: is there a '.', an '@', an apostrophe coming up before anything that would stop
+    // a URL host, an email address, or an embeddedApostrophe?
+    private static final byte DOT_AHEAD = 1, AT_AHEAD = 2, APOSTROPHE_AHEAD = 4;
+
+    /**
+     * The table and the guards on their own: which classes are worth trying
+     * where, without trying any. A plain lowercase word has no '.', '@' or
+     * apostrophe coming up, and few of its letters can start an emoticon, so
+     * next() goes over most of it without stopping. Not thread-safe.
+     */
+    static final class Triggers {
+        private CharSequence text = "";
+        private int length;
+        private byte[] ahead = new byte[256];
+
+        Triggers reset(CharSequence text) {
+            this.text = text;
+            this.length = text.length();
+
+            if (ahead.length < length + 1)
+                ahead = new byte[Math.max(length + 1, 2 * ahead.length)];
+            boolean dot = false, at = false, apostrophe = false;
+            ahead[length] = 0;
+            for (int i = length - 1; i >= 0; i--) {
+                char c = text.charAt(i);
+                if (c == ' ') {
+                    dot = at = apostrophe = false;
+                } else {
+                    dot |= c == '.';
+                    at |= c == '@';
+                    if (c == '.' || c == ',' || c == '?' || c == '"')
+                        apostrophe = false;
+                    else if (c == '\'' || c == '’' || c == '′')
+                        apostrophe = true;
+                }
+                ahead[i] = (byte) ((dot ? DOT_AHEAD : 0) | (at ? AT_AHEAD : 0) | (apostrophe ? APOSTROPHE_AHEAD : 0));
+            }
+            return this;
+        }
+
+        /** The first position at or after from where some class is worth trying, or the text's length. */
+        int next(int from) {
+            for (int i = from; i < length; i++) {
+                if (candidates(i) != 0)
+                    return i;
+            }
+            return length;
+        }
+
+        /** The classes worth trying at i, a bit per TokenClass ordinal. */
+        int candidates(int i) {
+            char c = text.charAt(i);
+            int classes = STARTS[c];
+            if ((classes & GUARDED) == 0)
+                return classes;
+            if ((classes & bits(URL)) != 0 && !((ahead[i] & DOT_AHEAD) != 0 || startsWith(i, "http")))
+                classes &= ~bits(URL);
+            if ((classes & bits(EMAIL)) != 0 && (ahead[i] & AT_AHEAD) == 0)
+                classes &= ~bits(EMAIL);
+            if ((classes & bits(EMOTICON)) != 0 && !(REVERSED_ONLY_STARTS.indexOf(c) < 0 || i == 0 || text.charAt(i - 1) == ' '))
+                classes &= ~bits(EMOTICON);
+            if ((classes & bits(ARBITRARY_ABBREV)) != 0 && !dotWithin(i + 1, i + 5))
+                classes &= ~bits(ARBITRARY_ABBREV);
+            if ((classes & bits(EMBEDDED_APOSTROPHE)) != 0 && (ahead[i + 1] & APOSTROPHE_AHEAD) == 0)
+                classes &= ~bits(EMBEDDED_APOSTROPHE);
+            return classes;
+        }
+
+        private boolean startsWith(int i, String s) {
+            if (i + s.length() > length)
+                return false;
+            for (int k = 0; k < s.length(); k++)
+                if (text.charAt(i + k) != s.charAt(k))
+                    return false;
+            return true;
+        }
+
+        private boolean dotWithin(int from, int to) {
+            for (int k = from; k < to && k < length; k++)
+                if (text.charAt(k) == '.')
+                    return true;
+            return false;
+        }
+    }
+
+    final class Cursor extends ProtectedFinder {
+        private final Matcher[] matchers = new Matcher[patterns.length];
+        // matchers are only reset to a new text when they are first needed for it
+        private final int[] matcherText = new int[patterns.length];
+        private int textNumber = 0;
+
+        private CharSequence text = "";
+        private int length;
+        private final Triggers triggers = new Triggers();
+        private int next, start, end, matched;
+
+        private Cursor() {
+            for (int i = 0; i < patterns.length; i++) {
+                // Lookarounds, \b and friends must see the whole text, as they did in the alternation.
+                if (patterns[i] != null)
+                    matchers[i] = patterns[i].matcher("").useTransparentBounds(true).useAnchoringBounds(false);
+            }
+        }
+
+        @Override
+        Cursor reset(CharSequence text) {
+            this.text = text;
+            this.length = text.length();
+            this.next = 0;
+            this.start = this.end = this.matched = -1;
+            textNumber++;
+            triggers.reset(text);
+            return this;
+        }
+
+        @Override
+        boolean find(int from) {
+            next = from;
+            return find();
+        }
+
+        @Override
+        boolean find() {
+            for (int i = triggers.next(next); i < length; i = triggers.next(i + 1)) {
+                int candidates = triggers.candidates(i);
+                while (candidates != 0) {
+                    int cls = Integer.numberOfTrailingZeros(candidates);
+                    candidates &= candidates - 1;
+                    int e = lookingAt(cls, i);
+                    if (e >= 0) {
+                        start = i;
+                        end = e;
+                        matched = cls;
+                        // like Matcher.find(), never get stuck on an empty match
+                        next = end == start ? end + 1 : end;
+                        return true;
+                    }
+                }
+            }
+            next = length;
+            start = end = matched = -1;
+            return false;
+        }
+
+        /** Where a match of class cls at i ends, or -1. */
+        private int lookingAt(int cls, int i) {
+            if (cls == URL)
+                return urls.url(text, i);
+            Matcher m = matcher(cls);
+            m.region(i, length);
+            return m.lookingAt() ? m.end() : -1;
+        }
+
+        private Matcher matcher(int cls) {
+            if (matcherText[cls] != textNumber) {
+                matchers[cls].reset(text);
+                matcherText[cls] = textNumber;
+            }
+            return matchers[cls];
+        }
+
+        @Override
+        int start() {
+            if (matched < 0)
+                throw new IllegalStateException("No match available");
+            return start;
+        }
+
+        @Override
+        int end() {
+            if (matched < 0)
+                throw new IllegalStateException("No match available");
+            return end;
+        }
+
+        @Override
+        TokenClass tokenClass() {
+            return matched < 0 ? null : CLASSES[matched];
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package cmu.arktweetnlp;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded cache of tokenizer and segmenter results, for the many texts we
+ * see over and over (retweets, bot spam). See {@link Twokenizer.Builder#cache(long)}.
+ *
+ * Entries are spread over independently locked stripes by the hash of their
+ * key, so workers only contend when they hit the same stripe at the same time.
+ * Each stripe is an LRU list (a LinkedHashMap in access order) with its share
+ * of the total weight; an entry weighs the number of chars in its key, which
+ * the cached result is roughly proportional to. Cached values are never
+ * handed out for modification.
+ */
+public final class ResultCache {
+
+    /** Which entry point a result belongs to, so equal texts don't collide. */
+    static final byte TOKENIZE = 0, SIMPLE_SEGMENT = 1, SEGMENT = 2, TOKENIZE_AND_SEGMENT = 3;
+
+    static final class Key {
+        final byte op;
+        final String text;
+        final String tokenized; // null unless the entry point takes a tokenization
+        private final int hash;
+
+        Key(byte op, String text, String tokenized) {
+            this.op = op;
+            this.text = text;
+            this.tokenized = tokenized;
+            int h = 31 * op + text.hashCode();
+            this.hash = tokenized == null ? h : 31 * h + tokenized.hashCode();
+        }
+
+        int weight() {
+            return text.length() + (tokenized == null ? 0 : tokenized.length()) + 1;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key))
+                return false;
+            Key k = (Key) o;
+            return hash == k.hash && op == k.op && text.equals(k.text)
+                    && (tokenized == null ? k.tokenized == null : tokenized.equals(k.tokenized));
+        }
+    }
+
+    private final class Stripe extends LinkedHashMap<Key, Object> {
+        private static final long serialVersionUID = 1L;
+        long weight;
+
+        Stripe() {
+            super(16, 0.75f, true);
+        }
+
+        synchronized Object lookup(Key key) {
+            return get(key);
+        }
+
+        synchronized void store(Key key, Object value) {
+            Object old = put(key, value);
+            if (old == null)
+                weight += key.weight();
+            // evict least recently used entries until we fit again
+            Iterator<Map.Entry<Key, Object>> it = entrySet().iterator();
+            while (weight > maxStripeWeight && it.hasNext()) {
+                Key eldest = it.next().getKey();
+                it.remove();
+                weight -= eldest.weight();
+                evictions.increment();
+            }
+        }
+
+        synchronized void drop() {
+            clear();
+            weight = 0;
+        }
+    }
+
+    private final long maxWeight;
+    private final long maxStripeWeight;
+    private final Stripe[] stripes;
+    private final int mask;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    ResultCache(long maxWeight) {
+        if (maxWeight <= 0)
+            throw new IllegalArgumentException("cache weight must be positive, got " + maxWeight);
+        // a few stripes per core; more only make each stripe's LRU order coarser
+        int n = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors()) * 4 - 1) << 1;
+        // ... but not so many that a stripe can't hold a long tweet
+        while (n > 1 && maxWeight / n < 1024)
+            n >>= 1;
+        this.maxWeight = maxWeight;
+        this.maxStripeWeight = maxWeight / n;
+        this.stripes = new Stripe[n];
+        for (int i = 0; i < n; i++)
+            stripes[i] = new Stripe();
+        this.mask = n - 1;
+    }
+
+    Stripe stripe(Key key) {
+        int h = key.hashCode();
+        return stripes[(h ^ (h >>> 16)) & mask];
+    }
+
+    /** The cached result for key, or null; counts a hit or a miss. */
+    Object get(Key key) {
+        Object value = stripe(key).lookup(key);
+        if (value == null)
+            misses.increment();
+        else
+            hits.increment();
+        return value;
+    }
+
+    /** Caches value for key, unless it weighs more than a stripe can hold. */
+    void put(Key key, Object value) {
+        if (key.weight() <= maxStripeWeight)
+            stripe(key).store(key, value);
+    }
+
+    /** The most the cache holds, in chars of input text. */
+    public long maxWeight() {
+        return maxWeight;
+    }
+
+    /** What the cache holds now, in chars of input text. */
+    public long weight() {
+        long w = 0;
+        for (Stripe s : stripes) {
+            synchronized (s) {
+                w += s.weight;
+            }
+        }
+        return w;
+    }
+
+    public int size() {
+        int n = 0;
+        for (Stripe s : stripes) {
+            synchronized (s) {
+                n += s.size();
+            }
+        }
+        return n;
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    /** hits / (hits + misses), 0 before the first lookup. */
+    public double hitRate() {
+        long h = hits.sum(), total = h + misses.sum();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    /** Drops every entry; the counters keep counting. */
+    public void clear() {
+        for (Stripe s : stripes)
+            s.drop();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("hits=%d misses=%d hitRate=%.3f evictions=%d size=%d weight=%d/%d",
+                hits(), misses(), hitRate(), evictions(), size(), weight(), maxWeight);
+    }
+}
@@ -0,0 +1,158 @@
+package cmu.arktweetnlp;
+
+import java.util.List;
+
+/**
+ * The segments of a tweet, as found by {@link Twokenizer#segment(String, String)}:
+ * alternating runs of text (to be translated) and separators (to be kept).
+ *
+ * Every segment knows its offsets into the raw text and into the tokenized
+ * text; the raw ranges are contiguous and cover the raw text up to leading and
+ * trailing whitespace. Offsets live in one int array and a segment's string is
+ * only cut out when it is asked for.
+ *
+ * {@link #toString()} is exactly what {@link Twokenizer#simpleSegment(String, String)}
+ * returns for the same input. Immutable, so one can be shared between threads.
+ */
+public final class Segmentation {
+
+    public enum Kind { TEXT, SEP }
+
+    // rawStart, rawEnd, tokenStart, tokenEnd, and the text's start and end in lines, per segment
+    static final int STRIDE = 6;
+
+    private final String raw;
+    private final String tokenized;
+    private final String lines;
+    private final boolean firstIsSep;
+    private final int[] offsets;
+    private final String[] texts;
+
+    Segmentation(String raw, String tokenized, String lines, boolean firstIsSep, int[] offsets) {
+        this.raw = raw;
+        this.tokenized = tokenized;
+        this.lines = lines;
+        this.firstIsSep = firstIsSep;
+        this.offsets = offsets;
+        this.texts = new String[offsets.length / STRIDE];
+    }
+
+    public String raw() {
+        return raw;
+    }
+
+    public String tokenized() {
+        return tokenized;
+    }
+
+    public int size() {
+        return texts.length;
+    }
+
+    public Kind kind(int i) {
+        checkIndex(i);
+        return ((i % 2 == 0) == firstIsSep) ? Kind.SEP : Kind.TEXT;
+    }
+
+    public boolean isSep(int i) {
+        return kind(i) == Kind.SEP;
+    }
+
+    /** Start offset (inclusive) of the i-th segment in the raw text. */
+    public int rawStart(int i) {
+        checkIndex(i);
+        return offsets[STRIDE * i];
+    }
+
+    /** End offset (exclusive) of the i-th segment in the raw text. */
+    public int rawEnd(int i) {
+        checkIndex(i);
+        return offsets[STRIDE * i + 1];
+    }
+
+    /**
+     * Start offset (inclusive) of the i-th segment in the tokenized text. Spaces
+     * the tokenizer put in front of it are not part of it.
+     */
+    public int tokenStart(int i) {
+        checkIndex(i);
+        return offsets[STRIDE * i + 2];
+    }
+
+    /** End offset (exclusive) of the i-th segment in the tokenized text. */
+    public int tokenEnd(int i) {
+        checkIndex(i);
+        return offsets[STRIDE * i + 3];
+    }
+
+    /** The i-th segment of the raw text, whitespace and all. */
+    public String rawText(int i) {
+        return raw.substring(rawStart(i), rawEnd(i));
+    }
+
+    /**
+     * The i-th segment as simpleSegment prints it: its tokenized text, where
+     * a sep keeps only the spaces that were in the raw text.
+     */
+    public String text(int i) {
+        checkIndex(i);
+        String text = texts[i];
+        if (text == null)
+            texts[i] = text = lines.substring(offsets[STRIDE * i + 4], offsets[STRIDE * i + 5]);
+        return text;
+    }
+
+    /** How many of the segments are text segments. */
+    public int textCount() {
+        int seps = firstIsSep ? (size() + 1) / 2 : size() / 2;
+        return size() - seps;
+    }
+
+    /**
+     * Puts the raw text back together, with the text segments replaced by
+     * replacements (in order, one per text segment) and every separator, as
+     * well as the leading and trailing whitespace, taken from the raw text.
+     */
+    public String reassemble(List<? extends CharSequence> replacements) {
+        if (replacements.size() != textCount())
+            throw new IllegalArgumentException("expected " + textCount() + " text segments, got " + replacements.size());
+        if (size() == 0)
+            return raw;
+        StringBuilder sb = new StringBuilder(raw.length() + 16);
+        sb.append(raw, 0, rawStart(0));
+        int next = 0;
+        for (int i = 0; i < size(); i++) {
+            if (isSep(i))
+                sb.append(raw, rawStart(i), rawEnd(i));
+            else
+                sb.append(replacements.get(next++));
+        }
+        sb.append(raw, rawEnd(size() - 1), raw.length());
+        return sb.toString();
+    }
+
+    /**
+     * The same segments with their raw offsets moved into text, where raw()'s
+     * char i came from text[rawOffsets[i], rawOffsets[i + 1]), as
+     * {@link HtmlUnescaper#unescape(String, int[])} fills them in.
+     */
+    Segmentation projectedOnto(String text, int[] rawOffsets) {
+        int[] projected = offsets.clone();
+        for (int o = 0; o < projected.length; o += STRIDE) {
+            projected[o] = rawOffsets[projected[o]];
+            projected[o + 1] = rawOffsets[projected[o + 1]];
+        }
+        return new Segmentation(text, tokenized, lines, firstIsSep, projected);
+    }
+
+    /** The "text\t...\n" / "sep\t...\n" lines of simpleSegment. */
+    @Override
+    public String toString() {
+        return lines;
+    }
+
+    private void checkIndex(int i) {
+        if (i < 0 || i >= texts.length)
+            throw new IndexOutOfBoundsException("segment " + i + " of " + texts.length);
+    }
+}
@@ -0,0 +1,120 @@
+package cmu.arktweetnlp;
+
+import java.util.Arrays;
+
+/**
+ * A reusable list of [start, end) int spans, kept in primitive arrays.
+ *
+ * The segmenter collects its separator spans here, asks "does any span start
+ * (or end) in this range?" through binary searches over sorted copies of the
+ * starts and ends, and finally joins everything in one sort and one linear
+ * merge.
+ */
+final class SpanList {
+    private int[] starts;
+    private int[] ends;
+    private int size;
+    private long[] packed = new long[0];
+    private int[] addedEnds = new int[0];
+
+    SpanList(int capacity) {
+        starts = new int[capacity];
+        ends = new int[capacity];
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    void add(int start, int end) {
+        if (size == starts.length) {
+            starts = Arrays.copyOf(starts, 2 * size + 8);
+            ends = Arrays.copyOf(ends, starts.length);
+        }
+        starts[size] = start;
+        ends[size] = end;
+        size++;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int start(int i) {
+        return starts[i];
+    }
+
+    int end(int i) {
+        return ends[i];
+    }
+
+    void set(int i, int start, int end) {
+        starts[i] = start;
+        ends[i] = end;
+    }
+
+    /** Sorted copy of all starts, in (and possibly instead of) into. */
+    int[] sortedStarts(int[] into) {
+        return sortedCopy(starts, into);
+    }
+
+    /** Sorted copy of all ends, in (and possibly instead of) into. */
+    int[] sortedEnds(int[] into) {
+        return sortedCopy(ends, into);
+    }
+
+    private int[] sortedCopy(int[] values, int[] into) {
+        if (into.length < size)
+            into = new int[Math.max(size, 2 * into.length)];
+        System.arraycopy(values, 0, into, 0, size);
+        Arrays.sort(into, 0, size);
+        return into;
+    }
+
+    /** Whether any of the first n values of sorted lies in [from, to]. */
+    static boolean anyWithin(int[] sorted, int n, int from, int to) {
+        if (from > to)
+            return false;
+        int i = Arrays.binarySearch(sorted, 0, n, from);
+        if (i >= 0)
+            return true;
+        int insertion = -i - 1;
+        return insertion < n && sorted[insertion] <= to;
+    }
+
+    /**
+     * Sorts by start and joins every span that overlaps or touches the one
+     * before it. As simpleSegment always has, the joined span ends where the
+     * later one does, even when that one lies inside it.
+     *
+     * Spans with equal starts keep simpleSegment's order too: its comparator
+     * compared the boxed starts with !=, which only holds for the cached
+     * Integers below 128. So equal starts below 128 sort by end, and from 128
+     * on they stay in the order they were added.
+     */
+    void sortAndMerge() {
+        if (packed.length < size) {
+            packed = new long[Math.max(size, 2 * packed.length)];
+            addedEnds = new int[packed.length];
+        }
+        System.arraycopy(ends, 0, addedEnds, 0, size);
+        // spans are never negative, so start << 32 | (end or index) sorts by start, then by that
+        for (int i = 0; i < size; i++)
+            packed[i] = ((long) starts[i] << 32) | (starts[i] < 128 ? ends[i] : i);
+        Arrays.sort(packed, 0, size);
+
+        int merged = 0;
+        for (int i = 0; i < size; i++) {
+            int start = (int) (packed[i] >>> 32);
+            int end = start < 128 ? (int) packed[i] : addedEnds[(int) packed[i]];
+            if (merged > 0 && ends[merged - 1] >= start) {
+                ends[merged - 1] = end;
+            } else {
+                starts[merged] = start;
+                ends[merged] = end;
+                merged++;
+            }
+        }
+        size = merged;
+    }
+}
@@ -0,0 +1,70 @@
+package cmu.arktweetnlp;
+
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * The results of a function over an array of texts, for a (parallel) stream.
+ *
+ * Splits in halves down to MIN_SPLIT texts, so the fork-join pool gets
+ * balanced pieces without the task overhead swamping the work: tokenizing one
+ * tweet takes a few microseconds. Every worker thread tokenizes with its own
+ * matchers and buffers, the Twokenizer's thread-local ones.
+ */
+final class TextSpliterator<R> implements Spliterator<R> {
+
+    private static final int MIN_SPLIT = 64;
+
+    private final String[] texts;
+    private final Function<String, R> fn;
+    private int from;
+    private final int to;
+
+    TextSpliterator(String[] texts, Function<String, R> fn) {
+        this(texts, fn, 0, texts.length);
+    }
+
+    private TextSpliterator(String[] texts, Function<String, R> fn, int from, int to) {
+        this.texts = texts;
+        this.fn = fn;
+        this.from = from;
+        this.to = to;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super R> action) {
+        if (from >= to)
+            return false;
+        action.accept(fn.apply(texts[from++]));
+        return true;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super R> action) {
+        for (; from < to; from++)
+            action.accept(fn.apply(texts[from]));
+    }
+
+    @Override
+    public Spliterator<R> trySplit() {
+        int n = to - from;
+        if (n < 2 * MIN_SPLIT)
+            return null;
+        int mid = from + n / 2;
+        TextSpliterator<R> prefix = new TextSpliterator<R>(texts, fn, from, mid);
+        from = mid;
+        return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+        return to - from;
+    }
+
+    @Override
+    public int characteristics() {
+        // the texts were copied into the array, so nothing can change under us
+        return ORDERED | SIZED | SUBSIZED | NONNULL | IMMUTABLE;
+    }
+}
@@ -0,0 +1,36 @@
+package cmu.arktweetnlp;
+
+/**
+ * The classes of "protected" subsequences Twokenize knows about, in the order
+ * they are tried. A protected match is never split any further, and the
+ * segmenter can be told to ignore some of them (see {@link Twokenizer.Builder}).
+ */
+public enum TokenClass {
+    HEARTS(Twokenize.Hearts),
+    URL(Twokenize.url),
+    EMAIL(Twokenize.Email),
+    TIME_LIKE(Twokenize.timeLike),
+    NUMBER_WITH_COMMAS(Twokenize.numberWithCommas),
+    NUM_COMB(Twokenize.numComb),
+    EMOTICON(Twokenize.emoticon),
+    ARROWS(Twokenize.Arrows),
+    ENTITY(Twokenize.entity),
+    PUNCT_SEQ(Twokenize.punctSeq),
+    ARBITRARY_ABBREV(Twokenize.arbitraryAbbrev),
+    SEPARATORS(Twokenize.separators),
+    DECORATIONS(Twokenize.decorations),
+    EMBEDDED_APOSTROPHE(Twokenize.embeddedApostrophe),
+    HASHTAG(Twokenize.Hashtag),
+    AT_MENTION(Twokenize.AtMention);
+
+    private final String regex;
+
+    TokenClass(String regex) {
+        this.regex = regex;
+    }
+
+    /** The regular expression (source) recognizing this class. */
+    public String regex() {
+        return regex;
+    }
+}
@@ -0,0 +1,192 @@
+package cmu.arktweetnlp;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Token strings to dense int IDs, 0, 1, 2, ... in the order they were first
+ * seen; see {@link Twokenizer#tokenIds(CharSequence, TokenDictionary)}.
+ *
+ * Lookups go by a range of chars in the text, so a token that is already in
+ * the dictionary costs no String at all; only a new token is copied out, once.
+ * The table is open addressing, like HtmlUnescaper's. Lookups take no lock;
+ * adding a token does, and so does growing the table, which replaces it with
+ * one twice the size rather than resizing it in place, so a lookup can always
+ * finish on the table it started on.
+ *
+ * Serializable: a dictionary written out and read back, on this node or
+ * another, gives every token the ID it had, and new ones after them.
+ */
+public final class TokenDictionary implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int MAX_TOKENS = 1 << 29;
+
+    // One generation of the table; a new one replaces it when it is full.
+    private static final class Table {
+        final AtomicIntegerArray slots; // id + 1, 0 for an empty slot; at most half full
+        final String[] tokens;          // by id
+        final int[] hashes;             // by id, the tokens' String hash codes
+
+        Table(int capacity) {
+            slots = new AtomicIntegerArray(2 * capacity);
+            tokens = new String[capacity];
+            hashes = new int[capacity];
+        }
+    }
+
+    private transient volatile Table table;
+    // Written after the token is in the table, so an id below size can always be read back.
+    private transient volatile int size;
+
+    public TokenDictionary() {
+        this(1024);
+    }
+
+    /** A dictionary with room for about expectedTokens before it first grows. */
+    public TokenDictionary(int expectedTokens) {
+        if (expectedTokens < 0)
+            throw new IllegalArgumentException("negative size: " + expectedTokens);
+        table = new Table(Integer.highestOneBit(Math.max(16, Math.min(expectedTokens, MAX_TOKENS) - 1)) << 1);
+    }
+
+    /** The ID of the token s[start, end), given a new one if it hasn't got one yet. */
+    public int id(CharSequence s, int start, int end) {
+        int h = hash(s, start, end);
+        int id = find(table, s, start, end, h);
+        if (id >= 0)
+            return id;
+        synchronized (this) {
+            id = find(table, s, start, end, h);
+            if (id >= 0)
+                return id;
+            return add(s.subSequence(start, end).toString(), h);
+        }
+    }
+
+    public int id(CharSequence token) {
+        return id(token, 0, token.length());
+    }
+
+    /** The ID of the token s[start, end), or -1 if it hasn't got one; adds nothing. */
+    public int find(CharSequence s, int start, int end) {
+        return find(table, s, start, end, hash(s, start, end));
+    }
+
+    /** The token with this ID. */
+    public String token(int id) {
+        if (id < 0 || id >= size)
+            throw new IndexOutOfBoundsException("no token " + id + ", there are " + size);
+        return table.tokens[id];
+    }
+
+    /** How many tokens have an ID; they are 0 .. size() - 1. */
+    public int size() {
+        return size;
+    }
+
+    // String.hashCode(), so a String's cached one would do as well
+    private static int hash(CharSequence s, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++)
+            h = 31 * h + s.charAt(i);
+        return h;
+    }
+
+    private static int slot(int hash, int mask) {
+        // spread the high bits down, 31 * h leaves the low ones poorly mixed for short tokens
+        hash *= 0x9e3779b9;
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    private static int find(Table t, CharSequence s, int start, int end, int h) {
+        int mask = t.slots.length() - 1;
+        for (int slot = slot(h, mask); ; slot = (slot + 1) & mask) {
+            int v = t.slots.get(slot);
+            if (v == 0)
+                return -1;
+            int id = v - 1;
+            if (t.hashes[id] == h && regionEquals(t.tokens[id], s, start, end))
+                return id;
+        }
+    }
+
+    private static boolean regionEquals(String token, CharSequence s, int start, int end) {
+        if (token.length() != end - start)
+            return false;
+        for (int i = 0; i < token.length(); i++) {
+            if (token.charAt(i) != s.charAt(start + i))
+                return false;
+        }
+        return true;
+    }
+
+    // Only with the lock held, for a token that isn't there yet.
+    private int add(String token, int h) {
+        int id = size;
+        Table t = table;
+        if (id == t.tokens.length) {
+            if (id == MAX_TOKENS)
+                throw new IllegalStateException("dictionary full: " + id + " tokens");
+            t = grow(t, 2 * id);
+            table = t;
+        }
+        t.tokens[id] = token;
+        t.hashes[id] = h;
+        // the volatile write publishes the token and its hash along with the slot
+        put(t, id);
+        size = id + 1;
+        return id;
+    }
+
+    private Table grow(Table old, int capacity) {
+        Table t = new Table(capacity);
+        System.arraycopy(old.tokens, 0, t.tokens, 0, size);
+        System.arraycopy(old.hashes, 0, t.hashes, 0, size);
+        for (int id = 0; id < size; id++)
+            put(t, id);
+        return t;
+    }
+
+    private static void put(Table t, int id) {
+        int mask = t.slots.length() - 1;
+        int slot = slot(t.hashes[id], mask);
+        while (t.slots.get(slot) != 0)
+            slot = (slot + 1) & mask;
+        t.slots.set(slot, id + 1);
+    }
+
+    // The tokens in ID order, which is all it takes to rebuild the table.
+    private synchronized void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        int n = size;
+        Table t = table;
+        out.writeInt(n);
+        for (int id = 0; id < n; id++)
+            out.writeObject(t.tokens[id]);
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        int n = in.readInt();
+        if (n < 0 || n > MAX_TOKENS)
+            throw new InvalidObjectException("bad token count: " + n);
+        table = new Table(Integer.highestOneBit(Math.max(16, n - 1)) << 1);
+        size = 0;
+        for (int id = 0; id < n; id++) {
+            Object token = in.readObject();
+            if (!(token instanceof String))
+                throw new InvalidObjectException("token " + id + " is not a String");
+            String s = (String) token;
+            int h = s.hashCode();
+            if (find(table, s, 0, s.length(), h) >= 0)
+                throw new InvalidObjectException("token " + id + " is there twice: " + s);
+            add(s, h);
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package cmu.arktweetnlp;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.CharBuffer;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Tokenizes a text of any length, read from a Reader or a CharBuffer (or any
+ * other Readable), one window at a time.
+ *
+ * A window is cut at the last whitespace that fits in it, and what follows the
+ * cut is carried over into the next window. No token spans whitespace, so a
+ * URL, emoticon or entity that straddles two reads still comes out as one
+ * token, and the tokens are the same as for the whole text at once. Only a
+ * run of non-whitespace longer than a whole window is split, at the window's
+ * end (but not inside a surrogate pair). Memory use is bounded by the
+ * window size: the buffer holds one window, and the tokenizer's own buffers
+ * grow to about as much.
+ *
+ * Use it as an Iterator of token Strings, or, without creating any Strings,
+ * through {@link #forEachToken(Callback)} or window by window through
+ * {@link #nextWindow()} and {@link #window()}. Not thread-safe.
+ */
+public final class TokenReader implements Iterator<String> {
+
+    /** Gets every token as a range of the current window, and where it starts in the whole text. */
+    public interface Callback {
+        void token(CharSequence window, int start, int end, long offset);
+    }
+
+    public static final int DEFAULT_WINDOW = 1 << 16;
+
+    private final Twokenizer tokenizer;
+    private final Readable in;
+    private final char[] buffer;
+    private int filled;          // chars in buffer: the current window, then what's carried over
+    private int windowLength;
+    private long windowOffset;   // where the current window starts in the whole text
+    private boolean eof;
+    private final TokenSpans tokens = new TokenSpans();
+    private int nextToken;       // for the Iterator
+
+    public TokenReader(Twokenizer tokenizer, Readable in) {
+        this(tokenizer, in, DEFAULT_WINDOW);
+    }
+
+    public TokenReader(Twokenizer tokenizer, Readable in, int windowSize) {
+        if (windowSize < 2)
+            throw new IllegalArgumentException("window size must be at least 2, got " + windowSize);
+        this.tokenizer = tokenizer;
+        this.in = in;
+        this.buffer = new char[windowSize];
+    }
+
+    /**
+     * Reads and tokenizes the next window.
+     *
+     * @return false once the input is used up
+     */
+    public boolean nextWindow() throws IOException {
+        // drop the last window, keep what was carried over
+        System.arraycopy(buffer, windowLength, buffer, 0, filled - windowLength);
+        filled -= windowLength;
+        windowOffset += windowLength;
+        windowLength = 0;
+        nextToken = 0;
+
+        while (!eof && filled < buffer.length) {
+            int n = in.read(CharBuffer.wrap(buffer, filled, buffer.length - filled));
+            if (n < 0)
+                eof = true;
+            else
+                filled += n;
+        }
+        if (filled == 0) {
+            tokens.reset("");
+            return false;
+        }
+
+        int cut = filled;
+        if (!eof) {
+            cut = filled - 1;
+            while (cut > 0 && !CharTables.isWhitespace(buffer[cut]))
+                cut--;
+            if (cut == 0) {
+                // one long run of non-whitespace; at least keep surrogate pairs together
+                cut = filled;
+                if (Character.isHighSurrogate(buffer[cut - 1]))
+                    cut--;
+            }
+        }
+        windowLength = cut;
+        // a window after the first starts with the whitespace it was cut at,
+        // which some patterns look at ("e.g" is only an abbreviation after a space)
+        tokenizer.tokenize(CharBuffer.wrap(buffer, 0, cut), tokens, windowOffset == 0);
+        return true;
+    }
+
+    /**
+     * The tokens of the current window, with offsets into it. Only good until
+     * the next call to nextWindow(), which reuses both.
+     */
+    public TokenSpans window() {
+        return tokens;
+    }
+
+    /** Where the current window starts in the whole text. */
+    public long windowOffset() {
+        return windowOffset;
+    }
+
+    /**
+     * Hands every remaining token to callback, window by window.
+     *
+     * @return how many tokens there were
+     */
+    public long forEachToken(Callback callback) throws IOException {
+        long count = 0;
+        do {
+            CharSequence text = tokens.text();
+            for (; nextToken < tokens.size(); nextToken++, count++)
+                callback.token(text, tokens.start(nextToken), tokens.end(nextToken), windowOffset + tokens.start(nextToken));
+        } while (nextWindow());
+        return count;
+    }
+
+    /** @throws UncheckedIOException if reading fails */
+    @Override
+    public boolean hasNext() {
+        try {
+            while (nextToken == tokens.size()) {
+                if (!nextWindow())
+                    return false;
+            }
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public String next() {
+        if (!hasNext())
+            throw new NoSuchElementException();
+        return tokens.token(nextToken++);
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+}
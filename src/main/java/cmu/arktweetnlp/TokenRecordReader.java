@@ -0,0 +1,227 @@
+package cmu.arktweetnlp;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Reads the records {@link TokenRecordWriter} writes, one at a time, into
+ * buffers that are reused from one record to the next: the text as bytes, the
+ * tokens as {@link ByteSpans} over them, the segments as offsets. Nothing
+ * builds a String unless asked to. Not thread-safe.
+ *
+ * When the records don't carry their text, the offsets are still all there;
+ * {@link #attach(ByteBuffer)} the input line a record was written for to get
+ * at the tokens' and segments' bytes.
+ */
+public final class TokenRecordReader implements Closeable {
+
+    private static final ByteBuffer NO_TEXT = ByteBuffer.allocate(0).asReadOnlyBuffer();
+
+    private final InputStream in;
+    private final boolean withText;
+    private byte[] record = new byte[1024];
+    private ByteBuffer text = NO_TEXT;
+    private int extent; // the largest offset in this record
+    private final ByteSpans tokens = new ByteSpans();
+    private int[] segments = new int[16]; // start, end per segment, the lowest bit of the start set for separators
+    private int segmentCount;
+
+    /** @throws IOException if in doesn't start with a TokenRecordWriter header */
+    public TokenRecordReader(InputStream in) throws IOException {
+        this.in = new BufferedInputStream(in, 1 << 16);
+        int magic = TokenRecordWriter.MAGIC.length;
+        byte[] header = new byte[magic + 2];
+        readFully(header, header.length);
+        if (!Arrays.equals(Arrays.copyOf(header, magic), TokenRecordWriter.MAGIC))
+            throw new IOException("not a token record stream");
+        if (header[magic] != TokenRecordWriter.VERSION)
+            throw new IOException("unknown token record version " + header[magic]);
+        if ((header[magic + 1] & ~TokenRecordWriter.WITH_TEXT) != 0)
+            throw new IOException("unknown token record flags " + header[magic + 1]);
+        withText = (header[magic + 1] & TokenRecordWriter.WITH_TEXT) != 0;
+    }
+
+    /** Whether the records carry their text; if not, see {@link #attach(ByteBuffer)}. */
+    public boolean hasText() {
+        return withText;
+    }
+
+    /**
+     * Reads the next record.
+     *
+     * @return false at the end of the stream
+     * @throws EOFException if the stream ends inside a record
+     */
+    public boolean next() throws IOException {
+        int first = in.read();
+        if (first < 0) {
+            text = NO_TEXT;
+            tokens.reset(text);
+            segmentCount = 0;
+            return false;
+        }
+        int length = readVarint(first);
+        if (record.length < length)
+            record = new byte[Math.max(length, 2 * record.length)];
+        readFully(record, length);
+
+        int[] at = { 0 };
+        // without the text, offsets can only be checked against the line once it is attached
+        int textLength = Integer.MAX_VALUE;
+        text = NO_TEXT;
+        if (withText) {
+            textLength = varint(at, length);
+            if (textLength > length - at[0])
+                throw new IOException("corrupt record: text runs past its end");
+            text = ByteBuffer.wrap(record, at[0], textLength).slice().asReadOnlyBuffer();
+            at[0] += textLength;
+        }
+
+        int n = varint(at, length);
+        tokens.reset(text);
+        int end = 0;
+        for (int i = 0; i < n; i++) {
+            int start = end + varint(at, length);
+            end = start + varint(at, length);
+            if (end > textLength || end < 0)
+                throw new IOException("corrupt record: token " + i + " runs past the text");
+            tokens.add(start, end);
+        }
+        extent = end;
+
+        segmentCount = varint(at, length);
+        if (segments.length < 2 * segmentCount)
+            segments = new int[Math.max(2 * segmentCount, 2 * segments.length)];
+        end = segmentCount > 0 ? varint(at, length) : 0;
+        for (int i = 0; i < segmentCount; i++) {
+            int v = varint(at, length);
+            int start = end;
+            end = start + (v >>> 1);
+            if (end > textLength || end < 0)
+                throw new IOException("corrupt record: segment " + i + " runs past the text");
+            segments[2 * i] = start << 1 | (v & 1);
+            segments[2 * i + 1] = end;
+        }
+        extent = Math.max(extent, end);
+        return true;
+    }
+
+    /**
+     * For records without their text: makes text() and tokens() refer to
+     * line, from its position to its limit, which should hold the UTF-8 bytes
+     * of the input line this record was written for.
+     *
+     * @throws IllegalArgumentException if the record has offsets past the end of line
+     */
+    public void attach(ByteBuffer line) {
+        if (line.remaining() < extent)
+            throw new IllegalArgumentException("the record has offsets up to " + extent + ", the line has "
+                                               + line.remaining() + " bytes");
+        text = line.slice().asReadOnlyBuffer();
+        tokens.attach(text);
+    }
+
+    /** This record's text, UTF-8, read-only; empty if the record doesn't carry it and no line is attached. */
+    public ByteBuffer text() {
+        return text;
+    }
+
+    /** This record's tokens, as offsets into text(). */
+    public ByteSpans tokens() {
+        return tokens;
+    }
+
+    /** How many segments this record has, 0 if it is only a tokenization. */
+    public int segmentCount() {
+        return segmentCount;
+    }
+
+    /** Start offset (inclusive) of the i-th segment in text(). */
+    public int segmentStart(int i) {
+        checkSegment(i);
+        return segments[2 * i] >>> 1;
+    }
+
+    /** End offset (exclusive) of the i-th segment in text(). */
+    public int segmentEnd(int i) {
+        checkSegment(i);
+        return segments[2 * i + 1];
+    }
+
+    public boolean isSep(int i) {
+        checkSegment(i);
+        return (segments[2 * i] & 1) != 0;
+    }
+
+    /** The i-th segment of the text, whitespace and all. */
+    public String segment(int i) {
+        return decode(segmentStart(i), segmentEnd(i));
+    }
+
+    /** The whole text, decoded. */
+    public String textString() {
+        return decode(0, text.limit());
+    }
+
+    private String decode(int start, int end) {
+        if (end > text.limit())
+            throw new IllegalStateException("no text for bytes " + start + " to " + end + ", attach the line first");
+        ByteBuffer bytes = text.duplicate();
+        ((Buffer) bytes).limit(end);
+        ((Buffer) bytes).position(start);
+        return StandardCharsets.UTF_8.decode(bytes).toString();
+    }
+
+    private void checkSegment(int i) {
+        if (i < 0 || i >= segmentCount)
+            throw new IndexOutOfBoundsException("segment " + i + " of " + segmentCount);
+    }
+
+    private int readVarint(int b) throws IOException {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            if (b < 0)
+                throw new EOFException("stream ends inside a record length");
+            if (shift > 28)
+                throw new IOException("corrupt record length");
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+            b = in.read();
+        }
+    }
+
+    // the varint at record[at[0]], moving at[0] past it
+    private int varint(int[] at, int length) throws IOException {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            if (at[0] >= length || shift > 28)
+                throw new IOException("corrupt record");
+            int b = record[at[0]++];
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+    }
+
+    private void readFully(byte[] into, int length) throws IOException {
+        for (int n = 0; n < length; ) {
+            int r = in.read(into, n, length - n);
+            if (r < 0)
+                throw new EOFException("stream ends inside a record");
+            n += r;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,155 @@
+package cmu.arktweetnlp;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Writes tokenizations and segmentations as compact binary records, to be
+ * read back by {@link TokenRecordReader}; see --binary.
+ *
+ * Unlike the text output, nothing in a tweet (a tab, a newline, a space
+ * inside a token) can break the format, and a reader needs no splitting or
+ * String building to get at the tokens. All numbers are unsigned varints
+ * (7 bits per byte, low bits first, the high bit set on all but the last):
+ *
+ *   stream:  "TWKB", a version byte (2), a flags byte (1 if the records carry
+ *            their text, else 0), then records
+ *   record:  the length in bytes of the rest of the record, then
+ *            only with the text: its length in UTF-8 bytes, the bytes
+ *            the tokens: how many, then for every token its start less the
+ *              previous token's end (0 for the first), and its length
+ *            the segments: how many, then if any, where the first starts,
+ *              and for every segment (its length << 1) | 1 if it's a separator
+ *
+ * Offsets and lengths are in UTF-8 bytes of the text the tokens are offsets
+ * into: for the command line, the input line as it was, HTML entities and
+ * all (see {@link Twokenizer#tokenizeRawTweetText(String, TokenSpans)}); for
+ * input that isn't valid UTF-8, the line as decoded, with U+FFFD for every
+ * malformed sequence.
+ * Segments are contiguous, as in {@link Segmentation}. By default a record
+ * leaves the text out, as whoever reads it has the input lines already; then
+ * a record is a few bytes per token. A record never refers to another, so a
+ * stream can be cut, concatenated (minus the header, with the same flags) or
+ * compressed in blocks at any record boundary, and a reader can skip a record
+ * by its length alone. Not thread-safe.
+ */
+public final class TokenRecordWriter implements Closeable, Flushable {
+
+    static final byte[] MAGIC = { 'T', 'W', 'K', 'B' };
+    static final int VERSION = 2;
+    static final int WITH_TEXT = 1;
+
+    private final OutputStream out;
+    private final boolean withText;
+    private byte[] record = new byte[1024];
+    private int length;
+    private byte[] text = new byte[1024];
+    private int[] byteAt = new int[256];
+
+    /** Records without their text. */
+    public TokenRecordWriter(OutputStream out) throws IOException {
+        this(out, false);
+    }
+
+    /** Records with their text if withText, so they can be read without the input. */
+    public TokenRecordWriter(OutputStream out, boolean withText) throws IOException {
+        this.out = new BufferedOutputStream(out, 1 << 16);
+        this.withText = withText;
+        this.out.write(MAGIC);
+        this.out.write(VERSION);
+        this.out.write(withText ? WITH_TEXT : 0);
+    }
+
+    /**
+     * A record of the tokens of tokens.text(), e.g. as filled in by
+     * {@link Twokenizer#tokenizeRawTweetText(String, TokenSpans)}.
+     */
+    public void write(TokenSpans tokens) throws IOException {
+        write(tokens, null);
+    }
+
+    /**
+     * A record of segments.raw(), its tokens and its segments.
+     *
+     * @throws IllegalArgumentException if tokens aren't offsets into segments.raw()
+     */
+    public void write(TokenSpans tokens, Segmentation segments) throws IOException {
+        CharSequence s = tokens.text();
+        if (segments != null && !segments.raw().contentEquals(s))
+            throw new IllegalArgumentException("the tokens are not of the segmented text");
+
+        int n = s.length();
+        if (text.length < 3 * n)
+            text = new byte[Math.max(3 * n, 2 * text.length)];
+        if (byteAt.length < n + 1)
+            byteAt = new int[Math.max(n + 1, 2 * byteAt.length)];
+        int bytes = Utf8.encode(s, text, 0, byteAt);
+
+        length = 0;
+        if (withText) {
+            varint(bytes);
+            ensure(bytes);
+            System.arraycopy(text, 0, record, length, bytes);
+            length += bytes;
+        }
+
+        varint(tokens.size());
+        int previousEnd = 0;
+        for (int i = 0; i < tokens.size(); i++) {
+            int start = byteAt[tokens.start(i)], end = byteAt[tokens.end(i)];
+            varint(start - previousEnd);
+            varint(end - start);
+            previousEnd = end;
+        }
+
+        int segs = segments == null ? 0 : segments.size();
+        varint(segs);
+        for (int i = 0; i < segs; i++) {
+            if (i == 0)
+                varint(byteAt[segments.rawStart(0)]);
+            else if (segments.rawStart(i) != segments.rawEnd(i - 1))
+                throw new IllegalArgumentException("segments " + (i - 1) + " and " + i + " are not contiguous");
+            int segLength = byteAt[segments.rawEnd(i)] - byteAt[segments.rawStart(i)];
+            varint(segLength << 1 | (segments.isSep(i) ? 1 : 0));
+        }
+
+        writeVarint(out, length);
+        out.write(record, 0, length);
+    }
+
+    private void varint(int value) {
+        ensure(5);
+        while ((value & ~0x7f) != 0) {
+            record[length++] = (byte) (value & 0x7f | 0x80);
+            value >>>= 7;
+        }
+        record[length++] = (byte) value;
+    }
+
+    private void ensure(int more) {
+        if (length + more > record.length)
+            record = Arrays.copyOf(record, Math.max(length + more, 2 * record.length));
+    }
+
+    private static void writeVarint(OutputStream out, int value) throws IOException {
+        while ((value & ~0x7f) != 0) {
+            out.write(value & 0x7f | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
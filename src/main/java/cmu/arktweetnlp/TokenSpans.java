@@ -0,0 +1,74 @@
+package cmu.arktweetnlp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Token offsets into a text, as filled in by {@link Twokenizer#tokenize(CharSequence, TokenSpans)}.
+ *
+ * Offsets are kept in a primitive array that is reused from one call to the
+ * next, so reading tokens this way costs no allocation at all; only
+ * {@link #token(int)} and {@link #toList()} create Strings.
+ */
+public final class TokenSpans {
+    private CharSequence text = "";
+    private int[] offsets;
+    private int size;
+
+    public TokenSpans() {
+        this(32);
+    }
+
+    public TokenSpans(int expectedTokens) {
+        offsets = new int[2 * Math.max(expectedTokens, 1)];
+    }
+
+    /** Forgets all tokens and makes these spans refer to text. */
+    void reset(CharSequence text) {
+        this.text = text;
+        this.size = 0;
+    }
+
+    void add(int start, int end) {
+        if (2 * size == offsets.length)
+            offsets = Arrays.copyOf(offsets, 2 * offsets.length);
+        offsets[2 * size] = start;
+        offsets[2 * size + 1] = end;
+        size++;
+    }
+
+    /** The text the offsets refer to. */
+    public CharSequence text() {
+        return text;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /** Start offset (inclusive) of the i-th token. */
+    public int start(int i) {
+        if (i >= size)
+            throw new IndexOutOfBoundsException("token " + i + " of " + size);
+        return offsets[2 * i];
+    }
+
+    /** End offset (exclusive) of the i-th token. */
+    public int end(int i) {
+        if (i >= size)
+            throw new IndexOutOfBoundsException("token " + i + " of " + size);
+        return offsets[2 * i + 1];
+    }
+
+    public String token(int i) {
+        return text.subSequence(start(i), end(i)).toString();
+    }
+
+    public List<String> toList() {
+        List<String> tokens = new ArrayList<String>(size);
+        for (int i = 0; i < size; i++)
+            tokens.add(token(i));
+        return tokens;
+    }
+}
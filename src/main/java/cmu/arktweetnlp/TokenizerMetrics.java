@@ -0,0 +1,216 @@
+package cmu.arktweetnlp;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Where a {@link Twokenizer}'s time goes, stage by stage, plus counts of the
+ * protected spans it finds and of the segmentations that fail to align.
+ * Hand one to {@link Twokenizer.Builder#metrics(TokenizerMetrics)}; without
+ * one, every measuring point is a single null check.
+ *
+ * Every stage keeps a histogram of its per-call times in power-of-two
+ * buckets, so percentiles are good to within a factor of two. All counters
+ * are LongAdders, so threads recording at once don't contend much. One
+ * instance may be shared by several tokenizers.
+ */
+public final class TokenizerMetrics implements TokenizerMetricsMXBean {
+
+    /** The stages of the pipeline that get timed. */
+    public enum Stage {
+        /** normalizeTextForTagger: decoding HTML entities */
+        UNESCAPE,
+        /** squeezing whitespace */
+        SQUEEZE,
+        /** the two edge punctuation passes */
+        EDGE_PUNCT,
+        /** looking for protected spans */
+        PROTECTED,
+        /** splitting the text between protected spans on whitespace, and collecting the tokens */
+        SPLIT,
+        /** finding the segmenter's separator spans */
+        SEPARATORS,
+        /** lining the tokens up with the separators */
+        ALIGN
+    }
+
+    private static final Stage[] STAGES = Stage.values();
+    private static final TokenClass[] CLASSES = TokenClass.values();
+    private static final int BUCKETS = 64;
+
+    private final LongAdder[][] histograms = new LongAdder[STAGES.length][BUCKETS];
+    private final LongAdder[] totals = new LongAdder[STAGES.length];
+    private final AtomicLong[] maxima = new AtomicLong[STAGES.length];
+    private final LongAdder[] matches = new LongAdder[CLASSES.length];
+    private final LongAdder alignmentFailures = new LongAdder();
+
+    public TokenizerMetrics() {
+        for (int s = 0; s < STAGES.length; s++) {
+            for (int b = 0; b < BUCKETS; b++)
+                histograms[s][b] = new LongAdder();
+            totals[s] = new LongAdder();
+            maxima[s] = new AtomicLong();
+        }
+        for (int c = 0; c < CLASSES.length; c++)
+            matches[c] = new LongAdder();
+    }
+
+    void record(Stage stage, long nanos) {
+        int s = stage.ordinal();
+        histograms[s][BUCKETS - Long.numberOfLeadingZeros(Math.max(nanos, 0) | 1)].increment();
+        totals[s].add(nanos);
+        AtomicLong max = maxima[s];
+        for (long m = max.get(); nanos > m && !max.compareAndSet(m, nanos); m = max.get())
+            ;
+    }
+
+    void matched(TokenClass c) {
+        if (c != null)
+            matches[c.ordinal()].increment();
+    }
+
+    void alignmentFailed() {
+        alignmentFailures.increment();
+    }
+
+    public long count(Stage stage) {
+        long n = 0;
+        for (LongAdder bucket : histograms[stage.ordinal()])
+            n += bucket.sum();
+        return n;
+    }
+
+    public long totalNanos(Stage stage) {
+        return totals[stage.ordinal()].sum();
+    }
+
+    public long maxNanos(Stage stage) {
+        return maxima[stage.ordinal()].get();
+    }
+
+    /** The time q (0 to 1) of a stage's calls took at most, rounded up to a power of two minus one. */
+    public long percentileNanos(Stage stage, double q) {
+        LongAdder[] histogram = histograms[stage.ordinal()];
+        long[] counts = new long[BUCKETS];
+        long n = 0;
+        for (int b = 0; b < BUCKETS; b++)
+            n += counts[b] = histogram[b].sum();
+        if (n == 0)
+            return 0;
+        long rank = (long) Math.ceil(q * n);
+        long seen = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            seen += counts[b];
+            if (seen >= Math.max(rank, 1))
+                return Math.min((1L << b) - 1, maxNanos(stage));
+        }
+        return maxNanos(stage);
+    }
+
+    public long protectedMatches(TokenClass c) {
+        return matches[c.ordinal()].sum();
+    }
+
+    @Override
+    public long getAlignmentFailures() {
+        return alignmentFailures.sum();
+    }
+
+    @Override
+    public Map<String, Long> getStageCounts() {
+        Map<String, Long> m = new LinkedHashMap<String, Long>();
+        for (Stage s : STAGES)
+            m.put(s.name(), count(s));
+        return m;
+    }
+
+    @Override
+    public Map<String, Long> getStageTotalNanos() {
+        Map<String, Long> m = new LinkedHashMap<String, Long>();
+        for (Stage s : STAGES)
+            m.put(s.name(), totalNanos(s));
+        return m;
+    }
+
+    @Override
+    public Map<String, Long> getStageMedianNanos() {
+        Map<String, Long> m = new LinkedHashMap<String, Long>();
+        for (Stage s : STAGES)
+            m.put(s.name(), percentileNanos(s, 0.5));
+        return m;
+    }
+
+    @Override
+    public Map<String, Long> getStageP99Nanos() {
+        Map<String, Long> m = new LinkedHashMap<String, Long>();
+        for (Stage s : STAGES)
+            m.put(s.name(), percentileNanos(s, 0.99));
+        return m;
+    }
+
+    @Override
+    public Map<String, Long> getStageMaxNanos() {
+        Map<String, Long> m = new LinkedHashMap<String, Long>();
+        for (Stage s : STAGES)
+            m.put(s.name(), maxNanos(s));
+        return m;
+    }
+
+    @Override
+    public Map<String, Long> getProtectedMatches() {
+        Map<String, Long> m = new LinkedHashMap<String, Long>();
+        for (TokenClass c : CLASSES)
+            m.put(c.name(), protectedMatches(c));
+        return m;
+    }
+
+    @Override
+    public void reset() {
+        for (int s = 0; s < STAGES.length; s++) {
+            for (LongAdder bucket : histograms[s])
+                bucket.reset();
+            totals[s].reset();
+            maxima[s].set(0);
+        }
+        for (LongAdder c : matches)
+            c.reset();
+        alignmentFailures.reset();
+    }
+
+    /** Registers with the platform MBean server as cmu.arktweetnlp:type=TokenizerMetrics,name=name. */
+    public ObjectName register(String name) throws JMException {
+        ObjectName objectName = new ObjectName("cmu.arktweetnlp:type=TokenizerMetrics,name=" + ObjectName.quote(name));
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        server.registerMBean(this, objectName);
+        return objectName;
+    }
+
+    /** A table of the stages, then the non-zero match counts and the alignment failures. */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-10s %12s %12s %10s %10s %10s %10s%n",
+                "stage", "calls", "total ms", "mean ns", "p50 ns", "p99 ns", "max ns"));
+        for (Stage s : STAGES) {
+            long n = count(s);
+            sb.append(String.format("%-10s %12d %12.1f %10d %10d %10d %10d%n",
+                    s.name().toLowerCase(), n, totalNanos(s) / 1e6, n == 0 ? 0 : totalNanos(s) / n,
+                    percentileNanos(s, 0.5), percentileNanos(s, 0.99), maxNanos(s)));
+        }
+        sb.append("protected:");
+        for (TokenClass c : CLASSES) {
+            long n = protectedMatches(c);
+            if (n > 0)
+                sb.append(' ').append(c.name().toLowerCase()).append('=').append(n);
+        }
+        sb.append(String.format("%nalignment failures: %d%n", getAlignmentFailures()));
+        return sb.toString();
+    }
+}
@@ -0,0 +1,30 @@
+package cmu.arktweetnlp;
+
+import java.util.Map;
+
+/**
+ * What {@link TokenizerMetrics} shows over JMX. Stage maps are keyed by
+ * {@link TokenizerMetrics.Stage} name, match counts by {@link TokenClass} name.
+ */
+public interface TokenizerMetricsMXBean {
+
+    /** How often each stage ran. */
+    Map<String, Long> getStageCounts();
+
+    Map<String, Long> getStageTotalNanos();
+
+    Map<String, Long> getStageMedianNanos();
+
+    Map<String, Long> getStageP99Nanos();
+
+    Map<String, Long> getStageMaxNanos();
+
+    /** How many protected spans of each class the tokenizer found. */
+    Map<String, Long> getProtectedMatches();
+
+    /** How often simpleSegment or segment couldn't line the tokens up with the raw text. */
+    long getAlignmentFailures();
+
+    /** Starts counting from zero again. */
+    void reset();
+}
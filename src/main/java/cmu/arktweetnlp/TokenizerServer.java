@@ -0,0 +1,298 @@
+package cmu.arktweetnlp;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Twokenize as a long-running process on a localhost TCP port, so pipelines
+ * that call it once per file or shard pay for JVM startup and pattern
+ * compilation once, see --serve and --client.
+ *
+ * A request is a frame: a 4-byte big-endian length, then that many bytes, an
+ * op byte followed by UTF-8 text, one tweet per line:
+ *   'R'  normalize and tokenize, as the command line does
+ *   'T'  tokenize, for text without HTML escaping
+ *   'S'  tokenize and segment, as --segment does
+ * The response is a frame too: the length, then a status byte (0 for ok, 1
+ * for an error) followed by UTF-8 text, the command line's output for those
+ * lines or the error message. Lines end as they do for BufferedReader, at
+ * '\n', '\r' or "\r\n", and a frame should end with a whole line: a line
+ * cut between two frames counts as two.
+ *
+ * A client may send many requests without waiting. They run concurrently on
+ * the worker threads, shared by all connections, and are answered in the
+ * order they came in. Once the client has shut down its output and every
+ * request has been answered, the server closes the connection.
+ */
+final class TokenizerServer {
+
+    static final byte NORMALIZE_AND_TOKENIZE = 'R', TOKENIZE = 'T', SEGMENT = 'S';
+    static final byte OK = 0, ERROR = 1;
+
+    private static final int MAX_FRAME = 64 << 20;
+
+    private final Twokenizer tk;
+    private final ExecutorService pool;
+    private final int threads;
+
+    TokenizerServer(Twokenizer tk, int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("threads must be positive, got " + threads);
+        this.tk = tk;
+        this.threads = threads;
+        this.pool = Executors.newFixedThreadPool(threads, daemons("twokenize-worker-"));
+    }
+
+    private static ThreadFactory daemons(final String prefix) {
+        return new ThreadFactory() {
+            private int n = 0;
+            @Override
+            public synchronized Thread newThread(Runnable r) {
+                Thread t = new Thread(r, prefix + (n++));
+                t.setDaemon(true);
+                return t;
+            }
+        };
+    }
+
+    /** Listens on port (0 for any free one, which is printed) of the loopback address; never returns. */
+    void serve(int port) throws IOException {
+        ServerSocket server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        // compile the patterns and warm up before the first client waits on it
+        for (byte op : new byte[] { NORMALIZE_AND_TOKENIZE, SEGMENT })
+            respond(op, "@user: so much fun :) &lt;3 http://example.com #yay".getBytes(StandardCharsets.UTF_8));
+        System.err.println("listening on " + server.getLocalSocketAddress());
+        ThreadFactory connections = daemons("twokenize-connection-");
+        while (true) {
+            final Socket socket = server.accept();
+            connections.newThread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        handle(socket);
+                    } catch (IOException e) {
+                        System.err.println("connection " + socket.getRemoteSocketAddress() + ": " + e);
+                    } finally {
+                        try {
+                            socket.close();
+                        } catch (IOException e) {
+                            // nothing left to tell the client
+                        }
+                    }
+                }
+            }).start();
+        }
+    }
+
+    // Reads requests on this thread and writes responses on another, in order, as BatchRunner does.
+    private void handle(final Socket socket) throws IOException {
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+        // two requests per worker in flight keep everyone busy, and the reader blocks when the client reads too slowly
+        final BlockingQueue<Future<byte[]>> pending = new ArrayBlockingQueue<Future<byte[]>>(2 * threads);
+        final Future<byte[]> endOfInput = new CompletableFuture<byte[]>();
+        final IOException[] writeError = new IOException[1];
+
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Future<byte[]> next;
+                    while ((next = pending.take()) != endOfInput) {
+                        try {
+                            writeFrame(out, OK, next.get());
+                        } catch (ExecutionException e) {
+                            writeFrame(out, ERROR, String.valueOf(e.getCause()).getBytes(StandardCharsets.UTF_8));
+                        }
+                        // flush once nothing more is ready, not after every response
+                        if (pending.isEmpty())
+                            out.flush();
+                    }
+                    out.flush();
+                } catch (IOException e) {
+                    writeError[0] = e;
+                    // the reader fails on its next read; until then, keep it from blocking on a full queue
+                    try {
+                        socket.close();
+                        while (pending.take() != endOfInput)
+                            ;
+                    } catch (IOException | InterruptedException ignored) {
+                        // interrupted once the reader is done
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, Thread.currentThread().getName() + "-writer");
+        writer.setDaemon(true);
+        writer.start();
+
+        try {
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                if (length < 1 || length > MAX_FRAME)
+                    throw new IOException("bad frame length " + length);
+                final byte op = in.readByte();
+                final byte[] text = new byte[length - 1];
+                in.readFully(text);
+                pending.put(pool.submit(new Callable<byte[]>() {
+                    @Override
+                    public byte[] call() {
+                        return respond(op, text);
+                    }
+                }));
+            }
+            pending.put(endOfInput);
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted", e);
+        } finally {
+            writer.interrupt();
+        }
+        if (writeError[0] != null)
+            throw writeError[0];
+    }
+
+    /** The output for every line of text, as the command line would write it. */
+    private byte[] respond(byte op, byte[] text) {
+        BatchRunner.LineFunction fn;
+        if (op == NORMALIZE_AND_TOKENIZE)
+            fn = Twokenize.tokenizer(tk, true);
+        else if (op == TOKENIZE)
+            fn = Twokenize.tokenizer(tk, false);
+        else if (op == SEGMENT)
+            fn = Twokenize.segmenter(tk);
+        else
+            throw new IllegalArgumentException("unknown op '" + (char) op + "'");
+        String lines = new String(text, StandardCharsets.UTF_8);
+        StringBuilder out = new StringBuilder(2 * lines.length());
+        String[] record = new String[1];
+        int n = lines.length();
+        for (int start = 0; start < n; ) {
+            // the same lines BufferedReader.readLine would give: ended by '\n', '\r' or "\r\n"
+            int end = start;
+            while (end < n && lines.charAt(end) != '\n' && lines.charAt(end) != '\r')
+                end++;
+            record[0] = lines.substring(start, end);
+            fn.apply(record, out);
+            start = end + 1 < n && lines.charAt(end) == '\r' && lines.charAt(end + 1) == '\n' ? end + 2 : end + 1;
+        }
+        return out.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void writeFrame(DataOutputStream out, byte first, byte[] rest) throws IOException {
+        out.writeInt(rest.length + 1);
+        out.writeByte(first);
+        out.write(rest);
+    }
+
+    /**
+     * Where the last whole line in buffer[0, filled) ends, 0 if there is none:
+     * after a '\n', or after a '\r' that something other than '\n' follows. A
+     * '\r' at the very end waits for the next read, which may bring its '\n'.
+     */
+    static int linesEnd(byte[] buffer, int filled) {
+        for (int i = filled - 1; i >= 0; i--) {
+            if (buffer[i] == '\n' || buffer[i] == '\r' && i + 1 < filled)
+                return i + 1;
+        }
+        return 0;
+    }
+
+    /**
+     * Streams in through the server on port, as many whole lines per frame as
+     * each read brings in, and copies the responses to out. The bytes are sent as they are,
+     * never decoded here. Does not close in or out.
+     */
+    static void client(int port, final byte op, final InputStream in, OutputStream out) throws IOException {
+        final Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+        try {
+            final DataOutputStream requests = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+            final IOException[] sendError = new IOException[1];
+            Thread sender = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        byte[] buffer = new byte[1 << 16];
+                        int filled = 0;
+                        for (int n; (n = in.read(buffer, filled, buffer.length - filled)) >= 0; ) {
+                            filled += n;
+                            // send whatever whole lines have come in, keep the rest for the next read
+                            int cut = linesEnd(buffer, filled);
+                            if (cut > 0) {
+                                writeFrame(requests, op, Arrays.copyOf(buffer, cut));
+                                requests.flush();
+                                System.arraycopy(buffer, cut, buffer, 0, filled - cut);
+                                filled -= cut;
+                            } else if (filled == buffer.length) {
+                                buffer = Arrays.copyOf(buffer, 2 * buffer.length); // one long line
+                            }
+                        }
+                        if (filled > 0)
+                            writeFrame(requests, op, Arrays.copyOf(buffer, filled));
+                        requests.flush();
+                        socket.shutdownOutput();
+                    } catch (IOException e) {
+                        sendError[0] = e;
+                    }
+                }
+            }, "twokenize-client-sender");
+            sender.setDaemon(true);
+            sender.start();
+
+            DataInputStream responses = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+            while (true) {
+                int length;
+                try {
+                    length = responses.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                if (length < 1 || length > MAX_FRAME)
+                    throw new IOException("bad frame length " + length);
+                byte status = responses.readByte();
+                byte[] text = new byte[length - 1];
+                responses.readFully(text);
+                if (status != OK)
+                    throw new IOException("server: " + new String(text, StandardCharsets.UTF_8));
+                out.write(text);
+            }
+            out.flush();
+            try {
+                sender.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (sendError[0] != null)
+                throw sendError[0];
+        } finally {
+            socket.close();
+        }
+    }
+}
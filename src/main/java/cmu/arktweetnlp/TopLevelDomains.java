@@ -0,0 +1,225 @@
+package cmu.arktweetnlp;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * The top-level domains a naked host name ("example.com", no http://) must
+ * end in to count as a URL.
+ *
+ * The defaults are the generic and country code domains Twokenize has always
+ * known. More, e.g. the newer generic ones, can be read at runtime and handed
+ * to {@link Twokenizer.Builder#topLevelDomains(TopLevelDomains)}:
+ *
+ * <pre>
+ *   TopLevelDomains tlds = TopLevelDomains.defaults().plus(TopLevelDomains.read(reader));
+ * </pre>
+ *
+ * Names are matched in lower case only, as they always were. Two-letter names
+ * are country codes, which may also follow another domain ("example.co.uk").
+ * Looking a name up is a hash table probe, without a substring, however long
+ * the list gets. Immutable.
+ */
+public final class TopLevelDomains {
+
+    private static final TopLevelDomains DEFAULTS = new TopLevelDomains(namesOf(Twokenize.commonTLDs, Twokenize.ccTLDs),
+            Twokenize.urlStart2, Twokenize.url);
+
+    private final Set<String> names;
+    private final String[] table; // open addressing, so a lookup needs no substring
+    private final int longest;
+    private final String urlStart2Regex;
+    private final String urlRegex;
+
+    private TopLevelDomains(Set<String> names) {
+        this(names, urlStart2Regex(names), null);
+    }
+
+    private TopLevelDomains(Set<String> names, String urlStart2Regex, String urlRegex) {
+        this.names = Collections.unmodifiableSet(names);
+        int size = Integer.highestOneBit(Math.max(names.size(), 1) * 4);
+        this.table = new String[size];
+        int longest = 0;
+        for (String name : names) {
+            int slot = hash(name, 0, name.length()) & (size - 1);
+            while (table[slot] != null)
+                slot = (slot + 1) & (size - 1);
+            table[slot] = name;
+            longest = Math.max(longest, name.length());
+        }
+        this.longest = longest;
+        this.urlStart2Regex = urlStart2Regex;
+        this.urlRegex = urlRegex != null ? urlRegex : "(?:" + Twokenize.urlStart1 + "|" + urlStart2Regex + ")" + Twokenize.urlBody
+                + "(?=(?:" + Twokenize.urlExtraCrapBeforeEnd + ")?" + Twokenize.urlEnd + ")";
+    }
+
+    /** The domains Twokenize has always known. */
+    public static TopLevelDomains defaults() {
+        return DEFAULTS;
+    }
+
+    /**
+     * Exactly these domains. Every name is a label of letters, digits and
+     * inner hyphens, with or without a leading dot.
+     *
+     * @throws IllegalArgumentException for anything else
+     */
+    public static TopLevelDomains of(Collection<String> names) {
+        Set<String> set = new TreeSet<String>();
+        for (String name : names)
+            set.add(normalize(name));
+        return new TopLevelDomains(set);
+    }
+
+    /**
+     * Reads one domain per line, e.g. the IANA list. Blank lines and
+     * everything after a '#' are ignored.
+     *
+     * @throws IllegalArgumentException for a line that isn't a domain name
+     */
+    public static TopLevelDomains read(Reader in) throws IOException {
+        BufferedReader lines = new BufferedReader(in);
+        List<String> names = new ArrayList<String>();
+        for (String line; (line = lines.readLine()) != null; ) {
+            int comment = line.indexOf('#');
+            if (comment >= 0)
+                line = line.substring(0, comment);
+            line = line.trim();
+            if (!line.isEmpty())
+                names.add(line);
+        }
+        return of(names);
+    }
+
+    /** These domains and other's. */
+    public TopLevelDomains plus(TopLevelDomains other) {
+        if (names.containsAll(other.names))
+            return this;
+        Set<String> set = new TreeSet<String>(names);
+        set.addAll(other.names);
+        return new TopLevelDomains(set);
+    }
+
+    /** The names, in lower case, without dots. */
+    public Set<String> names() {
+        return names;
+    }
+
+    public boolean contains(String name) {
+        return contains(name, 0, name.length());
+    }
+
+    /** Whether s[start, end) is one of the names. */
+    boolean contains(CharSequence s, int start, int end) {
+        if (end - start > longest || end <= start)
+            return false;
+        int slot = hash(s, start, end) & (table.length - 1);
+        for (String name; (name = table[slot]) != null; slot = (slot + 1) & (table.length - 1)) {
+            if (name.length() == end - start && regionEquals(name, s, start))
+                return true;
+        }
+        return false;
+    }
+
+    /** Whether s[start, end) is a country code, i.e. a two-letter name. */
+    boolean isCountryCode(CharSequence s, int start, int end) {
+        return end - start == 2 && contains(s, start, end);
+    }
+
+    int longest() {
+        return longest;
+    }
+
+    /** Twokenize.url, with these domains in it. */
+    String urlRegex() {
+        return urlRegex;
+    }
+
+    /** Twokenize.urlStart2, with these domains in it. */
+    String urlStart2Regex() {
+        return urlStart2Regex;
+    }
+
+    private static String urlStart2Regex(Set<String> names) {
+        // longest first: of two names where both fit, the regex should try the one the recognizer does
+        List<String> all = new ArrayList<String>(names);
+        Collections.sort(all, new Comparator<String>() {
+            @Override
+            public int compare(String a, String b) {
+                return a.length() != b.length() ? b.length() - a.length() : a.compareTo(b);
+            }
+        });
+        List<String> countryCodes = new ArrayList<String>();
+        for (String name : all) {
+            if (name.length() == 2)
+                countryCodes.add(name);
+        }
+        // an empty alternation would match the empty string
+        String tlds = all.isEmpty() ? "(?!)" : Twokenize.OR(all.toArray(new String[all.size()]));
+        String ccTLDs = countryCodes.isEmpty() ? "(?!)" : Twokenize.OR(countryCodes.toArray(new String[countryCodes.size()]));
+        return "\\b(?:[A-Za-z\\d-])+(?:\\.[A-Za-z0-9]+){0,3}\\." + tlds + "(?:\\." + ccTLDs + ")?(?=\\W|$)";
+    }
+
+    // "(?:com|org|...)" and so on, back to names
+    private static Set<String> namesOf(String... alternations) {
+        Set<String> set = new TreeSet<String>();
+        for (String alternation : alternations) {
+            for (String name : alternation.substring(3, alternation.length() - 1).split("\\|"))
+                set.add(name);
+        }
+        return set;
+    }
+
+    private static String normalize(String name) {
+        String n = name.startsWith(".") ? name.substring(1) : name;
+        n = n.toLowerCase(Locale.ROOT);
+        boolean ok = !n.isEmpty() && n.charAt(0) != '-' && n.charAt(n.length() - 1) != '-';
+        for (int i = 0; ok && i < n.length(); ) {
+            int c = n.codePointAt(i);
+            ok = Character.isLetterOrDigit(c) || c == '-';
+            i += Character.charCount(c);
+        }
+        if (!ok)
+            throw new IllegalArgumentException("not a top-level domain: \"" + name + "\"");
+        return n;
+    }
+
+    private static int hash(CharSequence s, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++)
+            h = 31 * h + s.charAt(i);
+        return h ^ (h >>> 9);
+    }
+
+    private static boolean regionEquals(String name, CharSequence s, int start) {
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) != s.charAt(start + i))
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof TopLevelDomains && ((TopLevelDomains) o).names.equals(names);
+    }
+
+    @Override
+    public int hashCode() {
+        return names.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return names.size() + " top-level domains";
+    }
+}
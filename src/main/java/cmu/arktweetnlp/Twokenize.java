@@ -0,0 +1,555 @@
+package cmu.arktweetnlp;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
+
+/**
+ * Twokenize -- a tokenizer designed for Twitter text in English and some other European languages.
+ * This is the Java version. If you want the old Python version, see: http://github.com/brendano/tweetmotif
+ * 
+ * This tokenizer code has gone through a long history:
+ *
+ * (1) Brendan O'Connor wrote original version in Python, http://github.com/brendano/tweetmotif
+ *        TweetMotif: Exploratory Search and Topic Summarization for Twitter.
+ *        Brendan O'Connor, Michel Krieger, and David Ahn.
+ *        ICWSM-2010 (demo track), http://brenocon.com/oconnor_krieger_ahn.icwsm2010.tweetmotif.pdf
+ * (2a) Kevin Gimpel and Daniel Mills modified it for POS tagging for the CMU ARK Twitter POS Tagger
+ * (2b) Jason Baldridge and David Snyder ported it to Scala
+ * (3) Brendan bugfixed the Scala port and merged with POS-specific changes
+ *     for the CMU ARK Twitter POS Tagger  
+ * (4) Tobi Owoputi ported it back to Java and added many improvements (2012-06)
+ * (5) Sebastian Mielke made it unicode-aware (2016-05) and taught it to segment tweets for translation (2016-06)
+ * 
+ * Original home is http://github.com/brendano/ark-tweet-nlp and http://www.ark.cs.cmu.edu/TweetNLP
+ *
+ * There have been at least 2 other Java ports, but they are not in the lineage for the code here.
+ */
+public class Twokenize {
+    static String punctChars = "['\"“”‘’.?!…,:;]"; 
+    //static String punctSeq   = punctChars+"+";	//'anthem'. => ' anthem '.
+    static String punctSeq   = "['\"“”‘’]+|[.?!,…]+|[:;]+";	//'anthem'. => ' anthem ' .
+    static String entity     = "&(?:amp|lt|gt|quot);";
+    //  URLs
+
+    // BTO 2012-06: everyone thinks the daringfireball regex should be better, but they're wrong.
+    // If you actually empirically test it the results are bad.
+    // Please see https://github.com/brendano/ark-tweet-nlp/pull/9
+
+    static String urlStart1  = "(?:https?://|\\bwww\\.)";
+    static String commonTLDs = "(?:com|org|edu|gov|net|mil|aero|asia|biz|cat|coop|info|int|jobs|mobi|museum|name|pro|tel|travel|xxx)";
+    static String ccTLDs	 = "(?:ac|ad|ae|af|ag|ai|al|am|an|ao|aq|ar|as|at|au|aw|ax|az|ba|bb|bd|be|bf|bg|bh|bi|bj|bm|bn|bo|br|bs|bt|" +
+    "bv|bw|by|bz|ca|cc|cd|cf|cg|ch|ci|ck|cl|cm|cn|co|cr|cs|cu|cv|cx|cy|cz|dd|de|dj|dk|dm|do|dz|ec|ee|eg|eh|" +
+    "er|es|et|eu|fi|fj|fk|fm|fo|fr|ga|gb|gd|ge|gf|gg|gh|gi|gl|gm|gn|gp|gq|gr|gs|gt|gu|gw|gy|hk|hm|hn|hr|ht|" +
+    "hu|id|ie|il|im|in|io|iq|ir|is|it|je|jm|jo|jp|ke|kg|kh|ki|km|kn|kp|kr|kw|ky|kz|la|lb|lc|li|lk|lr|ls|lt|" +
+    "lu|lv|ly|ma|mc|md|me|mg|mh|mk|ml|mm|mn|mo|mp|mq|mr|ms|mt|mu|mv|mw|mx|my|mz|na|nc|ne|nf|ng|ni|nl|no|np|" +
+    "nr|nu|nz|om|pa|pe|pf|pg|ph|pk|pl|pm|pn|pr|ps|pt|pw|py|qa|re|ro|rs|ru|rw|sa|sb|sc|sd|se|sg|sh|si|sj|sk|" +
+    "sl|sm|sn|so|sr|ss|st|su|sv|sy|sz|tc|td|tf|tg|th|tj|tk|tl|tm|tn|to|tp|tr|tt|tv|tw|tz|ua|ug|uk|us|uy|uz|" +
+    "va|vc|ve|vg|vi|vn|vu|wf|ws|ye|yt|za|zm|zw)";	//TODO: remove obscure country domains?
+    static String urlStart2  = "\\b(?:[A-Za-z\\d-])+(?:\\.[A-Za-z0-9]+){0,3}\\." + "(?:"+commonTLDs+"|"+ccTLDs+")"+"(?:\\."+ccTLDs+")?(?=\\W|$)";
+    static String urlBody    = "(?:[^\\.\\s<>][^\\s<>]*?)?";
+    static String urlExtraCrapBeforeEnd = "(?:"+punctChars+"|"+entity+")+?";
+    static String urlEnd     = "(?:\\.\\.+|[<>]|\\s|$)";
+    public static String url        = "(?:"+urlStart1+"|"+urlStart2+")"+urlBody+"(?=(?:"+urlExtraCrapBeforeEnd+")?"+urlEnd+")";
+
+
+    // Numeric
+    static String timeLike   = "\\d+(?::\\d+){1,2}";
+    //static String numNum     = "\\d+\\.\\d+";
+    static String numberWithCommas = "(?:(?<!\\d)\\d{1,3},)+?\\d{3}" + "(?=(?:[^,\\d]|$))";
+    static String numComb	 = "\\p{Sc}?\\d+(?:\\.\\d+)+%?";
+
+    // Abbreviations
+    static String boundaryNotDot = "(?:$|\\s|[“\\u0022?!,:;]|" + entity + ")";
+    static String aa1  = "(?:[A-Za-z]\\.){2,}(?=" + boundaryNotDot + ")";
+    static String aa2  = "[^\\p{Alpha}](?:[\\p{Alpha}]\\.){1,}[\\p{Alpha}](?=" + boundaryNotDot + ")";
+    static String standardAbbreviations = "\\b(?:[Mm]r|[Mm]rs|[Mm]s|[Dd]r|[Ss]r|[Jj]r|[Rr]ep|[Ss]en|[Ss]t)\\.";
+    static String arbitraryAbbrev = "(?:" + aa1 +"|"+ aa2 + "|" + standardAbbreviations + ")";
+    static String separators  = "(?:--+|―|—|~|–|=)";
+    static String decorations = "(?:[♫♪]+|[★☆]+|[♥❤♡]+|[\\u2639-\\u263b]+|[\\ue001-\\uebbb]+)";
+    static String thingsThatSplitWords = "[^\\s\\.,?\"]";
+    static String embeddedApostrophe = thingsThatSplitWords+"+['’′]" + thingsThatSplitWords + "*";
+    
+    public static String OR(String... parts) {
+        String prefix="(?:";
+        StringBuilder sb = new StringBuilder();
+        for (String s:parts){
+            sb.append(prefix);
+            prefix="|";
+            sb.append(s);
+        }
+        sb.append(")");
+        return sb.toString();
+    }
+    
+    //  Emoticons
+    static String normalEyes = "(?iu)[:=]"; // 8 and x are eyes but cause problems
+    static String wink = "[;]";
+    static String noseArea = "(?:|-|[^a-zA-Z0-9 ])"; // doesn't get :'-(
+    static String happyMouths = "[D\\)\\]\\}]+";
+    static String sadMouths = "[\\(\\[\\{]+";
+    static String tongue = "[pPd3]+";
+    static String otherMouths = "(?:[oO]+|[/\\\\]+|[vV]+|[Ss]+|[|]+)"; // remove forward slash if http://'s aren't cleaned
+
+    // mouth repetition examples:
+    // @aliciakeys Put it in a love song :-))
+    // @hellocalyclops =))=))=)) Oh well
+
+    static String bfLeft = "(♥|0|o|°|v|\\$|t|x|;|\\u0CA0|@|ʘ|•|・|◕|\\^|¬|\\*)";
+    static String bfCenter = "(?:[\\.]|[_-]+)";
+    static String bfRight = "\\2";
+    static String s3 = "(?:--['\"])";
+    static String s4 = "(?:<|&lt;|>|&gt;)[\\._-]+(?:<|&lt;|>|&gt;)";
+    static String s5 = "(?:[.][_]+[.])";
+    static String basicface = "(?:(?i)" +bfLeft+bfCenter+bfRight+ ")|" +s3+ "|" +s4+ "|" + s5;
+
+    static String eeLeft = "[＼\\\\ƪԄ\\(（<>;ヽ\\-=~\\*]+";
+    static String eeRight= "[\\-=\\);'\\u0022<>ʃ）/／ノﾉ丿╯σっµ~\\*]+";
+    static String eeSymbol = "[^A-Za-z0-9\\s\\(\\)\\*:=-]";
+    static String eastEmote = eeLeft + "(?:"+basicface+"|" +eeSymbol+")+" + eeRight;
+
+    
+    public static String emoticon = OR(
+            // Standard version  :) :( :] :D :P
+    		"(?:>|&gt;)?" + OR(normalEyes, wink) + OR(noseArea,"[Oo]") + 
+            	OR(tongue+"(?=\\W|$|RT|rt|Rt)", otherMouths+"(?=\\W|$|RT|rt|Rt)", sadMouths, happyMouths),
+
+            // reversed version (: D:  use positive lookbehind to remove "(word):"
+            // because eyes on the right side is more ambiguous with the standard usage of : ;
+            "(?<=(?: |^))" + OR(sadMouths,happyMouths,otherMouths) + noseArea + OR(normalEyes, wink) + "(?:<|&lt;)?",
+
+            //inspired by http://en.wikipedia.org/wiki/User:Scapler/emoticons#East_Asian_style
+            eastEmote.replaceFirst("2", "1"), basicface
+            // iOS 'emoji' characters (some smileys, some symbols) [\ue001-\uebbb]  
+            // TODO should try a big precompiled lexicon from Wikipedia, Dan Ramage told me (BTO) he does this
+            // (there is one now, on top of these patterns: see EmoticonLexicon and Twokenizer.Builder.emoticonLexicon)
+    );
+
+    static String Hearts = "(?:<+/?3+)+"; //the other hearts are in decorations
+
+    static String Arrows = "(?:<*[-―—=]*>+|<+[-―—=]*>*)|\\p{InArrows}+";
+
+    // BTO 2011-06: restored Hashtag, AtMention protection (dropped in original scala port) because it fixes
+    // "hello (#hashtag)" ==> "hello (#hashtag )"  WRONG
+    // "hello (#hashtag)" ==> "hello ( #hashtag )"  RIGHT
+    // "hello (@person)" ==> "hello (@person )"  WRONG
+    // "hello (@person)" ==> "hello ( @person )"  RIGHT
+    // ... Some sort of weird interaction with edgepunct I guess, because edgepunct 
+    // has poor content-symbol detection.
+
+    // This also gets #1 #40 which probably aren't hashtags .. but good as tokens.
+    // If you want good hashtag identification, use a different regex.
+    static String Hashtag = "#[\\w]+";  //optional: lookbehind for \b
+    //optional: lookbehind for \b, max length 15
+    static String AtMention = "[@＠][\\w]+"; 
+
+    // I was worried this would conflict with at-mentions
+    // but seems ok in sample of 5800: 7 changes all email fixes
+    // http://www.regular-expressions.info/email.html
+    static String Bound = "(?:\\W|^|$)";
+    public static String Email = "(?<=" +Bound+ ")[\\w.%+-]+@[\\p{Alpha}0-9.-]+\\.[\\p{Alpha}]{2,4}(?=" +Bound+")";
+
+    // We will be tokenizing using these regexps as delimiters
+    // Additionally, these things are "protected", meaning they shouldn't be further split themselves.
+    // See TokenClass for the full list (and order) of protected classes;
+    // Twokenizer compiles them once per engine.
+
+    // Edge punctuation
+    // Want: 'foo' => ' foo '
+    // While also:   don't => don't
+    // the first is considered "edge punctuation".
+    // the second is word-internal punctuation -- don't want to mess with it.
+    // BTO (2011-06): the edgepunct system seems to be the #1 source of problems these days.  
+    // I remember it causing lots of trouble in the past as well.  Would be good to revisit or eliminate.
+
+    // Note the 'smart quotes' (http://en.wikipedia.org/wiki/Smart_quotes)
+    static String edgePunctChars    = "'\"“”‘’«»{}\\(\\)\\[\\]\\*&"; //add \\p{So}? (symbols)
+    static String edgePunct    = "[" + edgePunctChars + "]";
+    static String notEdgePunct = "[\\p{Alpha}0-9]"; // content characters
+    static String offEdge = "(^|$|:|;|\\s|\\.|,)";  // colon here gets "(hello):" ==> "( hello ):"
+
+    public static String splitEdgePunct (String input) {
+        return Twokenizer.DEFAULT.splitEdgePunct(input);
+    }
+
+    public static String simpleSegment (String rawtext_unsqueezed, String tokenized) {
+        return Twokenizer.DEFAULT.simpleSegment(rawtext_unsqueezed, tokenized);
+    }
+
+    /** simpleSegment, as a list of segments instead of one string. */
+    public static Segmentation segment (String rawtext, String tokenized) {
+        return Twokenizer.DEFAULT.segment(rawtext, tokenized);
+    }
+
+    /** tokenize and segment in one pass, see Twokenizer.tokenizeAndSegment. */
+    public static Segmentation tokenizeAndSegment (String text) {
+        return Twokenizer.DEFAULT.tokenizeAndSegment(text);
+    }
+
+    /** "foo   bar " => "foo bar" */
+    public static String squeezeWhitespace (String input){
+        return Twokenizer.DEFAULT.squeezeWhitespace(input);
+    }
+
+    /** Assume 'text' has no HTML escaping. **/
+    public static List<String> tokenize(String text){
+        return Twokenizer.DEFAULT.tokenize(text);
+    }
+
+
+    /**
+     * Twitter text comes HTML-escaped, so unescape it.
+     * We also first unescape &amp;'s, in case the text has been buggily double-escaped.
+     */
+    public static String normalizeTextForTagger(String text) {
+        return Twokenizer.DEFAULT.normalizeTextForTagger(text);
+    }
+
+    /**
+     * This is intended for raw tweet text -- we do some HTML entity unescaping before running the tagger.
+     * 
+     * This function normalizes the input text BEFORE calling the tokenizer.
+     * So the tokens you get back may not exactly correspond to
+     * substrings of the original text.
+     */
+    public static List<String> tokenizeRawTweetText(String text) {
+        return Twokenizer.DEFAULT.tokenizeRawTweetText(text);
+    }
+
+    /**
+     * Tokenizes tweet texts on standard input, tokenizations on standard output.  Input and output UTF-8.
+     * With two file arguments (raw tweets, tokenized tweets), segments instead.
+     *
+     * --threads N  batch mode: work on N threads, one output line (or segmentation) per input line
+     * --engine regex|scanner  how protected spans are found, see Twokenizer.Engine
+     * --prefilter  with the regex engine, only try the protected patterns where a protected token can start
+     * --timeout-ms N  give up on matching a line after N ms and fall back to whitespace tokenization,
+     *                 reporting every such line (its length and first 80 chars) on standard error
+     * --cache CHARS  cache results for up to about CHARS chars of repeated input text,
+     *                and print the cache's hit and eviction counts on standard error at the end
+     * --tlds FILE  also count these top-level domains (one per line, e.g. the IANA list) for naked host names
+     * --emoticons  also protect the entries of the bundled emoticon lexicon (EmoticonLexicon.defaults())
+     * --emoticons-from FILE  ... and those in FILE, one per line
+     * --stats SECONDS  time the pipeline's stages and count protected matches and alignment failures;
+     *                  print the numbers on standard error every SECONDS (0: only at the end), and
+     *                  show them over JMX as cmu.arktweetnlp:type=TokenizerMetrics,name="cli"
+     * --segment  tokenize and segment raw tweets (standard input, or one file) in one pass:
+     *            a "tokens\t" line, then the "text\t"/"sep\t" lines, then an empty line per tweet
+     * --mmap  tokenize the files given, memory-mapped, one line of tokens per line, through a large output
+     *         buffer, on one thread; the same output as without it, but print the line and byte counts
+     *         on standard error at the end
+     * --binary  write tokenizations (or with --segment, segmentations) as binary records instead of text,
+     *           with byte offsets into the input lines, on one thread (so not with --threads);
+     *           see TokenRecordWriter for the format
+     * --binary-with-text  the same, and every record carries its line, to be read without the input
+     * --serve PORT  keep running, and answer requests on localhost:PORT (0: any free port) with
+     *               --threads workers (default: one per core), see TokenizerServer for the protocol
+     * --client PORT  send standard input (or one file) through the server on localhost:PORT,
+     *                and print what it answers: one line of tokens per line, or with --segment,
+     *                the segmentations
+     *
+     * Options that can't work together, such as --mmap and --segment, are an error rather than ignored.
+     */
+    public static void main(String[] args) throws IOException {
+      int threads = 0;
+      boolean fused = false;
+      boolean binary = false, binaryText = false, mmap = false;
+      int servePort = -1, clientPort = -1;
+      long statsSeconds = -1;
+      Twokenizer.Builder builder = Twokenizer.builder();
+      List<String> files = new ArrayList<String>();
+      String tokenizerOption = null; // the last one given, if any
+      for (int a = 0; a < args.length; a++) {
+        if (TOKENIZER_OPTIONS.contains(args[a]))
+          tokenizerOption = args[a];
+        if (args[a].equals("--threads") && a + 1 < args.length)
+          threads = Integer.parseInt(args[++a]);
+        else if (args[a].equals("--engine") && a + 1 < args.length)
+          builder.engine(Twokenizer.Engine.valueOf(args[++a].toUpperCase()));
+        else if (args[a].equals("--prefilter"))
+          builder.prefilter(true);
+        else if (args[a].equals("--timeout-ms") && a + 1 < args.length)
+          builder.matchTimeout(Long.parseLong(args[++a]), TimeUnit.MILLISECONDS)
+                 .timeoutListener(new Twokenizer.TimeoutListener() {
+                   public void timedOut(CharSequence text, long elapsedNanos) {
+                     // the lines that get here tend to be huge; a prefix is enough to find them
+                     int shown = Math.min(text.length(), 80);
+                     if (shown < text.length() && Character.isHighSurrogate(text.charAt(shown - 1)))
+                       shown--;
+                     System.err.printf("timed out after %d ms on %d chars: %s%s%n", elapsedNanos / 1000000,
+                                       text.length(), text.subSequence(0, shown), shown < text.length() ? "..." : "");
+                   }
+                 });
+        else if (args[a].equals("--cache") && a + 1 < args.length)
+          builder.cache(Long.parseLong(args[++a]));
+        else if (args[a].equals("--tlds") && a + 1 < args.length) {
+          Reader tlds = new InputStreamReader(new FileInputStream(args[++a]), "UTF-8");
+          try {
+            builder.topLevelDomains(TopLevelDomains.defaults().plus(TopLevelDomains.read(tlds)));
+          } finally {
+            tlds.close();
+          }
+        }
+        else if (args[a].equals("--emoticons"))
+          builder.emoticonLexicon(EmoticonLexicon.defaults());
+        else if (args[a].equals("--emoticons-from") && a + 1 < args.length) {
+          Reader more = new InputStreamReader(new FileInputStream(args[++a]), "UTF-8");
+          try {
+            builder.emoticonLexicon(EmoticonLexicon.defaults().plus(EmoticonLexicon.read(more)));
+          } finally {
+            more.close();
+          }
+        }
+        else if (args[a].equals("--stats") && a + 1 < args.length)
+          statsSeconds = Long.parseLong(args[++a]);
+        else if (args[a].equals("--segment"))
+          fused = true;
+        else if (args[a].equals("--mmap"))
+          mmap = true;
+        else if (args[a].equals("--binary"))
+          binary = true;
+        else if (args[a].equals("--binary-with-text"))
+          binary = binaryText = true;
+        else if (args[a].equals("--serve") && a + 1 < args.length)
+          servePort = Integer.parseInt(args[++a]);
+        else if (args[a].equals("--client") && a + 1 < args.length)
+          clientPort = Integer.parseInt(args[++a]);
+        else
+          files.add(args[a]);
+      }
+      checkModes(mmap, binary, servePort >= 0, clientPort >= 0, fused, threads, files.size(), tokenizerOption);
+      if (clientPort >= 0) {
+        // the server has its own configuration, don't pay for any here
+        InputStream input = files.isEmpty() ? System.in : new FileInputStream(new File(files.get(0)));
+        TokenizerServer.client(clientPort, fused ? TokenizerServer.SEGMENT : TokenizerServer.NORMALIZE_AND_TOKENIZE,
+                               input, System.out);
+        return;
+      }
+      final TokenizerMetrics metrics = statsSeconds >= 0 ? new TokenizerMetrics() : null;
+      if (metrics != null) {
+        builder.metrics(metrics);
+        try {
+          metrics.register("cli");
+        } catch (JMException e) {
+          System.err.println("couldn't register with JMX: " + e);
+        }
+        if (statsSeconds > 0) {
+          ScheduledExecutorService dumper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+              Thread t = new Thread(r, "twokenize-stats");
+              t.setDaemon(true);
+              return t;
+            }
+          });
+          dumper.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+              System.err.print(metrics);
+            }
+          }, statsSeconds, statsSeconds, TimeUnit.SECONDS);
+        }
+      }
+      final Twokenizer tk = builder.build();
+      if (servePort >= 0) {
+        new TokenizerServer(tk, threads > 0 ? threads : Runtime.getRuntime().availableProcessors()).serve(servePort);
+        return;
+      }
+
+      if (mmap)
+        mappedMain(tk, files);
+      else if (binary)
+        binaryMain(tk, fused, binaryText, files);
+      else if (fused)
+        fusedMain(tk, Math.max(threads, 1), files);
+      else if (threads > 0)
+        batchMain(tk, threads, files);
+      else
+        originalMain(tk, files);
+      if (tk.cache() != null)
+        System.err.println("cache: " + tk.cache());
+      if (metrics != null)
+        System.err.print(metrics);
+    }
+
+    // command line options that configure the Twokenizer
+    private static final Set<String> TOKENIZER_OPTIONS = new HashSet<String>(Arrays.asList(
+      "--engine", "--prefilter", "--timeout-ms", "--cache", "--tlds", "--emoticons", "--emoticons-from", "--stats"));
+
+    // Rejects options that can't work together, rather than quietly dropping one of them.
+    private static void checkModes(boolean mmap, boolean binary, boolean serve, boolean client, boolean segment,
+                                   int threads, int files, String tokenizerOption) {
+      List<String> modes = new ArrayList<String>();
+      if (mmap)
+        modes.add("--mmap");
+      if (binary)
+        modes.add("--binary");
+      if (serve)
+        modes.add("--serve");
+      if (client)
+        modes.add("--client");
+      if (modes.size() > 1)
+        throw new IllegalArgumentException(modes.get(0) + " can't go with " + modes.get(1));
+      if (mmap && segment)
+        throw new IllegalArgumentException("--mmap only tokenizes, it can't go with --segment");
+      if ((mmap || binary) && threads > 1)
+        throw new IllegalArgumentException(modes.get(0) + " runs on one thread, it can't go with --threads");
+      if ((segment || binary || client) && files > 1)
+        throw new IllegalArgumentException((segment ? "--segment" : modes.get(0))
+                                           + " reads standard input or one file, not " + files);
+      if (serve && (segment || files > 0))
+        throw new IllegalArgumentException("--serve takes its input and its ops from clients, not from "
+                                           + (segment ? "--segment" : "files"));
+      if (client && (tokenizerOption != null || threads > 0))
+        throw new IllegalArgumentException("--client uses the server's tokenizer, give "
+                                           + (tokenizerOption != null ? tokenizerOption : "--threads") + " to --serve instead");
+    }
+
+    private static void originalMain(Twokenizer tk, List<String> files) throws IOException {
+      Writer output = new BufferedWriter(new OutputStreamWriter(System.out, "UTF-8"), 1 << 16);
+      // Original tokenizer behavior, one line of tokens per tweet
+      if (files.size() == 0) {
+        BufferedReader input = new BufferedReader(new InputStreamReader(System.in,"UTF-8"));
+        BatchRunner.LineFunction tokenizer = tokenizer(tk, true);
+        StringBuilder sb = new StringBuilder();
+        String[] record = new String[1];
+        while ( (record[0] = input.readLine()) != null) {
+          sb.setLength(0);
+          tokenizer.apply(record, sb);
+          output.append(sb);
+        }
+      }
+      else if (files.size() == 2) { // new segmentation behavior
+        BufferedReader raw = new BufferedReader(new InputStreamReader(
+          new FileInputStream(new File(files.get(0))), "UTF-8"));
+        BufferedReader tok = new BufferedReader(new InputStreamReader(
+          new FileInputStream(new File(files.get(1))), "UTF-8"));
+        String rawline, tokline;
+        while ( (rawline = raw.readLine()) != null
+                && (tokline = tok.readLine()) != null) {
+          output.write(tk.simpleSegment(rawline, tokline));
+          output.write('\n');
+        }
+      }
+      output.flush();
+    }
+
+    private static void fusedMain(final Twokenizer tk, int threads, List<String> files) throws IOException {
+      Writer output = new BufferedWriter(new OutputStreamWriter(System.out, "UTF-8"), 1 << 16);
+      BufferedReader input = new BufferedReader(new InputStreamReader(
+        files.isEmpty() ? System.in : new FileInputStream(new File(files.get(0))), "UTF-8"));
+      BatchRunner.LineFunction segmenter = segmenter(tk);
+      if (threads > 1) {
+        new BatchRunner(threads, 1024).run(new BufferedReader[] { input }, segmenter, output);
+      } else {
+        StringBuilder sb = new StringBuilder();
+        String line;
+        while ((line = input.readLine()) != null) {
+          sb.setLength(0);
+          segmenter.apply(new String[] { line }, sb);
+          output.append(sb);
+        }
+      }
+      output.flush();
+    }
+
+    private static void mappedMain(Twokenizer tk, List<String> files) throws IOException {
+      if (files.isEmpty())
+        throw new IllegalArgumentException("--mmap needs input files");
+      // straight to file descriptor 1; System.out and its buffers are bypassed, and never written to
+      FileChannel output = new FileOutputStream(FileDescriptor.out).getChannel();
+      MappedTokenizer mapped = new MappedTokenizer(tk, output, 4 << 20);
+      mapped.tokenize(files);
+      System.err.printf("%d lines, %d bytes in, %d bytes out%n", mapped.lines(), mapped.bytesIn(), mapped.bytesOut());
+    }
+
+    private static void binaryMain(Twokenizer tk, boolean segment, boolean withText, List<String> files) throws IOException {
+      BufferedReader input = new BufferedReader(new InputStreamReader(
+        files.isEmpty() ? System.in : new FileInputStream(new File(files.get(0))), "UTF-8"));
+      TokenRecordWriter output = new TokenRecordWriter(System.out, withText);
+      TokenSpans tokens = new TokenSpans();
+      String line;
+      while ((line = input.readLine()) != null) {
+        // offsets into the line as it came in, entities and all
+        if (segment) {
+          output.write(tokens, tk.tokenizeAndSegmentRawTweetText(line, tokens));
+        } else {
+          tk.tokenizeRawTweetText(line, tokens);
+          output.write(tokens);
+        }
+      }
+      output.flush();
+    }
+
+    private static void batchMain(final Twokenizer tk, int threads, List<String> files) throws IOException {
+      Writer output = new BufferedWriter(new OutputStreamWriter(System.out, "UTF-8"), 1 << 16);
+      BatchRunner runner = new BatchRunner(threads, 1024);
+      if (files.size() == 0) {
+        BufferedReader input = new BufferedReader(new InputStreamReader(System.in,"UTF-8"));
+        runner.run(new BufferedReader[] { input }, tokenizer(tk, true), output);
+      }
+      else if (files.size() == 2) {
+        BufferedReader raw = new BufferedReader(new InputStreamReader(
+          new FileInputStream(new File(files.get(0))), "UTF-8"));
+        BufferedReader tok = new BufferedReader(new InputStreamReader(
+          new FileInputStream(new File(files.get(1))), "UTF-8"));
+        // raw and tokenized lines travel together in one record, so they stay paired
+        runner.run(new BufferedReader[] { raw, tok }, new BatchRunner.LineFunction() {
+          @Override
+          public void apply(String[] record, StringBuilder out) {
+            out.append(tk.simpleSegment(record[0], record[1])).append('\n');
+          }
+        }, output);
+      }
+      output.flush();
+    }
+
+    /** One line of tokens per raw tweet, space separated; normalizeTextForTagger first if normalize. */
+    static BatchRunner.LineFunction tokenizer(final Twokenizer tk, final boolean normalize) {
+      return new BatchRunner.LineFunction() {
+        @Override
+        public void apply(String[] record, StringBuilder out) {
+          List<String> toks = normalize ? tk.tokenizeRawTweetText(record[0]) : tk.tokenize(record[0]);
+          for (int i=0; i<toks.size(); i++) {
+            if (i > 0)
+              out.append(' ');
+            out.append(toks.get(i));
+          }
+          out.append('\n');
+        }
+      };
+    }
+
+    /** A "tokens\t" line, the "text\t"/"sep\t" lines and an empty line per raw tweet, see --segment. */
+    static BatchRunner.LineFunction segmenter(final Twokenizer tk) {
+      return new BatchRunner.LineFunction() {
+        @Override
+        public void apply(String[] record, StringBuilder out) {
+          Segmentation segments = tk.tokenizeAndSegment(tk.normalizeTextForTagger(record[0]));
+          out.append("tokens\t").append(segments.tokenized()).append('\n');
+          out.append(segments.toString()).append('\n');
+        }
+      };
+    }
+}
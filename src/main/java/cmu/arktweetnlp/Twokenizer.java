@@ -0,0 +1,1548 @@
+package cmu.arktweetnlp;
+
+import java.nio.ByteBuffer;
+import java.util.regex.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import cmu.arktweetnlp.TokenizerMetrics.Stage;
+
+/**
+ * A configured Twokenize engine.
+ *
+ * All patterns are compiled once, the first time any engine needs them, and
+ * the engine itself is immutable, so a single instance can be shared between
+ * threads.
+ * Each thread gets its own set of {@link Matcher}s, which are reset for every
+ * input instead of being recreated.
+ *
+ * The static methods on {@link Twokenize} delegate to {@link #DEFAULT}.
+ */
+public final class Twokenizer {
+
+    /** What UnwantedProtected has always been: we don't want to define our segments using these. */
+    public static final Set<TokenClass> DEFAULT_UNWANTED = Collections.unmodifiableSet(EnumSet.of(
+            TokenClass.URL, // <- that one is really worth dicussing, but I actually prefer only matching the http/s:// stuff manually, naked URLs are more likely part of a sentence
+            TokenClass.EMAIL,
+            TokenClass.TIME_LIKE,
+            TokenClass.NUMBER_WITH_COMMAS,
+            TokenClass.NUM_COMB,
+            TokenClass.ENTITY,
+            TokenClass.PUNCT_SEQ,
+            TokenClass.ARBITRARY_ABBREV,
+            TokenClass.EMBEDDED_APOSTROPHE,
+            TokenClass.HASHTAG,
+            TokenClass.AT_MENTION));
+
+    public static final Twokenizer DEFAULT = builder().build();
+
+    /** How protected spans (URLs, emoticons, ...) are found. Both give the same results. */
+    public enum Engine {
+        /** The original: one big alternation of all protected classes. */
+        REGEX,
+        /** A single left-to-right pass that only tries the classes that can start at each char, see ProtectedScanner. */
+        SCANNER
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static final class Builder {
+        private boolean splitContractions = false;
+        private Engine engine = Engine.REGEX;
+        private boolean prefilter = false;
+        private EnumSet<TokenClass> unwanted = EnumSet.copyOf(DEFAULT_UNWANTED);
+        private long matchTimeoutNanos = 0;
+        private TimeoutListener timeoutListener = null;
+        private long cacheWeight = 0;
+        private TokenizerMetrics metrics = null;
+        private TopLevelDomains topLevelDomains = TopLevelDomains.defaults();
+        private EmoticonLexicon emoticonLexicon = null;
+
+        private Builder() {}
+
+        /**
+         * Split off contractions, i.e. "you're" => "you 're".
+         * Off by default, our POS tagger wants "ur" and "you're" to both be one token.
+         */
+        public Builder splitContractions(boolean split) {
+            this.splitContractions = split;
+            return this;
+        }
+
+        public Builder engine(Engine engine) {
+            if (engine == null)
+                throw new NullPointerException("engine");
+            this.engine = engine;
+            return this;
+        }
+
+        /**
+         * With the regex engine, only try the Protected alternation where a
+         * protected token can start, skipping plain words without any regex
+         * work; see {@link ProtectedFinder.Regex}. Off by default until it has
+         * been checked against more text; the output should be the same
+         * either way. The scanner engine always works like this.
+         */
+        public Builder prefilter(boolean prefilter) {
+            this.prefilter = prefilter;
+            return this;
+        }
+
+        /** The protected token classes the segmenter should not define its separators with. */
+        public Builder unwanted(Set<TokenClass> classes) {
+            this.unwanted = EnumSet.noneOf(TokenClass.class);
+            this.unwanted.addAll(classes);
+            return this;
+        }
+
+        /**
+         * Guarded matching: give every call this much time for its regex
+         * matching, 0 (the default) for no limit. A tokenization that runs out
+         * of time falls back to splitting on whitespace and edge punctuation
+         * only; a segmentation that does treats the whole text as one text
+         * segment. Either way, the event is counted, see {@link Twokenizer#timeouts()}.
+         * Leave some headroom: before the JIT has warmed up even an ordinary
+         * tweet can take a few milliseconds.
+         */
+        public Builder matchTimeout(long timeout, TimeUnit unit) {
+            if (timeout < 0)
+                throw new IllegalArgumentException("negative timeout: " + timeout);
+            this.matchTimeoutNanos = unit.toNanos(timeout);
+            return this;
+        }
+
+        /** Also tell listener about every timeout. */
+        public Builder timeoutListener(TimeoutListener listener) {
+            this.timeoutListener = listener;
+            return this;
+        }
+
+        /**
+         * Cache the results of tokenize(String), tokenizeRawTweetText,
+         * simpleSegment, segment and tokenizeAndSegment, up to about maxWeight
+         * chars of input text; 0 (the default) for no cache. Worth it when
+         * many inputs are exact duplicates. A call that ran into the match
+         * timeout is not cached. See {@link Twokenizer#cache()}.
+         */
+        public Builder cache(long maxWeight) {
+            if (maxWeight < 0)
+                throw new IllegalArgumentException("negative cache weight: " + maxWeight);
+            this.cacheWeight = maxWeight;
+            return this;
+        }
+
+        /** Time every stage of the pipeline and count what it finds, into metrics; null (the default) for none. */
+        public Builder metrics(TokenizerMetrics metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        /**
+         * The top-level domains that make a naked host name ("example.com")
+         * a URL, e.g. the defaults plus a list read at runtime. With anything
+         * but the defaults, the engine compiles its own patterns.
+         */
+        public Builder topLevelDomains(TopLevelDomains domains) {
+            if (domains == null)
+                throw new NullPointerException("domains");
+            this.topLevelDomains = domains;
+            return this;
+        }
+
+        /**
+         * Also protect every entry of lexicon found in the text, as an
+         * emoticon, e.g. {@link EmoticonLexicon#defaults()}; null (the default)
+         * for only what the regexes find. Changes the tokenization, so the POS
+         * tagger's models, trained without it, may like it less.
+         */
+        public Builder emoticonLexicon(EmoticonLexicon lexicon) {
+            this.emoticonLexicon = lexicon;
+            return this;
+        }
+
+        public Twokenizer build() {
+            return new Twokenizer(this);
+        }
+    }
+
+    /** Hears about inputs that ran out of match time, see {@link Builder#matchTimeout}. */
+    public interface TimeoutListener {
+        /** Called on the thread that gave up on text, after it has fallen back. */
+        void timedOut(CharSequence text, long elapsedNanos);
+    }
+
+    private final boolean splitContractions;
+    private final Engine engine;
+    private final boolean prefilter;
+    private final Set<TokenClass> unwanted;
+    private final long matchTimeoutNanos;
+    private final TimeoutListener timeoutListener;
+    private final AtomicLong timeouts = new AtomicLong();
+    private final ResultCache cache; // null if there is none
+    private final TokenizerMetrics metrics; // null if there are none
+    private final TopLevelDomains topLevelDomains;
+    private final UrlRecognizer urls;
+    private final EmoticonLexicon emoticonLexicon; // null if there is none
+
+    // compiled on first use, see unwantedPattern(), protectedPattern() and scanner()
+    private volatile Pattern unwantedPattern;
+    private volatile Pattern protectedPattern;
+    private volatile ProtectedScanner scanner;
+
+    /*
+     * The patterns themselves don't depend on the configuration (unwanted
+     * and the top-level domains aside), so they are shared between all
+     * instances. Each group lives in its own holder class, which the JVM only
+     * initializes -- compiles -- on first use: tokenizing never compiles the
+     * segmenter's patterns, the scanner engine never compiles the big
+     * Protected alternation, and so on.
+     */
+
+    private static final class TokenizerPatterns {
+        static final Pattern WHITESPACE = Pattern.compile("[\\s\\p{Zs}]+", Pattern.UNICODE_CHARACTER_CLASS);
+        static final Pattern EDGE_PUNCT_LEFT = Pattern.compile(Twokenize.offEdge + "("+Twokenize.edgePunct+"+)("+Twokenize.notEdgePunct+")", Pattern.UNICODE_CHARACTER_CLASS);
+        static final Pattern EDGE_PUNCT_RIGHT = Pattern.compile("("+Twokenize.notEdgePunct+")("+Twokenize.edgePunct+"+)" + Twokenize.offEdge, Pattern.UNICODE_CHARACTER_CLASS);
+    }
+
+    private static final class ContractionsPattern {
+        static final Pattern PATTERN = Pattern.compile("(?i)(\\w+)(n['’′]t|['’′]ve|['’′]ll|['’′]d|['’′]re|['’′]s|['’′]m)$", Pattern.UNICODE_CHARACTER_CLASS);
+    }
+
+    // Engine.REGEX only
+    private static final class ProtectedPattern {
+        static final Pattern PATTERN = protectedPattern(TopLevelDomains.defaults());
+    }
+
+    // Engine.SCANNER only
+    private static final class Scanner {
+        static final ProtectedScanner SCANNER = new ProtectedScanner(new UrlRecognizer(TopLevelDomains.defaults()));
+    }
+
+    // The segmenter's own protections, see simpleSegmentRaw (its @-mentions and hashtags are found by mentions())
+    private static final class SegmenterPatterns {
+        static final Pattern EASY = Pattern.compile(Twokenize.OR("@[\\w]+:", "\\(?https?://[^\\s]+", ":'-?\\(+", "8D+", "[xX][dD]+", "\\.\\.+"), Pattern.UNICODE_CHARACTER_CLASS);
+        static final Pattern BOUND = Pattern.compile(Twokenize.OR("(\\.)\\s+[\\p{Lu}\\p{Lt}]", "[!\\?]+"), Pattern.UNICODE_CHARACTER_CLASS);
+        static final Pattern DEFAULT_UNWANTED = unwantedPattern(Twokenizer.DEFAULT_UNWANTED, TopLevelDomains.defaults());
+    }
+
+    private final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>() {
+        @Override
+        protected Scratch initialValue() {
+            return new Scratch();
+        }
+    };
+
+    private Twokenizer(Builder b) {
+        splitContractions = b.splitContractions;
+        engine = b.engine;
+        prefilter = b.prefilter;
+        unwanted = Collections.unmodifiableSet(EnumSet.copyOf(b.unwanted));
+        matchTimeoutNanos = b.matchTimeoutNanos;
+        timeoutListener = b.timeoutListener;
+        cache = b.cacheWeight > 0 ? new ResultCache(b.cacheWeight) : null;
+        metrics = b.metrics;
+        topLevelDomains = b.topLevelDomains;
+        urls = new UrlRecognizer(topLevelDomains);
+        emoticonLexicon = b.emoticonLexicon;
+    }
+
+    private static Pattern unwantedPattern(Set<TokenClass> unwanted, TopLevelDomains domains) {
+        // an empty alternation would match the empty string, so use a pattern that never matches instead
+        return unwanted.isEmpty() ? Pattern.compile("(?!)") : Pattern.compile(orOf(unwanted, domains), Pattern.UNICODE_CHARACTER_CLASS);
+    }
+
+    private static Pattern protectedPattern(TopLevelDomains domains) {
+        return Pattern.compile(orOf(EnumSet.allOf(TokenClass.class), domains), Pattern.UNICODE_CHARACTER_CLASS);
+    }
+
+    private boolean defaultDomains() {
+        return topLevelDomains.equals(TopLevelDomains.defaults());
+    }
+
+    // compiling twice in a race is harmless, both come out the same
+
+    private Pattern unwantedPattern() {
+        Pattern p = unwantedPattern;
+        if (p == null) {
+            p = unwanted.equals(DEFAULT_UNWANTED) && defaultDomains() ? SegmenterPatterns.DEFAULT_UNWANTED : unwantedPattern(unwanted, topLevelDomains);
+            unwantedPattern = p;
+        }
+        return p;
+    }
+
+    private Pattern protectedPattern() {
+        Pattern p = protectedPattern;
+        if (p == null) {
+            p = defaultDomains() ? ProtectedPattern.PATTERN : protectedPattern(topLevelDomains);
+            protectedPattern = p;
+        }
+        return p;
+    }
+
+    /** A new finder of the protected spans, as this tokenizer's engine, prefilter and lexicon find them. */
+    ProtectedFinder protectedFinder() {
+        ProtectedFinder finder = engine == Engine.SCANNER ? scanner().cursor() : new ProtectedFinder.Regex(protectedPattern(), urls, prefilter);
+        return emoticonLexicon == null ? finder : new ProtectedFinder.WithLexicon(finder, emoticonLexicon);
+    }
+
+    private ProtectedScanner scanner() {
+        ProtectedScanner s = scanner;
+        if (s == null) {
+            s = defaultDomains() ? Scanner.SCANNER : new ProtectedScanner(urls);
+            scanner = s;
+        }
+        return s;
+    }
+
+    private static String orOf(Set<TokenClass> classes, TopLevelDomains domains) {
+        String[] parts = new String[classes.size()];
+        int i = 0;
+        for (TokenClass c : classes)
+            parts[i++] = c == TokenClass.URL ? domains.urlRegex() : c.regex();
+        return Twokenize.OR(parts);
+    }
+
+    public boolean splitsContractions() {
+        return splitContractions;
+    }
+
+    public Engine engine() {
+        return engine;
+    }
+
+    /** Whether the regex engine prefilters, see {@link Builder#prefilter(boolean)}. */
+    public boolean prefilters() {
+        return prefilter;
+    }
+
+    public Set<TokenClass> unwanted() {
+        return unwanted;
+    }
+
+    public TopLevelDomains topLevelDomains() {
+        return topLevelDomains;
+    }
+
+    /** The emoticon lexicon, or null. */
+    public EmoticonLexicon emoticonLexicon() {
+        return emoticonLexicon;
+    }
+
+    /** The match timeout in nanoseconds, 0 if there is none. */
+    public long matchTimeoutNanos() {
+        return matchTimeoutNanos;
+    }
+
+    /** How many calls have run out of match time so far. */
+    public long timeouts() {
+        return timeouts.get();
+    }
+
+    /** The result cache, with its hit, miss and eviction counts; null if there is none. */
+    public ResultCache cache() {
+        return cache;
+    }
+
+    /** The metrics this tokenizer records into, or null. */
+    public TokenizerMetrics metrics() {
+        return metrics;
+    }
+
+    // Without metrics, timing a stage costs a null check at either end.
+    private long startTimer() {
+        return metrics == null ? 0 : System.nanoTime();
+    }
+
+    private void stopTimer(Stage stage, long started) {
+        if (metrics != null)
+            metrics.record(stage, System.nanoTime() - started);
+    }
+
+    private ResultCache.Key cacheKey(byte op, String text, String tokenized) {
+        return cache == null ? null : new ResultCache.Key(op, text, tokenized);
+    }
+
+    private Object cached(ResultCache.Key key) {
+        return key == null ? null : cache.get(key);
+    }
+
+    // Not if the call ran out of time: the fallback's result says nothing about the text, only about that one call.
+    private void remember(ResultCache.Key key, Object value, Scratch m) {
+        if (key != null && !m.timedOut)
+            cache.put(key, value);
+    }
+
+    private void timedOut(CharSequence text, Scratch m) {
+        m.timedOut = true;
+        timeouts.incrementAndGet();
+        if (timeoutListener != null)
+            timeoutListener.timedOut(text, System.nanoTime() - m.started);
+    }
+
+    /**
+     * One set of matchers and buffers per thread; Matchers are not thread-safe,
+     * but can be reset and reused.
+     */
+    private final class Scratch {
+        final Matcher contractions = splitContractions ? ContractionsPattern.PATTERN.matcher("") : null;
+        final Matcher whitespace = TokenizerPatterns.WHITESPACE.matcher("");
+        final Matcher edgePunctLeft = TokenizerPatterns.EDGE_PUNCT_LEFT.matcher("");
+        final Matcher edgePunctRight = TokenizerPatterns.EDGE_PUNCT_RIGHT.matcher("");
+        final ProtectedFinder protectedFinder = protectedFinder();
+        // splitEdgePunct's and addWanted's, when they need one, and the entries found before edge splitting
+        EmoticonLexicon.Matches lexiconMatches;
+        final SpanList lexiconSpans = new SpanList(16);
+
+        // the segmenter's, made by segmenterMatchers() when first needed
+        Matcher unwantedMatcher, easy, bound;
+
+        void segmenterMatchers() {
+            if (easy == null) {
+                unwantedMatcher = unwantedPattern().matcher("");
+                easy = SegmenterPatterns.EASY.matcher("");
+                bound = SegmenterPatterns.BOUND.matcher("");
+            }
+        }
+
+        // simpleTokenize's intermediate texts
+        final MappedText squeezed = new MappedText(256);
+        final MappedText leftSplit = new MappedText(256);
+        final MappedText edgeSplit = new MappedText(256);
+        final TokenSpans spans = new TokenSpans();
+
+        // tokenize(ByteBuffer, ByteSpans)'s text, mapped to byte offsets, and its tokens in it
+        final MappedText decoded = new MappedText(256);
+        final TokenSpans decodedSpans = new TokenSpans();
+
+        // simpleSegmentRaw's span bookkeeping
+        final SpanList badSpans = new SpanList(32);
+        final SpanList candidates = new SpanList(16);
+        int[] sortedStarts = new int[32];
+        int[] sortedEnds = new int[32];
+
+        // align's output: raw, tokenized and segInstr ranges
+        final SpanList[] segments = { new SpanList(16), new SpanList(16), new SpanList(16) };
+
+        // tokenizeAndSegment's squeezed text, with offsets into itself, and its protected spans
+        final MappedText plain = new MappedText(256);
+        final SpanList tokenProtected = new SpanList(16);
+        final SpanList edgeSplitRuns = new SpanList(8);
+
+        // tokenizeRawTweetText's map from normalized back to raw offsets, and its normalized tokens
+        int[] rawOffsets = new int[256];
+        final TokenSpans normalizedSpans = new TokenSpans();
+
+        /** rawOffsets, with room for a text of length chars. */
+        int[] rawOffsets(int length) {
+            if (rawOffsets.length <= length)
+                rawOffsets = new int[length + 1 + (length >> 1)];
+            return rawOffsets;
+        }
+
+        // guarded matching: one deadline per call, and a view for every text we match on
+        boolean guarded, timedOut;
+        long started, deadline;
+        final DeadlineCharSequence[] views = {
+            new DeadlineCharSequence(), new DeadlineCharSequence(), new DeadlineCharSequence(), new DeadlineCharSequence() };
+
+        Scratch startClock() {
+            timedOut = false;
+            guarded = matchTimeoutNanos > 0;
+            if (guarded) {
+                started = System.nanoTime();
+                deadline = started + matchTimeoutNanos;
+            }
+            return this;
+        }
+
+        /** What to run the matchers on: text itself, or a view of it that watches the clock. */
+        CharSequence guard(CharSequence text, int view) {
+            return guarded ? views[view].reset(text, deadline) : text;
+        }
+    }
+
+    public String splitEdgePunct (String input) {
+        Scratch m = scratch.get();
+        input = m.edgePunctLeft.reset(input).replaceAll("$1$2 $3");
+        input = m.edgePunctRight.reset(input).replaceAll("$1 $2$3");
+        return input;
+    }
+
+    private static int growLeft (int start, String rawtext) {
+      while (start > 0 && CharTables.isWhitespace(rawtext.charAt(start-1)))
+        start--;
+      return start;
+    }
+
+    private static int growRight (int end, String rawtext) {
+      while (end < rawtext.length() - 1 && CharTables.isWhitespace(rawtext.charAt(end)))
+        end++;
+      return end;
+    }
+
+    private static void growOverWhitespace (SpanList allBadSpans, String rawtext) {
+      for (int i = 0; i < allBadSpans.size(); i++) {
+        allBadSpans.set(i, growLeft(allBadSpans.start(i), rawtext), growRight(allBadSpans.end(i), rawtext));
+      }
+    }
+
+    /** The separator spans of rawtext, sorted and disjoint, in m.badSpans. */
+    private SpanList simpleSegmentRaw (String rawtext, Scratch m) {
+      return simpleSegmentRaw(rawtext, m, null, null);
+    }
+
+    /**
+     * Same, but with the protected spans already known (e.g. from tokenizing
+     * rawtext) instead of searching for them again. Only in the runs of
+     * non-whitespace in rescan, if given, are they searched for anyway, and
+     * the known spans there are ignored.
+     */
+    private SpanList simpleSegmentRaw (String rawtext, Scratch m, SpanList protectedSpans, SpanList rescan) {
+      m.segmenterMatchers();
+      SpanList allBadSpans = m.badSpans;
+      allBadSpans.clear();
+
+      CharSequence matchText = m.guard(rawtext, 0);
+
+      // Get all the useful Twokenizer matches
+      if (protectedSpans == null) {
+        ProtectedFinder prots = m.protectedFinder.reset(matchText);
+        while(prots.find()){
+          if (prots.start() != prots.end()) //unnecessary?
+            addWanted(rawtext, prots.start(), prots.end(), m, allBadSpans);
+        }
+      } else {
+        // No protected span reaches past the whitespace around its run (one
+        // may start on the space before it), so each run can be scanned on
+        // its own, starting on that space. A span belongs to the run it ends
+        // in; keep them all in text order.
+        int next = 0;
+        for (int r = 0; rescan != null && r < rescan.size(); r++) {
+          int runStart = rescan.start(r), runEnd = rescan.end(r);
+          for (; next < protectedSpans.size() && protectedSpans.end(next) <= runStart; next++)
+            addWanted(rawtext, protectedSpans.start(next), protectedSpans.end(next), m, allBadSpans);
+          while (next < protectedSpans.size() && protectedSpans.end(next) <= runEnd)
+            next++;
+          ProtectedFinder prots = m.protectedFinder.reset(matchText);
+          for (boolean found = prots.find(Math.max(0, runStart - 1)); found && prots.start() < runEnd; found = prots.find()) {
+            if (prots.start() != prots.end())
+              addWanted(rawtext, prots.start(), prots.end(), m, allBadSpans);
+          }
+        }
+        for (; next < protectedSpans.size(); next++)
+          addWanted(rawtext, protectedSpans.start(next), protectedSpans.end(next), m, allBadSpans);
+      }
+
+      // Okay, first my easy own protections:
+      Matcher matches = m.easy.reset(matchText);
+      while(matches.find()){
+        allBadSpans.add(matches.start(), matches.end());
+      }
+
+      // Then the tricky sentence boundaries:
+      matches = m.bound.reset(matchText);
+      // Here we have to shift the sep start one to the right to include it in
+      // previous text!
+      // Following punctuation can be part of the separator.
+      while(matches.find()){
+        // I want the whole "!?" to be presented to the translator
+        if(matches.end() - matches.start() >= 2 && rawtext.startsWith("!?", matches.start()))
+          allBadSpans.add(matches.start() + 2, matches.end());
+        // The full stop captures the following capital letter, so draw end closer
+        else if (rawtext.charAt(matches.start()) == '.')
+          allBadSpans.add(matches.start() + 1, matches.end() - 1);
+        // Otherwise really just exclude one punctuation mark from the separator
+        else
+          allBadSpans.add(matches.start() + 1, matches.end());
+      }
+
+      // Now for my stupidly context-sensitive one, but they're only necessarily
+      // context-sensitive in one direction, so by doing a forward and a
+      // backward pass, we should catch 'em all!
+      growOverWhitespace(allBadSpans, rawtext);
+      int length = rawtext.length();
+
+      // Backward pass (i.e. beforeSep or atEnd)
+      // A candidate touches a separator that starts inside it (but not at its start).
+      // The spans we add here all come from candidates further right and only grew
+      // left over whitespace, so they all start after the current candidate does:
+      // checking the leftmost of them is enough, the rest is a binary search.
+      int knownSpans = allBadSpans.size();
+      int[] starts = m.sortedStarts = allBadSpans.sortedStarts(m.sortedStarts);
+      int leftmostAdded = Integer.MAX_VALUE;
+      // (going backwards is tricky, so cache all matches)
+      SpanList candidates = mentions(matchText, true, m.candidates);
+      for(int i = candidates.size() - 1; i >= 0; i--) {
+        int first = candidates.start(i), second = candidates.end(i);
+        boolean touching = second == length
+                || leftmostAdded <= second
+                || SpanList.anyWithin(starts, knownSpans, first + 1, second);
+        if (touching) {
+          int grownFirst = growLeft(first, rawtext);
+          allBadSpans.add(grownFirst, growRight(second, rawtext));
+          leftmostAdded = Math.min(leftmostAdded, grownFirst);
+        }
+      }
+      // Forward pass (i.e. afterSep or atStart)
+      // A match touches a separator that ends inside it (or at its start).
+      // Same trick: spans added here end at the latest where the next match starts.
+      knownSpans = allBadSpans.size();
+      int[] ends = m.sortedEnds = allBadSpans.sortedEnds(m.sortedEnds);
+      int rightmostAdded = -1;
+      candidates = mentions(matchText, false, m.candidates);
+      for(int i = 0; i < candidates.size(); i++) {
+        int first = candidates.start(i), second = candidates.end(i);
+        boolean touching = first == 0
+                || rightmostAdded >= first
+                || SpanList.anyWithin(ends, knownSpans, first, second - 1);
+        if (touching) {
+          int grownSecond = growRight(second, rawtext);
+          allBadSpans.add(growLeft(first, rawtext), grownSecond);
+          rightmostAdded = Math.max(rightmostAdded, grownSecond);
+        }
+      }
+
+      // Time for the union of all spans to get good and bad lists!
+      allBadSpans.sortAndMerge();
+      return allBadSpans;
+    }
+
+    // simpleSegmentRaw, or no separators at all if that runs out of time
+    private SpanList separators (String rawtext, Scratch m, SpanList protectedSpans, SpanList rescan) {
+      long started = startTimer();
+      try {
+        return simpleSegmentRaw(rawtext, m, protectedSpans, rescan);
+      } catch (DeadlineCharSequence.Exceeded e) {
+        timedOut(rawtext, m);
+        m.badSpans.clear();
+        return m.badSpans;
+      } finally {
+        stopTimer(Stage.SEPARATORS, started);
+      }
+    }
+
+    // align, counting the failures
+    private void timedAlign (CharSequence rawtext, SpanList rawSegments, String tokenized, StringBuilder segInstr, SpanList[] out) {
+      long started = startTimer();
+      try {
+        align(rawtext, rawSegments, tokenized, segInstr, out);
+      } catch (RuntimeException e) {
+        if (metrics != null)
+          metrics.alignmentFailed();
+        throw e;
+      } finally {
+        stopTimer(Stage.ALIGN, started);
+      }
+    }
+
+    /**
+     * What [^\s]*@(?:urlStart2|\w+), or with hashtags also #\w+, finds in
+     * text, match after match, into out. Without the regex: wherever in a
+     * run of non-whitespace such a match starts, it ends after the run's last
+     * '@' that a host name or a word follows, so there is at most one per run,
+     * starting where the search does; after it, only hashtags are left.
+     */
+    private SpanList mentions (CharSequence text, boolean hashtags, SpanList out) {
+      out.clear();
+      int length = text.length();
+      int i = 0;
+      while (i < length) {
+        if (CharTables.isWhitespace(text.charAt(i))) {
+          i++;
+          continue;
+        }
+        int runEnd = i;
+        while (runEnd < length && !CharTables.isWhitespace(text.charAt(runEnd)))
+          runEnd++;
+        int end = -1;
+        for (int at = runEnd - 1; at >= i && end < 0; at--) {
+          if (text.charAt(at) == '@')
+            end = afterAt(text, at + 1);
+        }
+        if (end >= 0) {
+          out.add(i, end);
+          i = end;
+        }
+        for (; hashtags && i < runEnd; i++) {
+          if (text.charAt(i) == '#') {
+            int tagEnd = wordEnd(text, i + 1);
+            if (tagEnd > i + 1) {
+              out.add(i, tagEnd);
+              i = tagEnd - 1;
+            }
+          }
+        }
+        i = runEnd;
+      }
+      return out;
+    }
+
+    // (?:urlStart2|\w+) at i
+    private int afterAt (CharSequence text, int i) {
+      int end = urls.host(text, i);
+      if (end < 0) {
+        end = wordEnd(text, i);
+        if (end == i)
+          end = -1;
+      }
+      return end;
+    }
+
+    private static int wordEnd (CharSequence text, int i) {
+      while (i < text.length()) {
+        int c = Character.codePointAt(text, i);
+        if (!CharTables.isWordChar(c))
+          break;
+        i += Character.charCount(c);
+      }
+      return i;
+    }
+
+    private void addWanted (String rawtext, int start, int end, Scratch m, SpanList allBadSpans) {
+      String prot = rawtext.substring(start, end);
+      if(m.unwantedMatcher.reset(m.guard(prot, 3)).matches())
+        return;
+      // a lexicon emoticon is as unwanted as the regexes' ones
+      if (emoticonLexicon != null && unwanted.contains(TokenClass.EMOTICON)) {
+        if (m.lexiconMatches == null)
+          m.lexiconMatches = emoticonLexicon.matches();
+        if (m.lexiconMatches.whole(prot))
+          return;
+      }
+      allBadSpans.add(start, end);
+    }
+
+    /** A copy of the separator spans simpleSegment aligns against, for squeezed rawtext. */
+    SpanList separatorSpans (String rawtext) {
+      SpanList spans = separators(rawtext, scratch.get().startClock(), null, null);
+      SpanList copy = new SpanList(spans.size());
+      for (int i = 0; i < spans.size(); i++)
+        copy.add(spans.start(i), spans.end(i));
+      return copy;
+    }
+
+    public String simpleSegment (String rawtext_unsqueezed, String tokenized) {
+      ResultCache.Key key = cacheKey(ResultCache.SIMPLE_SEGMENT, rawtext_unsqueezed, tokenized);
+      String hit = (String) cached(key);
+      if (hit != null)
+        return hit;
+      long started = startTimer();
+      String rawtext = squeezeWhitespace(rawtext_unsqueezed);
+      stopTimer(Stage.SQUEEZE, started);
+      Scratch m = scratch.get().startClock();
+      SpanList rawSegments = separators(rawtext, m, null, null);
+      StringBuilder segInstr = new StringBuilder(tokenized.length() + 8 * rawSegments.size() + 16);
+      timedAlign(rawtext, rawSegments, tokenized, segInstr, null);
+      String result = segInstr.toString();
+      remember(key, result, m);
+      return result;
+    }
+
+    /**
+     * Like simpleSegment, but returns the segments themselves, with offsets
+     * into rawtext (as given, not squeezed) and into tokenized.
+     */
+    public Segmentation segment (String rawtext, String tokenized) {
+      ResultCache.Key key = cacheKey(ResultCache.SEGMENT, rawtext, tokenized);
+      Segmentation hit = (Segmentation) cached(key);
+      if (hit != null)
+        return hit;
+      Scratch m = scratch.get().startClock();
+      long started = startTimer();
+      MappedText squeezed = squeezeInto(rawtext, m.whitespace, m.squeezed);
+      stopTimer(Stage.SQUEEZE, started);
+      SpanList rawSegments = separators(squeezed.toString(), m, null, null);
+      StringBuilder segInstr = new StringBuilder(tokenized.length() + 8 * rawSegments.size() + 16);
+      timedAlign(squeezed, rawSegments, tokenized, segInstr, m.segments);
+
+      SpanList raw = m.segments[0], tok = m.segments[1], text = m.segments[2];
+      int[] offsets = new int[Segmentation.STRIDE * raw.size()];
+      for (int i = 0, o = 0; i < raw.size(); i++) {
+        // segments tile the squeezed text, and a squeezed space stands for the
+        // whole whitespace run it starts, so the runs stay in their segments
+        offsets[o++] = unsqueezed(squeezed, raw.start(i));
+        offsets[o++] = unsqueezed(squeezed, raw.end(i));
+        offsets[o++] = tok.start(i);
+        offsets[o++] = tok.end(i);
+        offsets[o++] = text.start(i);
+        offsets[o++] = text.end(i);
+      }
+      boolean firstIsSep = segInstr.length() > 0 && segInstr.charAt(0) == 's';
+      Segmentation result = new Segmentation(rawtext, tokenized, segInstr.toString(), firstIsSep, offsets);
+      remember(key, result, m);
+      return result;
+    }
+
+    /**
+     * Tokenizes text and segments it in one go: the tokens are in the result's
+     * tokenized() (joined by spaces), the segments are cut from the same text.
+     *
+     * Segments are cut straight from the token offsets instead of aligning
+     * two strings, so nothing can fail to line up; where segment(text,
+     * tokenized()) lines up too, the results are the same. The protected
+     * spans found while tokenizing are also the ones that define the
+     * segments, so Protected runs once instead of twice, except in the runs
+     * of non-whitespace where splitting edge punctuation put a space in: there
+     * the tokenizer may have protected other spans ("( T_T )" instead of
+     * "(T_T)"), so the segmenter looks for its own in just those runs.
+     *
+     * Assumes 'text' has no HTML escaping, just like {@link #tokenize(String)}.
+     */
+    public Segmentation tokenizeAndSegment (String text) {
+      return tokenizeAndSegment(text, null);
+    }
+
+    /** The same, and if tokensOut is given, it gets the tokens as offsets into text, as tokenize(CharSequence, TokenSpans) would. */
+    Segmentation tokenizeAndSegment (String text, TokenSpans tokensOut) {
+      ResultCache.Key key = cacheKey(ResultCache.TOKENIZE_AND_SEGMENT, text, null);
+      Fused hit = (Fused) cached(key);
+      if (hit != null) {
+        if (tokensOut != null)
+          hit.tokensInto(text, tokensOut);
+        return hit.segments;
+      }
+      Scratch m = scratch.get().startClock();
+      long started = startTimer();
+      MappedText squeezed = squeezeInto(text, m.whitespace, m.squeezed);
+      stopTimer(Stage.SQUEEZE, started);
+      String rawtext = squeezed.toString();
+
+      // tokenize the squeezed text, so tokens and protected spans come as offsets into it
+      MappedText plain = m.plain;
+      plain.clear();
+      for (int i = 0; i < rawtext.length(); i++)
+        plain.append(rawtext.charAt(i), i);
+      TokenSpans tokens = m.spans;
+      tokens.reset(rawtext);
+      SpanList prots = m.tokenProtected;
+      prots.clear();
+      SpanList rawSegments;
+      try {
+        simpleTokenize(plain, m, tokens, prots);
+        rawSegments = separators(rawtext, m, prots, edgeSplitRuns(rawtext, m.edgeSplit, m.edgeSplitRuns));
+      } catch (DeadlineCharSequence.Exceeded e) {
+        // out of time already, so don't even start on the separators
+        tokens.reset(rawtext);
+        fallbackTokenize(plain, tokens);
+        timedOut(text, m);
+        rawSegments = m.badSpans;
+        rawSegments.clear();
+      }
+
+      started = startTimer();
+      int n = tokens.size();
+      int[] joinedAt = new int[n];
+      StringBuilder joined = new StringBuilder(rawtext.length() + 16);
+      for (int j = 0; j < n; j++) {
+        if (j > 0)
+          joined.append(' ');
+        joinedAt[j] = joined.length();
+        joined.append(rawtext, tokens.start(j), tokens.end(j));
+      }
+      String tokenized = joined.toString();
+
+      // the same walk over state changes as align, but a segment's text is
+      // simply the token pieces inside it
+      StringBuilder lines = new StringBuilder(tokenized.length() + 8 * rawSegments.size() + 16);
+      int stateChanges = 2 * rawSegments.size() + 1;
+      int[] offsets = new int[Segmentation.STRIDE * stateChanges];
+      int o = 0;
+      int length = rawtext.length();
+      int segStart = 0, j = 0, prevTokEnd = 0;
+      boolean isSep = false, firstIsSep = false;
+      for (int sc = 0; sc < stateChanges; sc++) {
+        int iSC = sc == stateChanges - 1 ? length
+                : sc % 2 == 0 ? rawSegments.start(sc / 2) : rawSegments.end(sc / 2);
+        if (segStart == length)
+          break;
+        if (sc == 0 && iSC == 0) {
+          isSep = firstIsSep = true;
+          continue;
+        }
+        int segEnd = Math.max(iSC, segStart);
+
+        lines.append(isSep ? "sep\t" : "text\t");
+        int textStart = lines.length();
+        int tokStart = -1, tokEnd = -1;
+        boolean pieceBefore = false, spaceSince = false;
+        for (int p = segStart; p < segEnd; ) {
+          while (j < n && tokens.end(j) <= p)
+            j++;
+          if (j < n && tokens.start(j) <= p) {
+            // (the part of) token j in this segment
+            int end = Math.min(tokens.end(j), segEnd);
+            if (!isSep && pieceBefore && !spaceSince)
+              lines.append(' ');  // where the tokenizer split without a space in the text
+            if (tokStart < 0)
+              tokStart = joinedAt[j] + p - tokens.start(j);
+            lines.append(rawtext, p, end);
+            tokEnd = joinedAt[j] + end - tokens.start(j);
+            pieceBefore = true;
+            spaceSince = false;
+            p = end;
+          } else {
+            // between tokens: whitespace, or a control char the tokenizer trimmed off
+            if (rawtext.charAt(p) == ' ') {
+              lines.append(' ');
+              spaceSince = true;
+              if (j > 0 && j < n) {
+                if (tokStart < 0)
+                  tokStart = joinedAt[j] - 1;
+                tokEnd = joinedAt[j];
+              }
+            }
+            p++;
+          }
+        }
+        if (tokStart < 0)
+          tokStart = tokEnd = prevTokEnd;
+        prevTokEnd = tokEnd;
+
+        offsets[o++] = unsqueezed(squeezed, segStart);
+        offsets[o++] = unsqueezed(squeezed, segEnd);
+        offsets[o++] = tokStart;
+        offsets[o++] = tokEnd;
+        offsets[o++] = textStart;
+        offsets[o++] = lines.length();
+        lines.append('\n');
+        isSep = !isSep;
+        segStart = segEnd;
+      }
+      int[] tokenOffsets = new int[2 * n];
+      for (j = 0; j < n; j++) {
+        tokenOffsets[2 * j] = squeezed.origin(tokens.start(j));
+        tokenOffsets[2 * j + 1] = squeezed.origin(tokens.end(j) - 1) + 1;
+      }
+      tokens.reset("");
+      stopTimer(Stage.ALIGN, started);
+      Fused result = new Fused(new Segmentation(text, tokenized, lines.toString(), firstIsSep, Arrays.copyOf(offsets, o)), tokenOffsets);
+      if (tokensOut != null)
+        result.tokensInto(text, tokensOut);
+      remember(key, result, m);
+      return result.segments;
+    }
+
+    // What tokenizeAndSegment caches: the segments, and the tokens as offsets into the text.
+    private static final class Fused {
+      final Segmentation segments;
+      final int[] tokens;
+
+      Fused (Segmentation segments, int[] tokens) {
+        this.segments = segments;
+        this.tokens = tokens;
+      }
+
+      void tokensInto (String text, TokenSpans out) {
+        out.reset(text);
+        for (int i = 0; i < tokens.length; i += 2)
+          out.add(tokens[i], tokens[i + 1]);
+      }
+    }
+
+    /**
+     * The runs of non-whitespace in rawtext that splitting edge punctuation
+     * put a space into, sorted, in out. There the tokenizer's protected spans
+     * can differ from a scan of rawtext ("(T_T)" split to "( T_T )" protects
+     * just "T_T"); everywhere else they are the same.
+     */
+    private static SpanList edgeSplitRuns (String rawtext, MappedText split, SpanList out) {
+      out.clear();
+      if (split.length() == rawtext.length())
+        return out;
+      for (int i = 0; i < split.length(); i++) {
+        if (split.origin(i) >= 0)
+          continue;
+        // a space is only ever put between two chars of one run
+        int at = split.origin(i - 1);
+        if (out.size() > 0 && out.end(out.size() - 1) > at)
+          continue;
+        int runStart = at, runEnd = at + 1;
+        while (runStart > 0 && rawtext.charAt(runStart - 1) != ' ')
+          runStart--;
+        while (runEnd < rawtext.length() && rawtext.charAt(runEnd) != ' ')
+          runEnd++;
+        out.add(runStart, runEnd);
+      }
+      return out;
+    }
+
+    private static int unsqueezed (MappedText squeezed, int boundary) {
+      return boundary < squeezed.length() ? squeezed.origin(boundary) : squeezed.origin(boundary - 1) + 1;
+    }
+
+    /**
+     * Idea: we thread our way through both strings,
+     * inserting "\ntext%" and "\nsep%" into the tokenized string
+     * whenever we begin/end a span in the raw string, i.e. change state
+     *
+     * If out is given, every segment's range in rawtext, in tokenized and
+     * (minus "text\t"/"sep\t" and "\n") in segInstr is added to it, in this order.
+     */
+    static void align (CharSequence rawtext, SpanList rawSegments, String tokenized, StringBuilder segInstr, SpanList[] out) {
+      if (out != null)
+        for (SpanList l : out)
+          l.clear();
+      // the state changes are every start and end of rawSegments, then the end of the text
+      int stateChanges = 2 * rawSegments.size() + 1;
+      int rawLength = rawtext.length(), tokLength = tokenized.length();
+
+      int iRaw = 0, iTok = 0;
+      boolean isSep = false;
+      for(int sc = 0; sc < stateChanges; sc++) {
+        int iSC = sc == stateChanges - 1 ? rawLength
+                : sc % 2 == 0 ? rawSegments.start(sc / 2) : rawSegments.end(sc / 2);
+        if(iRaw == rawLength)
+          break;
+        if(sc == 0 && iSC == 0) {
+          isSep = !isSep;
+          continue;
+        }
+
+        segInstr.append(isSep ? "sep\t" : "text\t");
+        int rawStart = iRaw, tokStart = iTok, textStart = segInstr.length();
+        boolean afterFirstNonSpace = false;
+        while(iRaw < iSC) {
+          char cTok = tokenized.charAt(iTok);
+          char cRaw = rawtext.charAt(iRaw);
+          if(cTok == cRaw
+              || cTok == '“' && (cRaw == '"' || cRaw == '«' || cRaw == '”')
+              || cTok == '”' && (cRaw == '"' || cRaw == '»' || cRaw == '“')
+              ) {
+            segInstr.append(cTok);
+            iRaw++;
+            iTok++;
+            afterFirstNonSpace = true;
+          } else if ((cTok == '“' || cTok == '”')
+                    && cRaw == '\'' && iRaw + 1 < rawLength && rawtext.charAt(iRaw+1) == '\'') {
+            segInstr.append(cTok);
+            iRaw += 2;
+            iTok++;
+            afterFirstNonSpace = true;
+          } else if (cTok == '-' && iTok + 1 < tokLength && tokenized.charAt(iTok+1) == '-'
+                    && (cRaw == '–' || cRaw == '—')) {
+            segInstr.append("--");
+            iRaw++;
+            iTok += 2;
+            afterFirstNonSpace = true;
+          } else if ((cTok == '…') && cRaw == '.' && iRaw + 2 < rawLength
+                    && rawtext.charAt(iRaw+1) == '.' && rawtext.charAt(iRaw+2) == '.') {
+            segInstr.append(cTok);
+            iRaw += 3;
+            iTok++;
+            afterFirstNonSpace = true;
+          } else if (cTok == '.' && iTok + 2 < tokLength
+                    && tokenized.charAt(iTok+1) == '.' && tokenized.charAt(iTok+2) == '.' && (cRaw == '…')) {
+            segInstr.append("...");
+            iRaw++;
+            iTok += 3;
+            afterFirstNonSpace = true;
+          } else if (cTok == ' ') {
+            if(!isSep && afterFirstNonSpace)
+              segInstr.append(' ');
+            iTok++;
+            if(!afterFirstNonSpace)
+              tokStart = iTok;
+          } else {
+            throw new RuntimeException("Unsure about cTok '"+cTok+"' and cRaw '"+cRaw+"'");
+          }
+        }
+        if (out != null) {
+          out[0].add(rawStart, iRaw);
+          out[1].add(tokStart, iTok);
+          out[2].add(textStart, segInstr.length());
+        }
+        segInstr.append("\n");
+        isSep = !isSep;
+      }
+    }
+
+    // The main work of tokenizing a tweet.
+    // Tokens go to out as offsets into the original text, see squeezeInto.
+    // If protectedOut is given, the protected spans go there as well, also as offsets into the original.
+    private void simpleTokenize (MappedText text, Scratch m, TokenSpans out, SpanList protectedOut) {
+
+        // Do the no-brainers first
+        long started = startTimer();
+        MappedText splitPunctText = splitEdgePunct(text, m);
+        stopTimer(Stage.EDGE_PUNCT, started);
+
+        // BTO: the logic here got quite convoluted via the Scala porting detour
+        // It would be good to switch back to a nice simple procedural style like in the Python version
+        // ... Scala is such a pain.  Never again.
+
+        // Find the matches for subsequences that should be protected,
+        // e.g. URLs, 1.0, U.N.K.L.E., 12:53
+        // The spans of the "bads" should not be split, everything in between
+        // them is "good" and split on spaces. Goods and bads alternate.
+        ProtectedFinder matches = m.protectedFinder.reset(m.guard(splitPunctText, 2));
+        int goodStart = 0;
+        // with metrics, time the finding and the splitting apart
+        long t = startTimer(), finding = 0, splitting = 0;
+        while(matches.find()){
+            if (metrics != null) {
+                long now = System.nanoTime();
+                finding += now - t;
+                if (matches.start() != matches.end())
+                    metrics.matched(matches.tokenClass());
+                t = System.nanoTime();
+            }
+            if (matches.start() != matches.end()){ //unnecessary?
+                addGood(splitPunctText, goodStart, matches.start(), m, out);
+                addNonempty(splitPunctText, matches.start(), matches.end(), m, out);
+                if (protectedOut != null)
+                    addOriginal(splitPunctText, matches.start(), matches.end(), protectedOut);
+                goodStart = matches.end();
+            }
+            if (metrics != null) {
+                long now = System.nanoTime();
+                splitting += now - t;
+                t = now;
+            }
+        }
+        if (metrics != null) {
+            long now = System.nanoTime();
+            finding += now - t;
+            t = now;
+        }
+        addGood(splitPunctText, goodStart, splitPunctText.length(), m, out);
+        if (metrics != null) {
+            metrics.record(Stage.PROTECTED, finding);
+            metrics.record(Stage.SPLIT, splitting + System.nanoTime() - t);
+        }
+    }
+
+    private void addGood(MappedText text, int start, int end, Scratch m, TokenSpans out) {
+        int from = start;
+        for (int i = start; i < end; i++) {
+            if (text.charAt(i) == ' ') {
+                addNonempty(text, from, i, m, out);
+                from = i + 1;
+            }
+        }
+        addNonempty(text, from, end, m, out);
+    }
+
+    // Trims like String.trim() does, and drops what's left if it is empty.
+    private void addNonempty(MappedText text, int start, int end, Scratch m, TokenSpans out) {
+        while (start < end && text.charAt(start) <= ' ')
+            start++;
+        while (end > start && text.charAt(end - 1) <= ' ')
+            end--;
+        if (start == end)
+            return;
+
+        // BTO: our POS tagger wants "ur" and "you're" to both be one token.
+        // Builder.splitContractions(true) gets you "you 're"
+        if (splitContractions) {
+            Matcher c = m.contractions.reset(m.guard(text, 3)).region(start, end);
+            if (c.find()) {
+                out.add(text.origin(c.start(1)), text.origin(c.end(1) - 1) + 1);
+                out.add(text.origin(c.start(2)), text.origin(c.end(2) - 1) + 1);
+                return;
+            }
+        }
+        // a token never contains inserted or squeezed whitespace, so it is contiguous in the original
+        out.add(text.origin(start), text.origin(end - 1) + 1);
+    }
+
+    // Inserted chars have no origin, so the span runs from its first to its last original char.
+    private static void addOriginal(MappedText text, int start, int end, SpanList out) {
+        while (start < end && text.origin(start) < 0)
+            start++;
+        while (end > start && text.origin(end - 1) < 0)
+            end--;
+        if (start < end)
+            out.add(text.origin(start), text.origin(end - 1) + 1);
+    }
+
+    /**
+     * What tokenize falls back to when guarded matching runs out of time: split
+     * squeezed text on spaces, and split edge punctuation off the words, roughly
+     * like splitEdgePunct does. No regexes, no protected tokens, one pass.
+     */
+    static void fallbackTokenize (MappedText text, TokenSpans out) {
+        int length = text.length();
+        int start = 0;
+        while (start < length) {
+            int end = start;
+            while (end < length && text.charAt(end) != ' ')
+                end++;
+            int from = start, to = end;
+            while (from < to && text.charAt(from) <= ' ')
+                from++;
+            while (to > from && text.charAt(to - 1) <= ' ')
+                to--;
+            if (from < to) {
+                int left = from;
+                while (left < to && isEdgePunct(text.charAt(left)))
+                    left++;
+                if (left > from && left < to && isContent(text.charAt(left))) {
+                    out.add(text.origin(from), text.origin(left - 1) + 1);
+                    from = left;
+                }
+                int right = to;
+                while (right > from && isEdgePunct(text.charAt(right - 1)))
+                    right--;
+                if (right < to && right > from && isContent(text.charAt(right - 1))) {
+                    out.add(text.origin(from), text.origin(right - 1) + 1);
+                    from = right;
+                }
+                out.add(text.origin(from), text.origin(to - 1) + 1);
+            }
+            start = end + 1;
+        }
+    }
+
+    // Twokenize.edgePunct and notEdgePunct, as plain char tests
+    private static boolean isEdgePunct (char c) {
+        return "'\"“”‘’«»{}()[]*&".indexOf(c) >= 0;
+    }
+
+    private static boolean isContent (char c) {
+        return Character.isAlphabetic(c) || (c >= '0' && c <= '9');
+    }
+
+    /** Same as squeezeWhitespace, but keeps track of where every char came from. */
+    private static MappedText squeezeInto (CharSequence input, Matcher whitespace, MappedText out) {
+        return squeezeInto(input, whitespace, out, true);
+    }
+
+    /** With trimStart false, leading whitespace is squeezed to a space but kept. */
+    private static MappedText squeezeInto (CharSequence input, Matcher whitespace, MappedText out, boolean trimStart) {
+        out.clear();
+        int copied = 0;
+        whitespace.reset(input);
+        while (whitespace.find()) {
+            for (int i = copied; i < whitespace.start(); i++)
+                out.append(input.charAt(i), i);
+            out.append(' ', whitespace.start());
+            copied = whitespace.end();
+        }
+        for (int i = copied; i < input.length(); i++)
+            out.append(input.charAt(i), i);
+
+        int start = 0, end = out.length();
+        while (trimStart && start < end && out.charAt(start) <= ' ')
+            start++;
+        while (end > start && out.charAt(end - 1) <= ' ')
+            end--;
+        out.retain(start, end);
+        return out;
+    }
+
+    /**
+     * Same as splitEdgePunct, but keeps track of where every char came from.
+     * With an emoticon lexicon, no space goes inside an entry, so a kaomoji
+     * like "(ᵕᴗᵕ)" reaches the protected finder whole.
+     */
+    private MappedText splitEdgePunct (MappedText input, Scratch m) {
+        SpanList keep = null;
+        if (emoticonLexicon != null) {
+            // the automaton is linear in the text, no need to watch the clock
+            if (m.lexiconMatches == null)
+                m.lexiconMatches = emoticonLexicon.matches();
+            keep = m.lexiconSpans;
+            keep.clear();
+            EmoticonLexicon.Matches found = m.lexiconMatches.reset(input);
+            for (int s = found.nextStart(0); s >= 0; ) {
+                int e = found.end(s);
+                // entries have no whitespace, so their chars' origins are contiguous
+                keep.add(input.origin(s), input.origin(e - 1) + 1);
+                s = found.nextStart(e);
+            }
+        }
+        // "$1$2 $3" and "$1 $2$3" only ever insert one space per match
+        insertSpaces(input, m.guard(input, 0), m.edgePunctLeft, 2, keep, m.leftSplit);
+        insertSpaces(m.leftSplit, m.guard(m.leftSplit, 1), m.edgePunctRight, 1, keep, m.edgeSplit);
+        return m.edgeSplit;
+    }
+
+    // keep, if given, are sorted spans of origins not to insert a space inside of
+    private static void insertSpaces (MappedText input, CharSequence matchOn, Matcher matcher, int afterGroup, SpanList keep, MappedText out) {
+        out.clear();
+        int copied = 0;
+        int k = 0;
+        matcher.reset(matchOn);
+        while (matcher.find()) {
+            int at = matcher.end(afterGroup);
+            if (keep != null && at < input.length() && input.origin(at) >= 0) {
+                int origin = input.origin(at);
+                while (k < keep.size() && keep.end(k) <= origin)
+                    k++;
+                if (k < keep.size() && keep.start(k) < origin)
+                    continue;
+            }
+            for (int i = copied; i < at; i++)
+                out.append(input.charAt(i), input.origin(i));
+            out.append(' ', -1);
+            copied = at;
+        }
+        for (int i = copied; i < input.length(); i++)
+            out.append(input.charAt(i), input.origin(i));
+    }
+
+    /** "foo   bar " => "foo bar" */
+    public String squeezeWhitespace (String input){
+        return scratch.get().whitespace.reset(input).replaceAll(" ").trim();
+    }
+
+    /**
+     * Tokenizes text without creating any Strings: out is cleared and then
+     * filled with the offsets of every token in text. Assumes 'text' has no
+     * HTML escaping, just like {@link #tokenize(String)}.
+     *
+     * @return the number of tokens
+     */
+    public int tokenize(CharSequence text, TokenSpans out){
+        return tokenize(text, out, true);
+    }
+
+    /**
+     * Tokenizes UTF-8 text, the bytes from utf8's position to its limit, in a
+     * heap or a direct buffer, without creating any Strings: out is cleared
+     * and filled with the byte offsets of every token, as for utf8.get(int).
+     * The bytes are decoded into this thread's buffer, not into a String, and
+     * the tokens are exactly those of {@link #tokenize(String)} on the decoded
+     * text. Malformed input decodes to U+FFFD just as it does into a String,
+     * so even then the tokens are those of tokenize(new String(bytes, UTF_8)).
+     * utf8's position is left alone.
+     *
+     * @return the number of tokens
+     */
+    public int tokenize(ByteBuffer utf8, ByteSpans out){
+        Scratch m = scratch.get();
+        int limit = utf8.limit();
+        Utf8.decode(utf8, utf8.position(), limit, m.decoded);
+        TokenSpans chars = m.decodedSpans;
+        int n = tokenize(m.decoded, chars);
+        out.reset(utf8);
+        for (int i = 0; i < n; i++) {
+            int end = chars.end(i);
+            out.add(m.decoded.origin(chars.start(i)), end < m.decoded.length() ? m.decoded.origin(end) : limit);
+        }
+        chars.reset("");
+        return n;
+    }
+
+    /**
+     * With trimStart false, leading whitespace is kept (as one space) for the
+     * patterns to see, as if text went on from some earlier text; see TokenReader.
+     */
+    int tokenize(CharSequence text, TokenSpans out, boolean trimStart){
+        Scratch m = scratch.get().startClock();
+        out.reset(text);
+        long started = startTimer();
+        MappedText squeezed = squeezeInto(text, m.whitespace, m.squeezed, trimStart);
+        stopTimer(Stage.SQUEEZE, started);
+        try {
+            simpleTokenize(squeezed, m, out, null);
+        } catch (DeadlineCharSequence.Exceeded e) {
+            out.reset(text);
+            fallbackTokenize(squeezed, out);
+            timedOut(text, m);
+        }
+        return out.size();
+    }
+
+    /** Assume 'text' has no HTML escaping. **/
+    public List<String> tokenize(String text){
+        ResultCache.Key key = cacheKey(ResultCache.TOKENIZE, text, null);
+        String[] hit = (String[]) cached(key);
+        if (hit != null)
+            return new ArrayList<String>(Arrays.asList(hit));
+        Scratch m = scratch.get();
+        TokenSpans spans = m.spans;
+        tokenize(text, spans);
+        List<String> tokens = spans.toList();
+        spans.reset("");
+        remember(key, tokens.toArray(new String[tokens.size()]), m);
+        return tokens;
+    }
+
+    /**
+     * The tokens tokenize(String) would give, as their IDs in dictionary,
+     * new tokens getting new IDs. Only a token the dictionary hasn't seen yet
+     * becomes a String, so a tweet costs one int[] instead of a list of them.
+     */
+    public int[] tokenIds(CharSequence text, TokenDictionary dictionary) {
+        TokenSpans spans = scratch.get().spans;
+        int n = tokenize(text, spans);
+        int[] ids = new int[n];
+        for (int i = 0; i < n; i++)
+            ids[i] = dictionary.id(text, spans.start(i), spans.end(i));
+        spans.reset("");
+        return ids;
+    }
+
+    /**
+     * Twitter text comes HTML-escaped, so unescape it.
+     * We also first unescape &amp;'s, in case the text has been buggily double-escaped.
+     * See {@link HtmlUnescaper}; text without a '&' comes back as it is.
+     */
+    public String normalizeTextForTagger(String text) {
+    	long started = startTimer();
+    	String normalized = HtmlUnescaper.unescape(text);
+    	stopTimer(Stage.UNESCAPE, started);
+    	return normalized;
+    }
+
+    /**
+     * This is intended for raw tweet text -- we do some HTML entity unescaping before running the tagger.
+     *
+     * This function normalizes the input text BEFORE calling the tokenizer.
+     * So the tokens you get back may not exactly correspond to
+     * substrings of the original text.
+     */
+    public List<String> tokenizeRawTweetText(String text) {
+        List<String> tokens = tokenize(normalizeTextForTagger(text));
+        return tokens;
+    }
+
+    /*
+     * Bulk tokenization, for jobs that already hold their texts in a stream or
+     * a collection. Nothing here needs any setup per thread: whichever thread
+     * runs a text tokenizes it with its own matchers and buffers, see Scratch.
+     */
+
+    /**
+     * tokenize(String) of every text. Parallel if texts is, and in texts'
+     * encounter order unless it is unordered.
+     */
+    public Stream<List<String>> tokenizeAll(Stream<String> texts) {
+        return texts.map(tokenizer());
+    }
+
+    /** tokenizeAndSegment(String) of every text, as tokenizeAll(Stream). */
+    public Stream<Segmentation> tokenizeAndSegmentAll(Stream<String> texts) {
+        return texts.map(segmenter());
+    }
+
+    /**
+     * tokenize(String) of every text, as a stream whose spliterator splits
+     * evenly, for the fork-join common pool; in iteration order, call
+     * unordered() on it if that doesn't matter. The texts are copied first.
+     */
+    public Stream<List<String>> tokenizeAll(Collection<String> texts, boolean parallel) {
+        return StreamSupport.stream(new TextSpliterator<List<String>>(toArray(texts), tokenizer()), parallel);
+    }
+
+    /** tokenizeAndSegment(String) of every text, as tokenizeAll(Collection, boolean). */
+    public Stream<Segmentation> tokenizeAndSegmentAll(Collection<String> texts, boolean parallel) {
+        return StreamSupport.stream(new TextSpliterator<Segmentation>(toArray(texts), segmenter()), parallel);
+    }
+
+    /**
+     * tokenize(String) of every text, in iteration order, worked on in chunks
+     * on executor. Blocks until all are done; if one fails, so does this, with
+     * a {@link java.util.concurrent.CompletionException}.
+     */
+    public List<List<String>> tokenizeAll(Collection<String> texts, Executor executor) {
+        return mapAll(toArray(texts), tokenizer(), executor);
+    }
+
+    /** tokenizeAndSegment(String) of every text, as tokenizeAll(Collection, Executor). */
+    public List<Segmentation> tokenizeAndSegmentAll(Collection<String> texts, Executor executor) {
+        return mapAll(toArray(texts), segmenter(), executor);
+    }
+
+    private Function<String, List<String>> tokenizer() {
+        return new Function<String, List<String>>() {
+            @Override
+            public List<String> apply(String text) {
+                return tokenize(text);
+            }
+        };
+    }
+
+    private Function<String, Segmentation> segmenter() {
+        return new Function<String, Segmentation>() {
+            @Override
+            public Segmentation apply(String text) {
+                return tokenizeAndSegment(text);
+            }
+        };
+    }
+
+    private static String[] toArray(Collection<String> texts) {
+        return texts.toArray(new String[texts.size()]);
+    }
+
+    private static <R> List<R> mapAll(final String[] texts, final Function<String, R> fn, Executor executor) {
+        // a few chunks per core, to even out slow texts, but not so small the task overhead shows
+        int cores = Runtime.getRuntime().availableProcessors();
+        int chunk = Math.max(64, Math.min(1024, texts.length / (4 * cores) + 1));
+        List<CompletableFuture<List<R>>> chunks = new ArrayList<CompletableFuture<List<R>>>();
+        for (int from = 0; from < texts.length; from += chunk) {
+            final int start = from, end = Math.min(texts.length, from + chunk);
+            chunks.add(CompletableFuture.supplyAsync(new Supplier<List<R>>() {
+                @Override
+                public List<R> get() {
+                    List<R> results = new ArrayList<R>(end - start);
+                    for (int i = start; i < end; i++)
+                        results.add(fn.apply(texts[i]));
+                    return results;
+                }
+            }, executor));
+        }
+        List<R> all = new ArrayList<R>(texts.length);
+        for (CompletableFuture<List<R>> c : chunks)
+            all.addAll(c.join());
+        return all;
+    }
+
+    /**
+     * Like tokenizeRawTweetText(String), but without creating any Strings,
+     * and with the tokens projected back onto the raw text: out is cleared and
+     * filled with offsets into text, as given. A token that had an entity in
+     * it covers the whole entity, so out.token(i) may read "&lt;3" where
+     * tokenizeRawTweetText says "<3".
+     *
+     * @return the number of tokens
+     */
+    public int tokenizeRawTweetText(String text, TokenSpans out) {
+        Scratch m = scratch.get();
+        int[] rawOffsets = m.rawOffsets(text.length());
+        String normalized = HtmlUnescaper.unescape(text, rawOffsets);
+        TokenSpans tokens = m.normalizedSpans;
+        tokenize(normalized, tokens);
+        projectTokens(tokens, text, rawOffsets, out);
+        return out.size();
+    }
+
+    /**
+     * tokenizeAndSegment(normalizeTextForTagger(text)), with the tokens (in
+     * tokensOut) and the segments' raw offsets projected back onto text, as
+     * tokenizeRawTweetText(String, TokenSpans) does; the result's raw() is text.
+     */
+    Segmentation tokenizeAndSegmentRawTweetText(String text, TokenSpans tokensOut) {
+        Scratch m = scratch.get();
+        int[] rawOffsets = m.rawOffsets(text.length());
+        String normalized = HtmlUnescaper.unescape(text, rawOffsets);
+        TokenSpans tokens = m.normalizedSpans;
+        Segmentation segments = tokenizeAndSegment(normalized, tokens);
+        projectTokens(tokens, text, rawOffsets, tokensOut);
+        return normalized == text ? segments : segments.projectedOnto(text, rawOffsets);
+    }
+
+    private static void projectTokens(TokenSpans tokens, String text, int[] rawOffsets, TokenSpans out) {
+        out.reset(text);
+        for (int i = 0; i < tokens.size(); i++)
+            out.add(rawOffsets[tokens.start(i)], rawOffsets[tokens.end(i)]);
+        tokens.reset("");
+    }
+}
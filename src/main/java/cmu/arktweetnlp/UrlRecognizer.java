@@ -0,0 +1,192 @@
+package cmu.arktweetnlp;
+
+/**
+ * Finds what {@link Twokenize#url} and {@link Twokenize#urlStart2} match at a
+ * given position, without a regex.
+ *
+ * The host part of urlStart2 has the same shape whatever the domain list:
+ * labels of letters, digits and hyphens, separated by single dots, where each
+ * label can only be as long as it is, since '.' isn't a label char. So the
+ * candidate top-level domains at a position are the few labels after its first
+ * one, each looked up in a {@link TopLevelDomains} hash table, instead of the
+ * regex trying some 270 alternatives at every word boundary. The candidates
+ * are tried in the order the regex backtracks through them (most labels first,
+ * then with a country code after the domain before without), and the first one
+ * the rest of the URL fits after wins, so the matches are exactly the regex's.
+ *
+ * Immutable and thread-safe.
+ */
+final class UrlRecognizer {
+
+    private static final String PUNCT_CHARS = "'\"“”‘’.?!…,:;"; // Twokenize.punctChars
+
+    private final TopLevelDomains domains;
+
+    UrlRecognizer(TopLevelDomains domains) {
+        this.domains = domains;
+    }
+
+    /** Where Twokenize.url, tried at i, ends; -1 if it doesn't match there. */
+    int url(CharSequence s, int i) {
+        // urlStart1: https?:// or \bwww\.
+        int start1 = -1;
+        if (startsWith(s, i, "https://"))
+            start1 = i + 8;
+        else if (startsWith(s, i, "http://"))
+            start1 = i + 7;
+        else if (startsWith(s, i, "www.") && boundary(s, i))
+            start1 = i + 4;
+        if (start1 >= 0) {
+            int end = rest(s, start1);
+            if (end >= 0)
+                return end;
+        }
+        return host(s, i, true);
+    }
+
+    /** Where Twokenize.urlStart2, tried at i and with nothing after it, ends; -1 if it doesn't match there. */
+    int host(CharSequence s, int i) {
+        return host(s, i, false);
+    }
+
+    /** urlStart2, followed by urlBody and its lookahead if withBody. */
+    private int host(CharSequence s, int i, boolean withBody) {
+        if (!boundary(s, i))
+            return -1;
+        int length = s.length();
+        // the first label: [A-Za-z\d-]+, where \d is any decimal digit
+        int firstDot = i;
+        while (firstDot < length) {
+            int c = Character.codePointAt(s, firstDot);
+            if (!(isAsciiLetterOrDigit(c) || c == '-' || Character.isDigit(c)))
+                break;
+            firstDot += Character.charCount(c);
+        }
+        if (firstDot == i || firstDot == length || s.charAt(firstDot) != '.')
+            return -1;
+        // then up to three (?:\.[A-Za-z0-9]+), as many as there are first
+        int labels = 0;
+        for (int dot = firstDot; labels < 3; labels++) {
+            int next = labelEnd(s, dot + 1);
+            if (next == dot + 1 || next == length || s.charAt(next) != '.')
+                break;
+            dot = next;
+        }
+        for (; labels >= 0; labels--) {
+            int dot = firstDot;
+            for (int k = 0; k < labels; k++)
+                dot = labelEnd(s, dot + 1);
+            int end = domain(s, dot + 1, withBody);
+            if (end >= 0)
+                return end;
+        }
+        return -1;
+    }
+
+    /** The top-level domain starting at t, an optional country code after it, and the rest. */
+    private int domain(CharSequence s, int t, boolean withBody) {
+        int length = s.length();
+        // a name must be followed by a non-word char, so it ends at a hyphen or where the word does
+        int wordEnd = t;
+        while (wordEnd < length && wordEnd - t <= domains.longest()) {
+            int c = Character.codePointAt(s, wordEnd);
+            if (!(c == '-' || CharTables.isWordChar(c)))
+                break;
+            wordEnd += Character.charCount(c);
+        }
+        // longest first, as in the regex's alternation; if the word is longer than any name, only its hyphens are ends
+        for (int e = Math.min(wordEnd, t + domains.longest()); e > t; e--) {
+            if (e < wordEnd && s.charAt(e) != '-')
+                continue;
+            if (!domains.contains(s, t, e))
+                continue;
+            // (?:\.ccTLD)? is greedy
+            int cc = e + 3;
+            if (cc <= length && s.charAt(e) == '.' && domains.isCountryCode(s, e + 1, cc)
+                    && (cc == length || !CharTables.isWordChar(Character.codePointAt(s, cc)))) {
+                int end = withBody ? rest(s, cc) : cc;
+                if (end >= 0)
+                    return end;
+            }
+            int end = withBody ? rest(s, e) : e;
+            if (end >= 0)
+                return end;
+        }
+        return -1;
+    }
+
+    /** urlBody and the lookahead after it, from h; where they end, or -1. */
+    private static int rest(CharSequence s, int h) {
+        // (?:[^\.\s<>][^\s<>]*?)? tries the body first, and a body never fails to end:
+        // at the latest there is whitespace, '<', '>' or the end of the text
+        if (h < s.length()) {
+            char c = s.charAt(h);
+            if (c != '.' && c != '<' && c != '>' && !CharTables.isWhitespace(c)) {
+                for (int b = h + 1; ; b++) {
+                    if (endsAt(s, b))
+                        return b;
+                }
+            }
+        }
+        return endsAt(s, h) ? h : -1;
+    }
+
+    /** (?=(?:urlExtraCrapBeforeEnd)?urlEnd) at j. */
+    private static boolean endsAt(CharSequence s, int j) {
+        int length = s.length();
+        while (true) {
+            if (j == length)
+                return true;
+            char c = s.charAt(j);
+            if (c == '<' || c == '>' || CharTables.isWhitespace(c) || (c == '.' && j + 1 < length && s.charAt(j + 1) == '.'))
+                return true;
+            if (PUNCT_CHARS.indexOf(c) >= 0) {
+                j++;
+            } else if (c == '&') {
+                int n = entityLength(s, j);
+                if (n == 0)
+                    return false;
+                j += n;
+            } else {
+                return false;
+            }
+        }
+    }
+
+    // Twokenize.entity
+    private static int entityLength(CharSequence s, int j) {
+        if (startsWith(s, j, "&amp;") || startsWith(s, j, "&quot;"))
+            return s.charAt(j + 1) == 'a' ? 5 : 6;
+        if (startsWith(s, j, "&lt;") || startsWith(s, j, "&gt;"))
+            return 4;
+        return 0;
+    }
+
+    private static int labelEnd(CharSequence s, int from) {
+        int end = from;
+        while (end < s.length() && isAsciiLetterOrDigit(s.charAt(end)))
+            end++;
+        return end;
+    }
+
+    private static boolean isAsciiLetterOrDigit(int c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9');
+    }
+
+    /** \b at i, with UNICODE_CHARACTER_CLASS and transparent bounds. */
+    private static boolean boundary(CharSequence s, int i) {
+        boolean left = i > 0 && CharTables.isWordChar(Character.codePointBefore(s, i));
+        boolean right = i < s.length() && CharTables.isWordChar(Character.codePointAt(s, i));
+        return left != right;
+    }
+
+    private static boolean startsWith(CharSequence s, int i, String prefix) {
+        if (i + prefix.length() > s.length())
+            return false;
+        for (int k = 0; k < prefix.length(); k++) {
+            if (s.charAt(i + k) != prefix.charAt(k))
+                return false;
+        }
+        return true;
+    }
+}
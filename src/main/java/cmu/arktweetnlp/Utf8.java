@@ -0,0 +1,168 @@
+package cmu.arktweetnlp;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Decodes UTF-8 straight into a {@link MappedText}, every char mapped to the
+ * byte its sequence starts at, so token offsets come out as byte offsets; and
+ * encodes it the other way, with the same map. Both halves of a surrogate pair
+ * map to the same byte, so no offset ever falls inside a sequence.
+ *
+ * Malformed input decodes as String and the JDK's decoder decode it: the
+ * longest start of a well-formed sequence (a lead byte and the continuation
+ * bytes it may take, so no overlong and nothing past U+10FFFF) becomes one
+ * U+FFFD, and decoding goes on at the first byte that didn't fit. A byte
+ * that can't start a sequence is a U+FFFD by itself; so is a whole encoded
+ * surrogate. An unpaired surrogate encodes as '?', as String.getBytes does.
+ */
+final class Utf8 {
+    private Utf8() {}
+
+    static void decode(ByteBuffer in, int from, int to, MappedText out) {
+        out.clear();
+        if (in.hasArray()) {
+            decode(in.array(), in.arrayOffset(), from, to, out);
+            return;
+        }
+        int i = from;
+        while (i < to) {
+            int b = in.get(i);
+            if (b >= 0) {
+                out.append((char) b, i++);
+                continue;
+            }
+            int n = sequenceLength(b);
+            int cp = lead(b, n);
+            int k = 1;
+            for (; k < n && i + k < to && fits(b, k, in.get(i + k)); k++)
+                cp = cp << 6 | in.get(i + k) & 0x3f;
+            i = append(cp, n, k, i, out);
+        }
+    }
+
+    /** Whether in[from, to) is well-formed UTF-8 all through, so that nothing in it decodes as U+FFFD. */
+    static boolean isValid(ByteBuffer in, int from, int to) {
+        int i = from;
+        while (i < to) {
+            int b = in.get(i);
+            if (b >= 0) {
+                i++;
+                continue;
+            }
+            int n = sequenceLength(b);
+            if (n == 0 || i + n > to)
+                return false;
+            int cp = lead(b, n);
+            for (int k = 1; k < n; k++) {
+                if (!fits(b, k, in.get(i + k)))
+                    return false;
+                cp = cp << 6 | in.get(i + k) & 0x3f;
+            }
+            if (isSurrogate(cp))
+                return false;
+            i += n;
+        }
+        return true;
+    }
+
+    // the same on a heap buffer's array, where the ASCII run is a tight loop
+    private static void decode(byte[] a, int base, int from, int to, MappedText out) {
+        int i = from;
+        while (i < to) {
+            int b = a[base + i];
+            if (b >= 0) {
+                out.append((char) b, i++);
+                continue;
+            }
+            int n = sequenceLength(b);
+            int cp = lead(b, n);
+            int k = 1;
+            for (; k < n && i + k < to && fits(b, k, a[base + i + k]); k++)
+                cp = cp << 6 | a[base + i + k] & 0x3f;
+            i = append(cp, n, k, i, out);
+        }
+    }
+
+    // 2 to 4 for a lead byte, 0 for anything else (C0 and C1 would only ever be overlong, F5 and up too large)
+    private static int sequenceLength(int b) {
+        b &= 0xff;
+        if (b >= 0xc2 && b <= 0xdf)
+            return 2;
+        if (b >= 0xe0 && b <= 0xef)
+            return 3;
+        if (b >= 0xf0 && b <= 0xf4)
+            return 4;
+        return 0;
+    }
+
+    private static int lead(int b, int n) {
+        return b & (0x7f >> n);
+    }
+
+    // whether c may be byte k (from 1) of a sequence that starts with lead
+    private static boolean fits(int lead, int k, int c) {
+        c &= 0xff;
+        if (k > 1)
+            return (c & 0xc0) == 0x80;
+        lead &= 0xff;
+        int min = lead == 0xe0 ? 0xa0 : lead == 0xf0 ? 0x90 : 0x80;  // no overlongs
+        int max = lead == 0xf4 ? 0x8f : 0xbf;                         // nothing past U+10FFFF
+        return c >= min && c <= max;
+    }
+
+    private static boolean isSurrogate(int cp) {
+        return cp >= Character.MIN_SURROGATE && cp <= Character.MAX_SURROGATE;
+    }
+
+    // appends what the k bytes found at i decode to, code point cp if they are all n of its; where the next sequence starts
+    private static int append(int cp, int n, int k, int i, MappedText out) {
+        if (k < n || n == 0 || isSurrogate(cp)) {
+            out.append('\ufffd', i);
+            return i + k;
+        }
+        if (cp < Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+            out.append((char) cp, i);
+        } else {
+            out.append(Character.highSurrogate(cp), i);
+            out.append(Character.lowSurrogate(cp), i);
+        }
+        return i + n;
+    }
+
+    /**
+     * Encodes s into out from at; out needs room for 3 bytes per char.
+     * byteAt[i] gets where char i's bytes start, relative to at, and
+     * byteAt[s.length()] where they all end.
+     *
+     * @return the index in out after the last byte
+     */
+    static int encode(CharSequence s, byte[] out, int at, int[] byteAt) {
+        int o = at;
+        int n = s.length();
+        for (int i = 0; i < n; i++) {
+            char c = s.charAt(i);
+            byteAt[i] = o - at;
+            if (c < 0x80) {
+                out[o++] = (byte) c;
+            } else if (c < 0x800) {
+                out[o++] = (byte) (0xc0 | c >> 6);
+                out[o++] = (byte) (0x80 | c & 0x3f);
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                byteAt[i] = byteAt[i - 1];
+                out[o++] = (byte) (0xf0 | cp >> 18);
+                out[o++] = (byte) (0x80 | cp >> 12 & 0x3f);
+                out[o++] = (byte) (0x80 | cp >> 6 & 0x3f);
+                out[o++] = (byte) (0x80 | cp & 0x3f);
+            } else if (Character.isSurrogate(c)) {
+                out[o++] = '?';
+            } else {
+                out[o++] = (byte) (0xe0 | c >> 12);
+                out[o++] = (byte) (0x80 | c >> 6 & 0x3f);
+                out[o++] = (byte) (0x80 | c & 0x3f);
+            }
+        }
+        byteAt[n] = o - at;
+        return o;
+    }
+}
@@ -0,0 +1,110 @@
+package cmu.arktweetnlp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import cmu.arktweetnlp.bench.TweetGenerator;
+
+/**
+ * The rewrite against BaselineTwokenize, the code as it was before it, on
+ * texts of 280 chars and more, where offsets pass 127 and the baseline's
+ * boxed Integers stop being cached: the same tokens, and simpleSegment gives
+ * the same segments, or fails to line them up, just where the baseline does,
+ * also for tokenizations that aren't the tokenizer's own. So does segment(),
+ * and where the baseline lines up, tokenizeAndSegment() too.
+ */
+public class BaselineSegmentTest {
+
+    private static final String[] CASES = {
+        "...?(???)? @tomorrow_283: soooo", "RT @a: RT @b: ok?! no... Yes. Really", "@user: thanks!! See you. Tomorrow then",
+        "go to example.com/a?b=c now!!!", "see https://example.com/a?b=c&d=e. , U.S.A. now", "lol xD 8D :'( (T_T) 8);",
+    };
+
+    private static List<String> texts() {
+        List<String> texts = new ArrayList<String>();
+        StringBuilder pad = new StringBuilder();
+        while (pad.length() < 280)
+            pad.append("word ");
+        for (String text : CASES) {
+            texts.add(pad + text);
+            texts.add(pad + text + " " + pad + text);
+        }
+        for (String mix : TweetGenerator.MIXES.keySet()) {
+            texts.addAll(TestTweets.tweets(mix, 280, 600, 100, false));
+            texts.addAll(TestTweets.tweets(mix, 280, 600, 50, true));
+        }
+        return texts;
+    }
+
+    @Test
+    public void sameAsTheBaseline() {
+        for (String raw : texts()) {
+            assertTrue(raw.length() >= 280);
+            List<String> tokens = BaselineTwokenize.tokenize(raw);
+            assertEquals(raw, tokens, Twokenizer.DEFAULT.tokenize(raw));
+            String tokenized = join(tokens);
+            if (check(raw, tokenized))
+                assertEquals(raw, BaselineTwokenize.simpleSegment(raw, tokenized), Twokenizer.DEFAULT.tokenizeAndSegment(raw).toString());
+        }
+    }
+
+    @Test
+    public void sameAsTheBaselineWithOtherTokenizations() {
+        int failures = 0;
+        for (String raw : texts()) {
+            String tokenized = join(BaselineTwokenize.tokenize(raw));
+            // what the alignment takes for the same text
+            check(raw, tokenized.replace("...", "\u2026").replace('"', '\u201c'));
+            // and what it can't line up
+            int at = tokenized.length() / 2;
+            if (!check(raw, tokenized.substring(0, at) + "\u00a7" + tokenized.substring(at + 1)))
+                failures++;
+            if (!check(raw, tokenized.substring(0, at)))
+                failures++;
+        }
+        assertTrue(failures > 0);
+    }
+
+    /** Segments raw and tokenized as the baseline does, or fails where it does; whether it lined up. */
+    private static boolean check(String raw, String tokenized) {
+        String expected;
+        try {
+            expected = BaselineTwokenize.simpleSegment(raw, tokenized);
+        } catch (RuntimeException e) {
+            assertFails(raw, tokenized);
+            return false;
+        }
+        assertEquals(raw, expected, Twokenizer.DEFAULT.simpleSegment(raw, tokenized));
+        assertEquals(raw, expected, Twokenize.simpleSegment(raw, tokenized));
+        assertEquals(raw, expected, Twokenizer.DEFAULT.segment(raw, tokenized).toString());
+        return true;
+    }
+
+    private static void assertFails(String raw, String tokenized) {
+        try {
+            Twokenizer.DEFAULT.simpleSegment(raw, tokenized);
+            fail(raw + "\n" + tokenized);
+        } catch (RuntimeException e) {
+            // expected
+        }
+        try {
+            Twokenizer.DEFAULT.segment(raw, tokenized);
+            fail(raw + "\n" + tokenized);
+        } catch (RuntimeException e) {
+            // expected
+        }
+    }
+
+    private static String join(List<String> tokens) {
+        StringBuilder sb = new StringBuilder();
+        for (String token : tokens)
+            sb.append(sb.length() > 0 ? " " : "").append(token);
+        return sb.toString();
+    }
+}
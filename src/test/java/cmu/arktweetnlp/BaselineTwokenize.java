@@ -1,4 +1,4 @@
-//package cmu.arktweetnlp;
+package cmu.arktweetnlp;
 
 import java.io.BufferedReader;
 import java.io.IOException;
@@ -14,6 +14,9 @@ import java.util.Comparator;
 
 import org.apache.commons.lang.StringEscapeUtils;
 
+// Twokenize exactly as it was before the Twokenizer rewrite, only moved into
+// the package and renamed, for tests to compare the rewrite against.
+
 /**
  * Twokenize -- a tokenizer designed for Twitter text in English and some other European languages.
  * This is the Java version. If you want the old Python version, see: http://github.com/brendano/tweetmotif
@@ -35,7 +38,7 @@ import org.apache.commons.lang.StringEscapeUtils;
  *
  * There have been at least 2 other Java ports, but they are not in the lineage for the code here.
  */
-public class Twokenize {
+final class BaselineTwokenize {
     static Pattern Contractions = Pattern.compile("(?i)(\\w+)(n['’′]t|['’′]ve|['’′]ll|['’′]d|['’′]re|['’′]s|['’′]m)$", Pattern.UNICODE_CHARACTER_CLASS);
     static Pattern Whitespace = Pattern.compile("[\\s\\p{Zs}]+", Pattern.UNICODE_CHARACTER_CLASS);
 
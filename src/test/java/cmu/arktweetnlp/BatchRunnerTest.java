@@ -0,0 +1,120 @@
+package cmu.arktweetnlp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import org.junit.Test;
+
+/**
+ * BatchRunner keeps records together and in order: the lines of all inputs
+ * with the same line number go to the function as one record, and the
+ * outputs come out in input order, however the workers finish.
+ */
+public class BatchRunnerTest {
+
+    // some records take much longer than others, so chunks finish out of order
+    private static final BatchRunner.LineFunction SLOW_NOW_AND_THEN = new BatchRunner.LineFunction() {
+        @Override
+        public void apply(String[] record, StringBuilder out) {
+            int n = Integer.parseInt(record[0].substring(record[0].indexOf(' ') + 1));
+            if (n % 17 == 0) {
+                try {
+                    Thread.sleep(n % 3);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            for (int i = 0; i < record.length; i++)
+                out.append(i > 0 ? "|" : "").append(record[i]);
+            out.append('\n');
+        }
+    };
+
+    private static String lines(String prefix, int n) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < n; i++)
+            sb.append(prefix).append(' ').append(i).append('\n');
+        return sb.toString();
+    }
+
+    private static String run(int threads, int chunkSize, BatchRunner.LineFunction fn, String... inputs) throws IOException {
+        BufferedReader[] readers = new BufferedReader[inputs.length];
+        for (int i = 0; i < inputs.length; i++)
+            readers[i] = new BufferedReader(new StringReader(inputs[i]));
+        StringWriter out = new StringWriter();
+        new BatchRunner(threads, chunkSize).run(readers, fn, out);
+        return out.toString();
+    }
+
+    @Test
+    public void outputsInInputOrder() throws IOException {
+        String input = lines("line", 2000);
+        for (int threads : new int[] { 1, 2, 8 })
+            for (int chunkSize : new int[] { 1, 3, 1024 })
+                assertEquals(threads + " threads, chunks of " + chunkSize, input, run(threads, chunkSize, SLOW_NOW_AND_THEN, input));
+    }
+
+    @Test
+    public void inputsStayPaired() throws IOException {
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 500; i++)
+            expected.append("raw ").append(i).append("|tok ").append(i).append('\n');
+        assertEquals(expected.toString(), run(4, 7, SLOW_NOW_AND_THEN, lines("raw", 500), lines("tok", 500)));
+        // and stop with the shorter input
+        assertEquals("raw 0|tok 0\nraw 1|tok 1\n", run(4, 7, SLOW_NOW_AND_THEN, lines("raw", 500), lines("tok", 2)));
+    }
+
+    @Test
+    public void emptyInput() throws IOException {
+        assertEquals("", run(4, 16, SLOW_NOW_AND_THEN, ""));
+    }
+
+    @Test
+    public void functionFailureIsRethrown() throws IOException {
+        BatchRunner.LineFunction failing = new BatchRunner.LineFunction() {
+            @Override
+            public void apply(String[] record, StringBuilder out) {
+                if (record[0].equals("line 123"))
+                    throw new IllegalStateException("no " + record[0]);
+                out.append(record[0]).append('\n');
+            }
+        };
+        try {
+            run(4, 10, failing, lines("line", 1000));
+            fail("expected the function's exception");
+        } catch (IllegalStateException e) {
+            assertEquals("no line 123", e.getMessage());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void readFailureIsRethrown() throws IOException {
+        Reader broken = new Reader() {
+            private int calls;
+
+            @Override
+            public int read(char[] cbuf, int off, int len) throws IOException {
+                if (calls++ > 0)
+                    throw new IOException("disk on fire");
+                cbuf[off] = 'x';
+                return 1;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        new BatchRunner(2, 1).run(new BufferedReader[] { new BufferedReader(broken) }, SLOW_NOW_AND_THEN, new StringWriter());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void needsAThread() {
+        new BatchRunner(0, 1024);
+    }
+}
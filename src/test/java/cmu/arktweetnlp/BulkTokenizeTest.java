@@ -0,0 +1,163 @@
+package cmu.arktweetnlp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * The bulk entry points give what tokenize and tokenizeAndSegment give in a
+ * loop, in input order, also when parallel streams and executors finish the
+ * pieces in any order. Runs in pools of several threads so the pieces really
+ * do overlap, whatever the machine's core count.
+ */
+public class BulkTokenizeTest {
+
+    private static final Twokenizer TK = Twokenizer.builder().build();
+
+    private static List<String> texts;
+    private static List<List<String>> tokens;
+    private static List<String> segments;
+    private static ForkJoinPool forkJoin;
+    private static ExecutorService executor;
+
+    @BeforeClass
+    public static void setUp() {
+        texts = TestTweets.tweets("default", 280, 2000, false);
+        tokens = new ArrayList<List<String>>();
+        segments = new ArrayList<String>();
+        for (String text : texts) {
+            tokens.add(TK.tokenize(text));
+            segments.add(describe(TK.tokenizeAndSegment(text)));
+        }
+        forkJoin = new ForkJoinPool(8);
+        executor = Executors.newFixedThreadPool(8);
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        forkJoin.shutdown();
+        executor.shutdown();
+    }
+
+    private static String describe(Segmentation s) {
+        return s.tokenized() + " => " + s;
+    }
+
+    private static final Function<Segmentation, String> DESCRIBE = new Function<Segmentation, String>() {
+        @Override
+        public String apply(Segmentation s) {
+            return describe(s);
+        }
+    };
+
+    // a parallel stream run inside forkJoin works in forkJoin, not the common pool
+    private static <T> T inForkJoin(Callable<T> job) throws Exception {
+        return forkJoin.submit(job).get();
+    }
+
+    @Test
+    public void parallelStreamInInputOrder() throws Exception {
+        assertEquals(tokens, inForkJoin(new Callable<List<List<String>>>() {
+            @Override
+            public List<List<String>> call() {
+                return TK.tokenizeAll(texts.parallelStream()).collect(Collectors.<List<String>>toList());
+            }
+        }));
+        assertEquals(segments, inForkJoin(new Callable<List<String>>() {
+            @Override
+            public List<String> call() {
+                return TK.tokenizeAndSegmentAll(texts.parallelStream()).map(DESCRIBE).collect(Collectors.<String>toList());
+            }
+        }));
+    }
+
+    @Test
+    public void collectionStreamInInputOrder() throws Exception {
+        for (final boolean parallel : new boolean[] { false, true }) {
+            assertEquals(tokens, inForkJoin(new Callable<List<List<String>>>() {
+                @Override
+                public List<List<String>> call() {
+                    return TK.tokenizeAll(texts, parallel).collect(Collectors.<List<String>>toList());
+                }
+            }));
+            assertEquals(segments, inForkJoin(new Callable<List<String>>() {
+                @Override
+                public List<String> call() {
+                    return TK.tokenizeAndSegmentAll(texts, parallel).map(DESCRIBE).collect(Collectors.<String>toList());
+                }
+            }));
+        }
+    }
+
+    @Test
+    public void executorInInputOrder() {
+        assertEquals(tokens, TK.tokenizeAll(texts, executor));
+        List<String> described = new ArrayList<String>();
+        for (Segmentation s : TK.tokenizeAndSegmentAll(texts, executor))
+            described.add(describe(s));
+        assertEquals(segments, described);
+    }
+
+    @Test
+    public void fewerTextsThanAChunk() {
+        List<String> few = texts.subList(0, 3);
+        assertEquals(tokens.subList(0, 3), TK.tokenizeAll(few, executor));
+        assertEquals(tokens.subList(0, 3), TK.tokenizeAll(few, true).collect(Collectors.<List<String>>toList()));
+        assertEquals(0, TK.tokenizeAll(new ArrayList<String>(), executor).size());
+    }
+
+    @Test
+    public void executorFailure() {
+        List<String> withNull = new ArrayList<String>(texts);
+        withNull.set(1000, null);
+        try {
+            TK.tokenizeAll(withNull, executor);
+            fail();
+        } catch (CompletionException e) {
+            assertTrue(e.getCause() instanceof NullPointerException);
+        }
+    }
+
+    @Test
+    public void spliteratorSplitsInHalvesInOrder() {
+        String[] array = texts.subList(0, 1000).toArray(new String[0]);
+        Spliterator<String> suffix = new TextSpliterator<String>(array, Function.<String>identity());
+        assertTrue(suffix.hasCharacteristics(Spliterator.ORDERED | Spliterator.SIZED | Spliterator.SUBSIZED));
+        Spliterator<String> prefix = suffix.trySplit();
+        assertEquals(500, prefix.estimateSize());
+        assertEquals(500, suffix.estimateSize());
+
+        final List<String> seen = new ArrayList<String>();
+        Consumer<String> add = new Consumer<String>() {
+            @Override
+            public void accept(String s) {
+                seen.add(s);
+            }
+        };
+        prefix.tryAdvance(add);
+        prefix.forEachRemaining(add);
+        suffix.forEachRemaining(add);
+        assertEquals(Arrays.asList(array), seen);
+
+        // too small to be worth splitting
+        assertNull(new TextSpliterator<String>(new String[127], Function.<String>identity()).trySplit());
+    }
+}
@@ -0,0 +1,145 @@
+package cmu.arktweetnlp;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * The engines against each other. The scanner and the prefilter only ever
+ * skip attempts the Protected alternation would have failed, so they must
+ * find exactly what it finds: the same protected spans, of the same
+ * TokenClass, and so the same tokens and segments. The emoticon lexicon
+ * and the top-level domain list go into all three engines alike, so they
+ * must not set them apart either.
+ *
+ * The texts are the seeded TweetGenerator corpus (see TestTweets), every mix,
+ * and the EDGE_CASES below, alone and run together.
+ */
+public class EngineEquivalenceTest {
+
+    private static final int PER_MIX = 500;
+
+    // Where the classes begin and end, bump into each other, or nearly match.
+    private static final String[] EDGE_CASES = {
+        "", " ", "\t\n ", "a", "&", "&amp;", "&amp;amp;", "&lt;3", "&#39;", "&bogus;", "AT&T", "AT&amp;T",
+        "<3", "<333", "</3", "<3<3", "x<3", "♥", "♥♥♥", "❤", "★☆★",
+        "http://", "http://t.co", "http://t.co/abc123", "https://example.com/a?b=c&amp;d=e.",
+        "(http://t.co/abc)", "\"http://t.co/x\"", "http://t.co/x...", "www.example.com/path/", "example.com",
+        "foo.example.co.uk/x?y", "a.b.c.d.e", "1.2.3.4", "example.c", "-example.com", "x.com.", "x.com,",
+        "e.g.", "U.S.A.", "U.S.A", "Mr. Smith", "i.e", "a.b", "vs.", "p.m.",
+        "foo@bar.com", "foo.bar+baz@example.co.uk", "@user", "@user:", "＠user", "@u@v", "a@b", "RT @x: y",
+        "#tag", "#1", "##", "#tag#tag", "x#y",
+        "12:30", "12:30pm", "1:2:3", "1,000", "1,000,000.50", "10,00", "$5", "$5.99", "€3,50", "2.5x", "3.14%",
+        ":)", ":-)", ":))", ":-))", ":(", ";)", ":D", "xD", "XD", ":P", ":p", ":/", "://", ":'(", ">:(", "&gt;:(",
+        "D:", "):", "(:", " (:", "x(:", "=)", "=D", "8)", ":*", "<:", ":>", "o.O", "O_o", "-_-", "^_^", "^^",
+        "(^_^)", "(>_<)", "ಠ_ಠ", "¯\\_(ツ)_/¯", "(╯°□°）╯︵ ┻━┻", "ヽ(´ー｀)ノ", "＼(^o^)／", "ƪ(˘⌣˘)ʃ", "•_•",
+        "->", "<-", "<--", "-->", "==>", "<=", "→", "⇒", "x->y",
+        "!", "!!", "!!!", "?!", "!?", "?!?!", "...", "…", ". . .", "!!!!!!!!!!!!!!!!!!!!!!!!", "''", "\"\"",
+        "“quoted”", "‘quoted’", "«x»", "--", "—", "–", "~~", "==", "- -",
+        "can't", "I'm", "rock'n'roll", "'tis", "dogs'", "o'", "'", "'''",
+        "😀", "😀😀", "a😀b", "\uD83D", "\uD83D x", "x \uDE00", " ", "a‍b", "　x　",
+        "word.word", "word,word", "word:word", "x:)", ":)x", "(:x", "x):", "a(:b", "http://x.co/:)",
+        "hi:) there:D !!! :( ... RT @a: #b http://c.co/d e@f.gh 1,000 12:30 &lt;3 ♥ --> ¯\\_(ツ)_/¯",
+    };
+
+    // Hosts on these only count with the extra domains, and may run into other classes.
+    private static final String[] DOMAIN_CASES = {
+        "example.photography", "see example.photography/x now", "my.app", "foo.app/x?y=z", "x.berlin.", "a.xyz:)",
+        "foo@bar.app", "v.0.app", "example.co.uk", "example.co.app", "example.app.uk", "photography",
+    };
+
+    // the corpus, every edge case, and every one run into the next, with and without a space
+    private static List<String> texts(String... more) {
+        List<String> texts = new ArrayList<String>(TestTweets.everyMix(PER_MIX));
+        texts.addAll(Arrays.asList(EDGE_CASES));
+        for (int i = 0; i < EDGE_CASES.length; i++) {
+            String next = EDGE_CASES[(i + 1) % EDGE_CASES.length];
+            texts.add(EDGE_CASES[i] + next);
+            texts.add(EDGE_CASES[i] + " " + next);
+        }
+        texts.addAll(Arrays.asList(more));
+        return texts;
+    }
+
+    @Test
+    public void defaults() {
+        assertSame(Twokenizer.builder(), texts());
+    }
+
+    @Test
+    public void splitContractions() {
+        assertSame(Twokenizer.builder().splitContractions(true), texts());
+    }
+
+    @Test
+    public void emoticonLexicon() {
+        assertSame(Twokenizer.builder().emoticonLexicon(EmoticonLexicon.defaults()), texts());
+    }
+
+    @Test
+    public void moreTopLevelDomains() {
+        TopLevelDomains domains = TopLevelDomains.defaults().plus(
+                TopLevelDomains.of(Arrays.asList("photography", "app", "berlin", "xyz")));
+        assertSame(Twokenizer.builder().topLevelDomains(domains), texts(DOMAIN_CASES));
+    }
+
+    @Test
+    public void fewerTopLevelDomains() {
+        TopLevelDomains domains = TopLevelDomains.of(Arrays.asList("com", "app", "uk", "co"));
+        EmoticonLexicon lexicon = EmoticonLexicon.of(Collections.singletonList("<(^_^<)"));
+        assertSame(Twokenizer.builder().topLevelDomains(domains).emoticonLexicon(lexicon), texts(DOMAIN_CASES));
+    }
+
+    private static void assertSame(Twokenizer.Builder builder, List<String> texts) {
+        Twokenizer regex = builder.engine(Twokenizer.Engine.REGEX).build();
+        Twokenizer[] others = {
+            builder.engine(Twokenizer.Engine.SCANNER).build(),
+            builder.engine(Twokenizer.Engine.REGEX).prefilter(true).build(),
+        };
+        for (String text : texts) {
+            String normalized = regex.normalizeTextForTagger(text);
+            String expected = outcome(regex, text, normalized);
+            for (Twokenizer other : others)
+                assertEquals(describe(other) + " on \"" + text + "\"", expected, outcome(other, text, normalized));
+        }
+    }
+
+    private static String describe(Twokenizer tk) {
+        return tk.engine() + (tk.prefilters() ? " with the prefilter" : "");
+    }
+
+    // Everything the engine decides about a text, one item per line so a failure shows where.
+    private static String outcome(Twokenizer tk, String text, String normalized) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("protected in raw: ").append(protectedSpans(tk, text)).append('\n');
+        sb.append("protected in normalized: ").append(protectedSpans(tk, normalized)).append('\n');
+        List<String> tokens = tk.tokenize(normalized);
+        sb.append("tokenize: ").append(tokens).append('\n');
+        sb.append("tokenizeRawTweetText: ").append(tk.tokenizeRawTweetText(text)).append('\n');
+        StringBuilder tokenized = new StringBuilder();
+        for (String token : tokens)
+            tokenized.append(tokenized.length() > 0 ? " " : "").append(token);
+        Segmentation fused = tk.tokenizeAndSegment(normalized);
+        sb.append("tokenizeAndSegment: ").append(fused.tokenized()).append('\n').append(fused).append('\n');
+        try {
+            sb.append("simpleSegment: ").append(tk.simpleSegment(normalized, tokenized.toString())).append('\n');
+        } catch (RuntimeException e) {
+            // the segmenter can fail to align; it has to fail alike
+            sb.append("simpleSegment failed: ").append(e.getMessage()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static String protectedSpans(Twokenizer tk, String text) {
+        StringBuilder sb = new StringBuilder();
+        ProtectedFinder finder = tk.protectedFinder().reset(text);
+        while (finder.find())
+            sb.append('[').append(finder.start()).append(',').append(finder.end()).append(' ').append(finder.tokenClass()).append(']');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,91 @@
+package cmu.arktweetnlp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.commons.lang.StringEscapeUtils;
+import org.junit.Test;
+
+/**
+ * HtmlUnescaper against what normalizeTextForTagger did before it: every
+ * "&amp;" replaced by '&', then commons-lang's unescapeHtml. Also checks
+ * that the raw offsets lead every char back to where it came from.
+ */
+public class HtmlUnescaperTest {
+
+    private static final String[] CASES = {
+        "", "plain", "&", "&amp;", "&amp;amp;", "&amp;amp;amp;", "&amp;lt;3", "&lt;3", "AT&T", "AT&amp;T",
+        "&#-5;", "&#-1;", "&#-0;", "&#+65;", "&#65;", "&#X41;", "&#x41;", "&#00065;", "&#0;", "&#;", "&#x;", "&#-;",
+        "&#65535;", "&#65536;", "&#xFFFF;", "&#x10000;", "&#x1F600;", "&#128512;", "&#1114111;",
+        "&#2147483647;", "&#2147483648;", "&#-2147483648;", "&#-2147483649;", "&#99999999999;",
+        "&bogus;", "&;", "&lt", "& lt;", "&ampx;", "&amp", "&&amp;;", "&&lt;", "&lt;&gt;", "&amp;#-5;",
+        "&nbsp;&hellip;&euro;", "&Alpha;&alpha;", "&thetasym;", "&alefsym;x", "&LT;", "&quot;hi&quot;",
+        "x &amp;&amp; y", "&#x2764;&#xFE0F;", "&amp;#8217;", "&#8217;s", "&amp;nbsp;", "a&b;c&d;",
+    };
+
+    @Test
+    public void sameAsCommonsLang() {
+        for (String text : CASES)
+            assertSameAsCommonsLang(text);
+    }
+
+    @Test
+    public void generatedTweetsSameAsCommonsLang() {
+        for (String mix : Arrays.asList("default", "entities"))
+            for (String text : TestTweets.tweets(mix, 2000))
+                assertSameAsCommonsLang(text);
+    }
+
+    @Test
+    public void randomEntityLikeTextSameAsCommonsLang() {
+        String[] pieces = { "&", "&", "#", "x", "X", ";", ";", "amp", "lt", "gt", "nbsp", "1", "6", "5", "0", "F", "-", "+", " ", "a" };
+        Random random = TestTweets.random();
+        for (int t = 0; t < 20000; t++) {
+            StringBuilder sb = new StringBuilder();
+            for (int i = random.nextInt(12); i > 0; i--)
+                sb.append(pieces[random.nextInt(pieces.length)]);
+            assertSameAsCommonsLang(sb.toString());
+        }
+    }
+
+    @Test
+    public void textWithoutAmpersandComesBackAsItIs() {
+        String text = "no entities here :) <3";
+        assertSame(text, HtmlUnescaper.unescape(text));
+        assertSame(text, HtmlUnescaper.unescape(text, new int[text.length() + 1]));
+    }
+
+    @Test
+    public void rawOffsets() {
+        String text = "a&amp;lt;b &#x1F600; &bogus; &#128512;";
+        int[] raw = new int[text.length() + 1];
+        String decoded = HtmlUnescaper.unescape(text, raw);
+        assertEquals("a<b &#x1F600; &bogus; &#128512;", decoded);
+        assertEquals(0, raw[0]);
+        assertEquals(1, raw[1]);    // '<' is all of "&amp;lt;"
+        assertEquals(9, raw[2]);
+        assertEquals(text.length(), raw[decoded.length()]);
+    }
+
+    private static void assertSameAsCommonsLang(String text) {
+        String expected = StringEscapeUtils.unescapeHtml(text.replaceAll("&amp;", "&"));
+        assertEquals("\"" + text + "\"", expected, HtmlUnescaper.unescape(text));
+
+        int[] raw = new int[text.length() + 1];
+        String decoded = HtmlUnescaper.unescape(text, raw);
+        assertEquals("\"" + text + "\"", expected, decoded);
+        // every char comes from a piece of text, the pieces in order and covering all of it
+        assertEquals(0, decoded.isEmpty() ? 0 : raw[0]);
+        assertEquals(text.length(), raw[decoded.length()]);
+        for (int i = 0; i < decoded.length(); i++) {
+            String from = text.substring(raw[i], raw[i + 1]);
+            if (from.length() == 1)
+                assertEquals("\"" + text + "\" at " + i, from.charAt(0), decoded.charAt(i));
+            else
+                assertEquals("\"" + text + "\" at " + i, '&', from.charAt(0));
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package cmu.arktweetnlp;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * --mmap against the default mode: the same lines, ended by '\n', '\r' or
+ * "\r\n", with and without a line end at the very end, through an output
+ * buffer so small it is written out in the middle of lines; malformed UTF-8
+ * comes out as U+FFFD, as through the default mode's Reader. And so for
+ * every window size that holds the longest line, so that a line end (and
+ * "\r\n" split in two) falls at every window edge.
+ */
+public class MappedTokenizerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final String[] ENDS = { "\n", "\r", "\r\n", "\n\n", "\r\r", "\r\n\r\n", "\n\r" };
+
+    private static String document(boolean endAtTheEnd) {
+        return document(TestTweets.tweets("entities", 500), endAtTheEnd);
+    }
+
+    private static String document(List<String> tweets, boolean endAtTheEnd) {
+        Random random = TestTweets.random();
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < tweets.size(); i++) {
+            sb.append(tweets.get(i));
+            if (i < tweets.size() - 1 || endAtTheEnd)
+                sb.append(ENDS[random.nextInt(ENDS.length)]);
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void sameAsTheDefaultMode() throws IOException {
+        for (boolean endAtTheEnd : new boolean[] { true, false }) {
+            String text = document(endAtTheEnd);
+            assertEquals(defaultMode(text), mapped(file(text)));
+        }
+    }
+
+    @Test
+    public void sameAsTheDefaultModeInEveryWindowSize() throws IOException {
+        for (boolean endAtTheEnd : new boolean[] { true, false }) {
+            String text = document(TestTweets.tweets("entities", 80, 60, true), endAtTheEnd);
+            File file = file(text);
+            String expected = defaultMode(text);
+            for (int window = longestLine(text) + 1; window < 300; window++)
+                assertEquals("window " + window, expected, mapped(window, file));
+        }
+    }
+
+    @Test
+    public void crLfSplitAcrossWindows() throws IOException {
+        // the first window ends at the '\r', the next starts at the '\n'
+        assertEquals("ab\ncd\n", mapped(3, file("ab\r\ncd")));
+        assertEquals("ab\n\ncd\n", mapped(3, file("ab\r\rcd")));
+        assertEquals("ab\n\ncd\n", mapped(3, file("ab\r\n\ncd")));
+        assertEquals("ab\ncd\n", mapped(3, file("ab\ncd\r\n")));
+    }
+
+    @Test
+    public void lineAsLongAsTheWindow() throws IOException {
+        // its line end is in the next window, and ends it rather than an empty line after it
+        assertEquals("abc\nd\n", mapped(3, file("abc\nd")));
+        assertEquals("abc\nd\n", mapped(3, file("abc\r\nd")));
+        assertEquals("abc\n\nd\n", mapped(3, file("abc\r\rd")));
+        // only a longer one is cut in two
+        assertEquals("abc\nd\ne\n", mapped(3, file("abcd\ne")));
+    }
+
+    @Test
+    public void entitiesAreUnescaped() throws IOException {
+        assertEquals("I <3 AT&T\n:-) x\n", mapped(file("I &lt;3 AT&amp;T\r\n:-) x")));
+    }
+
+    @Test
+    public void emptyLinesAndFiles() throws IOException {
+        assertEquals("\n\na\n", mapped(file("\n\r\na\n")));
+        assertEquals("\n\na\n", mapped(file("\r\ra\r")));
+        assertEquals("", mapped(file("")));
+    }
+
+    @Test
+    public void manyFiles() throws IOException {
+        // a '\r' at the end of one file takes nothing from the next
+        File a = file("one\r"), b = file("\ntwo\r\n"), c = file(""), d = file("three");
+        assertEquals("one\n\ntwo\nthree\n", mapped(a, b, c, d));
+    }
+
+    @Test
+    public void malformedUtf8() throws IOException {
+        byte[][] lines = {
+            { 'a', (byte) 0xC3, ' ', 'b' },                  // cut short
+            { (byte) 0xE2, (byte) 0x82, 'x', ':', ')' },      // cut short, then more
+            { (byte) 0xC0, (byte) 0xAF, ' ', 'o', 'k' },      // overlong
+            { (byte) 0xED, (byte) 0xA0, (byte) 0x80, ' ', 'x' }, // a surrogate
+            { (byte) 0xFF, ' ', '&', 'l', 't', ';', '3' },    // and an entity
+        };
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (byte[] line : lines) {
+            bytes.write(line);
+            bytes.write('\n');
+        }
+        String text = new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+        // as bytes: decoding the output would hide malformed bytes copied through
+        assertArrayEquals(defaultMode(text).getBytes(StandardCharsets.UTF_8), mappedBytes(MappedTokenizer.WINDOW, file(bytes.toByteArray())));
+    }
+
+    private File file(String text) throws IOException {
+        return file(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private File file(byte[] bytes) throws IOException {
+        File file = folder.newFile();
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(bytes);
+        out.close();
+        return file;
+    }
+
+    private static String mapped(File... files) throws IOException {
+        return mapped(MappedTokenizer.WINDOW, files);
+    }
+
+    private static String mapped(int window, File... files) throws IOException {
+        return new String(mappedBytes(window, files), StandardCharsets.UTF_8);
+    }
+
+    private static byte[] mappedBytes(int window, File... files) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        // a small output buffer, so it is flushed mid-line too
+        MappedTokenizer mapped = new MappedTokenizer(Twokenizer.DEFAULT, Channels.newChannel(bytes), 16, window);
+        String[] paths = new String[files.length];
+        for (int i = 0; i < files.length; i++)
+            paths[i] = files[i].getPath();
+        mapped.tokenize(Arrays.asList(paths));
+        return bytes.toByteArray();
+    }
+
+    private static String defaultMode(String text) throws IOException {
+        BufferedReader input = new BufferedReader(new StringReader(text));
+        BatchRunner.LineFunction tokenizer = Twokenize.tokenizer(Twokenizer.DEFAULT, true);
+        StringBuilder sb = new StringBuilder();
+        String[] record = new String[1];
+        while ((record[0] = input.readLine()) != null)
+            tokenizer.apply(record, sb);
+        return sb.toString();
+    }
+
+    // in UTF-8 bytes, with its line end
+    private static int longestLine(String text) {
+        int longest = 0;
+        for (String line : text.split("\r\n|\r|\n"))
+            longest = Math.max(longest, line.getBytes(StandardCharsets.UTF_8).length + 2);
+        return longest;
+    }
+}
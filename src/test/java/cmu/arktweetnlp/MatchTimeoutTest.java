@@ -0,0 +1,149 @@
+package cmu.arktweetnlp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Guarded matching: DeadlineCharSequence gives up once late, and a call that
+ * runs out of match time falls back to whitespace and edge punctuation (for
+ * tokens) or one text segment (for segments), and is counted and reported.
+ * With a generous budget nothing changes.
+ */
+public class MatchTimeoutTest {
+
+    // one repeat's worth of fallback tokens; the regexes would split "ok", "!!"
+    private static final String UNIT = "(hello)  \"world\" it's ok!! http://t.co/x :D ";
+    private static final String[] UNIT_TOKENS = { "(", "hello", ")", "\"", "world", "\"", "it's", "ok!!", "http://t.co/x", ":D" };
+
+    // long enough that any matcher reads well past the first clock check
+    private static final String LONG = repeat(UNIT, 100);
+
+    private static String repeat(String s, int n) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < n; i++)
+            sb.append(s);
+        return sb.toString();
+    }
+
+    private static List<String> fallbackTokens(int repeats) {
+        List<String> tokens = new ArrayList<String>();
+        for (int i = 0; i < repeats; i++)
+            tokens.addAll(Arrays.asList(UNIT_TOKENS));
+        return tokens;
+    }
+
+    // gives up on everything: the first clock check is already late
+    private static Twokenizer impatient(final List<CharSequence> heard) {
+        return Twokenizer.builder()
+                .matchTimeout(1, TimeUnit.NANOSECONDS)
+                .timeoutListener(new Twokenizer.TimeoutListener() {
+                    @Override
+                    public void timedOut(CharSequence text, long elapsedNanos) {
+                        heard.add(text.toString());
+                    }
+                })
+                .build();
+    }
+
+    @Test
+    public void deadlineCharSequenceGivesUpOnceLate() {
+        DeadlineCharSequence view = new DeadlineCharSequence().reset(LONG, System.nanoTime() - 1);
+        int read = 0;
+        try {
+            while (true)
+                view.charAt(read++ % LONG.length());
+        } catch (DeadlineCharSequence.Exceeded e) {
+            assertSame(DeadlineCharSequence.EXCEEDED, e);
+        }
+        // it only looks at the clock every so often, but not never
+        assertEquals(1025, read);
+    }
+
+    @Test
+    public void deadlineCharSequenceReadsOnInTime() {
+        DeadlineCharSequence view = new DeadlineCharSequence().reset("", System.nanoTime() - 1);
+        view.reset(LONG, System.nanoTime() + TimeUnit.HOURS.toNanos(1));
+        StringBuilder copy = new StringBuilder();
+        for (int i = 0; i < view.length(); i++)
+            copy.append(view.charAt(i));
+        assertEquals(LONG, copy.toString());
+        assertEquals(LONG, view.toString());
+        assertEquals(UNIT, view.subSequence(0, UNIT.length()).toString());
+    }
+
+    @Test
+    public void tokenizeFallsBack() {
+        List<CharSequence> heard = new ArrayList<CharSequence>();
+        Twokenizer tk = impatient(heard);
+        assertEquals(fallbackTokens(100), tk.tokenize(LONG));
+        assertEquals(1, tk.timeouts());
+        assertEquals(Arrays.asList(LONG), heard);
+
+        TokenSpans spans = new TokenSpans();
+        assertEquals(1000, tk.tokenize(LONG, spans));
+        assertEquals(fallbackTokens(100), spans.toList());
+        assertEquals(2, tk.timeouts());
+    }
+
+    @Test
+    public void segmentFallsBackToOneTextSegment() {
+        List<CharSequence> heard = new ArrayList<CharSequence>();
+        Twokenizer tk = impatient(heard);
+        String tokenized = join(Twokenizer.builder().build().tokenize(LONG));
+        Segmentation segments = tk.segment(LONG, tokenized);
+        assertEquals(1, segments.size());
+        assertFalse(segments.isSep(0));
+        assertEquals(tokenized, segments.text(0));
+        assertEquals(1, tk.timeouts());
+        assertEquals(1, heard.size());
+    }
+
+    @Test
+    public void tokenizeAndSegmentFallsBack() {
+        Twokenizer tk = impatient(new ArrayList<CharSequence>());
+        Segmentation segments = tk.tokenizeAndSegment(LONG);
+        assertEquals(join(fallbackTokens(100)), segments.tokenized());
+        assertEquals(1, segments.size());
+        assertFalse(segments.isSep(0));
+        assertEquals(1, tk.timeouts());
+    }
+
+    @Test
+    public void generousTimeoutChangesNothing() {
+        Twokenizer plain = Twokenizer.builder().build();
+        Twokenizer guarded = Twokenizer.builder().matchTimeout(1, TimeUnit.MINUTES).build();
+        for (String text : TestTweets.tweets("default", 280, 500, false)) {
+            String tokenized = join(plain.tokenize(text));
+            assertEquals(text, tokenized, join(guarded.tokenize(text)));
+            assertEquals(text, plain.simpleSegment(text, tokenized), guarded.simpleSegment(text, tokenized));
+            assertEquals(text, plain.tokenizeAndSegment(text).toString(), guarded.tokenizeAndSegment(text).toString());
+        }
+        assertEquals(0, guarded.timeouts());
+    }
+
+    @Test
+    public void negativeTimeout() {
+        try {
+            Twokenizer.builder().matchTimeout(-1, TimeUnit.MILLISECONDS);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    private static String join(List<String> tokens) {
+        StringBuilder sb = new StringBuilder();
+        for (String token : tokens)
+            sb.append(sb.length() > 0 ? " " : "").append(token);
+        return sb.toString();
+    }
+}
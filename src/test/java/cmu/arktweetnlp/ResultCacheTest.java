@@ -0,0 +1,139 @@
+package cmu.arktweetnlp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import cmu.arktweetnlp.TokenizerMetrics.Stage;
+
+/**
+ * The result cache behind {@link Twokenizer.Builder#cache(long)}: what a hit
+ * gives back, and what is counted.
+ */
+public class ResultCacheTest {
+
+    private static final String TWEET = "RT @user: so much fun (T_T) &lt;3 http://t.co/abc #yay";
+
+    @Test
+    public void tokenizeAndSegmentHitGivesTheTokensToo() {
+        TokenizerMetrics metrics = new TokenizerMetrics();
+        Twokenizer tk = Twokenizer.builder().cache(1 << 20).metrics(metrics).build();
+        TokenSpans expected = new TokenSpans();
+        Twokenizer.DEFAULT.tokenize(TWEET, expected);
+
+        TokenSpans first = new TokenSpans();
+        Segmentation missed = tk.tokenizeAndSegment(TWEET, first);
+        long scans = metrics.count(Stage.PROTECTED);
+        TokenSpans second = new TokenSpans();
+        Segmentation hit = tk.tokenizeAndSegment(TWEET, second);
+
+        assertSame(missed, hit);
+        assertEquals(1, tk.cache().hits());
+        assertEquals("no tokenizing on a hit", scans, metrics.count(Stage.PROTECTED));
+        assertEquals(expected.toList(), first.toList());
+        assertEquals(expected.toList(), second.toList());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.start(i), second.start(i));
+            assertEquals(expected.end(i), second.end(i));
+        }
+        assertSame(TWEET, second.text());
+    }
+
+    @Test
+    public void hitWithoutTokensThenWithThem() {
+        Twokenizer tk = Twokenizer.builder().cache(1 << 20).build();
+        Segmentation segments = tk.tokenizeAndSegment(TWEET);
+        TokenSpans tokens = new TokenSpans();
+        assertSame(segments, tk.tokenizeAndSegment(TWEET, tokens));
+        assertEquals(Twokenizer.DEFAULT.tokenize(TWEET), tokens.toList());
+    }
+
+    @Test
+    public void timedOutCallIsNotCached() {
+        StringBuilder sb = new StringBuilder();
+        while (sb.length() < 20000)
+            sb.append("so much fun :) http://t.co/abc #yay @user ");
+        String text = sb.toString();
+        Twokenizer tk = Twokenizer.builder().cache(1 << 20).matchTimeout(1, TimeUnit.NANOSECONDS).build();
+
+        tk.tokenize(text);
+        tk.tokenizeAndSegment(text);
+        assertEquals(2, tk.timeouts());
+        assertEquals(0, tk.cache().size());
+
+        // so the next calls recompute, and run out of time again
+        tk.tokenize(text);
+        tk.tokenizeAndSegment(text);
+        assertEquals(4, tk.timeouts());
+        assertEquals(0, tk.cache().hits());
+        assertEquals(4, tk.cache().misses());
+    }
+
+    @Test
+    public void callWithinTheDeadlineIsCached() {
+        Twokenizer tk = Twokenizer.builder().cache(1 << 20).matchTimeout(10, TimeUnit.SECONDS).build();
+        List<String> tokens = tk.tokenize(TWEET);
+        assertEquals(tokens, tk.tokenize(TWEET));
+        assertEquals(0, tk.timeouts());
+        assertEquals(1, tk.cache().hits());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedOfTheSameStripe() {
+        // 4 stripes of 1024 chars each, whatever the number of cores
+        ResultCache cache = new ResultCache(4096);
+        List<ResultCache.Key> same = new ArrayList<ResultCache.Key>();
+        ResultCache.Key other = null;
+        for (int i = 0; same.size() < 4 || other == null; i++) {
+            ResultCache.Key key = key(i);
+            if (same.isEmpty() || cache.stripe(key) == cache.stripe(same.get(0))) {
+                if (same.size() < 4)
+                    same.add(key);
+            } else if (other == null) {
+                other = key;
+            }
+        }
+        ResultCache.Key a = same.get(0), b = same.get(1), c = same.get(2), d = same.get(3);
+
+        cache.put(other, "other");
+        cache.put(a, "a");
+        cache.put(b, "b");
+        cache.put(c, "c");  // three of 301 chars fill the stripe
+        assertEquals(0, cache.evictions());
+        assertNotNull(cache.get(a));  // now b is the least recently used
+        cache.put(d, "d");
+
+        assertEquals(1, cache.evictions());
+        assertNull(cache.get(b));
+        assertEquals("a", cache.get(a));
+        assertEquals("c", cache.get(c));
+        assertEquals("d", cache.get(d));
+        assertEquals("other", cache.get(other));
+        assertEquals(4, cache.size());
+        assertEquals(4 * 301, cache.weight());
+    }
+
+    @Test
+    public void neverHoldsWhatOutweighsAStripe() {
+        ResultCache cache = new ResultCache(4096);
+        ResultCache.Key big = new ResultCache.Key(ResultCache.TOKENIZE, new String(new char[2000]), null);
+        cache.put(big, "big");
+        assertNull(cache.get(big));
+        assertEquals(0, cache.size());
+    }
+
+    // a key of weight 301
+    private static ResultCache.Key key(int i) {
+        StringBuilder sb = new StringBuilder().append(i);
+        while (sb.length() < 300)
+            sb.append('.');
+        return new ResultCache.Key(ResultCache.TOKENIZE, sb.toString(), null);
+    }
+}
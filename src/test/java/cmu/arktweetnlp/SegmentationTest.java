@@ -0,0 +1,171 @@
+package cmu.arktweetnlp;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Segmentation's offsets and reassemble(): the raw ranges tile the raw text
+ * between its leading and trailing whitespace, every segment's raw and
+ * tokenized ranges hold the same non-whitespace, and putting the text
+ * segments back in gives back the raw text, whitespace and all.
+ */
+public class SegmentationTest {
+
+    private static final String[] CASES = {
+        "", "   ", "hi", "  hi there :)  \t", "RT @user: so fun!!! http://t.co/abc #tag",
+        "\t(T_T) 8); ok", "a  \t b\n\nc", "@a @b: <3 <3 :-)", "...what?!", "word... word",
+        "@user: thanks!! See you. Tomorrow then", "I'm so happy :D :D #blessed http://t.co/x1",
+        "RT @a: RT @b: ok?! no... Yes. Really", "“quoted” and ‘single’ -- dash — dash", "lol xD 8D :'(",
+        "Mr. Smith vs. U.S.A. at 12:30 for $5.99", "go to example.com/a?b=c now!!!", "a@b.com wrote: hi",
+        "!!! ??? ... -- <3 ->", "  @lead   and   trail  ", "#one #two #three", "x.\ty", "end with @mention",
+    };
+
+    private static List<String> texts() {
+        List<String> texts = new ArrayList<String>(Arrays.asList(CASES));
+        texts.addAll(TestTweets.tweets("default", 1000));
+        // and all of them in one long text
+        StringBuilder all = new StringBuilder();
+        for (String text : CASES)
+            all.append(text).append(' ');
+        texts.add(all.toString());
+        return texts;
+    }
+
+    @Test
+    public void toStringIsSimpleSegment() {
+        for (String raw : texts()) {
+            String tokenized = tokenized(raw);
+            assertEquals(raw, Twokenizer.DEFAULT.simpleSegment(raw, tokenized), Twokenizer.DEFAULT.segment(raw, tokenized).toString());
+        }
+    }
+
+    @Test
+    public void offsetsTileTheRawTextAndMatchTheTokens() {
+        for (String raw : texts()) {
+            String tokenized = tokenized(raw);
+            Segmentation segments = Twokenizer.DEFAULT.segment(raw, tokenized);
+            assertOffsets(segments);
+            assertEquals(raw, tokenized, segments.tokenized());
+        }
+    }
+
+    @Test
+    public void tokenizeAndSegmentOffsetsToo() {
+        for (String raw : texts())
+            assertOffsets(Twokenizer.DEFAULT.tokenizeAndSegment(raw));
+    }
+
+    @Test
+    public void reassembleWithTheSameTextIsTheRawText() {
+        for (String raw : texts()) {
+            Segmentation segments = Twokenizer.DEFAULT.segment(raw, tokenized(raw));
+            List<String> same = new ArrayList<String>();
+            for (int i = 0; i < segments.size(); i++)
+                if (!segments.isSep(i))
+                    same.add(segments.rawText(i));
+            assertEquals(segments.textCount(), same.size());
+            assertEquals(raw, raw, segments.reassemble(same));
+        }
+    }
+
+    @Test
+    public void reassembleReplacesOnlyTheText() {
+        String raw = "  RT @user: so fun!! http://t.co/abc  ";
+        Segmentation segments = Twokenizer.DEFAULT.segment(raw, tokenized(raw));
+        List<String> replacements = new ArrayList<String>();
+        for (int i = 0; i < segments.textCount(); i++)
+            replacements.add("<" + i + ">");
+        StringBuilder expected = new StringBuilder(raw.substring(0, segments.rawStart(0)));
+        for (int i = 0, t = 0; i < segments.size(); i++)
+            expected.append(segments.isSep(i) ? segments.rawText(i) : replacements.get(t++));
+        expected.append(raw.substring(segments.rawEnd(segments.size() - 1)));
+        String reassembled = segments.reassemble(replacements);
+        assertEquals(expected.toString(), reassembled);
+        // the whitespace around the tweet is kept
+        assertEquals("  ", reassembled.substring(0, 2));
+        assertEquals("  ", reassembled.substring(reassembled.length() - 2));
+    }
+
+    @Test
+    public void reassembleBlankText() {
+        Segmentation segments = Twokenizer.DEFAULT.segment(" \t ", "");
+        assertEquals(0, segments.textCount());
+        assertEquals(" \t ", segments.reassemble(Collections.<String>emptyList()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void reassembleWithTooFewReplacements() {
+        String raw = "RT @user: so fun";
+        Segmentation segments = Twokenizer.DEFAULT.segment(raw, tokenized(raw));
+        segments.reassemble(Collections.<String>emptyList());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void noSegmentPastSize() {
+        String raw = "so fun";
+        Segmentation segments = Twokenizer.DEFAULT.segment(raw, tokenized(raw));
+        segments.rawStart(segments.size());
+    }
+
+    @Test
+    public void rawOffsetsProjectedOntoEntities() {
+        String raw = "I &lt;3 AT&amp;T @you";
+        Segmentation segments = Twokenizer.DEFAULT.tokenizeAndSegmentRawTweetText(raw, new TokenSpans());
+        assertEquals(raw, segments.raw());
+        assertEquals(0, segments.rawStart(0));
+        assertEquals(raw.length(), segments.rawEnd(segments.size() - 1));
+        for (int i = 1; i < segments.size(); i++)
+            assertEquals(segments.rawEnd(i - 1), segments.rawStart(i));
+        StringBuilder joined = new StringBuilder();
+        for (int i = 0; i < segments.size(); i++)
+            joined.append(segments.rawText(i));
+        assertEquals(raw, joined.toString());
+    }
+
+    private static void assertOffsets(Segmentation segments) {
+        String raw = segments.raw(), tokenized = segments.tokenized();
+        if (segments.size() == 0) {
+            assertEquals(raw, "", nonWhitespace(raw));
+            return;
+        }
+        int first = segments.rawStart(0), last = segments.rawEnd(segments.size() - 1);
+        assertEquals(raw, "", raw.substring(0, first).trim());
+        assertEquals(raw, "", raw.substring(last).trim());
+        assertEquals(raw, false, Character.isWhitespace(raw.charAt(first)));
+        assertEquals(raw, false, Character.isWhitespace(raw.charAt(last - 1)));
+        int tokenEnd = 0;
+        for (int i = 0; i < segments.size(); i++) {
+            if (i > 0) {
+                assertEquals(raw + " at " + i, segments.rawEnd(i - 1), segments.rawStart(i));
+                // text and separators take turns
+                assertEquals(raw + " at " + i, !segments.isSep(i - 1), segments.isSep(i));
+            }
+            // in order through the tokenized text, holding what the raw range holds
+            assertEquals(raw + " at " + i, true, segments.tokenStart(i) >= tokenEnd);
+            tokenEnd = segments.tokenEnd(i);
+            assertEquals(raw + " at " + i, nonWhitespace(segments.rawText(i)),
+                         nonWhitespace(tokenized.substring(segments.tokenStart(i), segments.tokenEnd(i))));
+        }
+    }
+
+    private static String nonWhitespace(String s) {
+        StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++)
+            if (!Character.isWhitespace(s.charAt(i)))
+                sb.append(s.charAt(i));
+        return sb.toString();
+    }
+
+    private static String tokenized(String raw) {
+        StringBuilder sb = new StringBuilder();
+        for (String token : Twokenizer.DEFAULT.tokenize(raw))
+            sb.append(sb.length() > 0 ? " " : "").append(token);
+        return sb.toString();
+    }
+}
@@ -0,0 +1,98 @@
+package cmu.arktweetnlp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * SpanList's searches, and its merge, which has to join spans exactly as
+ * simpleSegment always has: a span that lies inside the one before it still
+ * sets where the joined span ends, and which of two spans with the same start
+ * comes later depends on whether that start is below 128.
+ */
+public class SpanListTest {
+
+    private static String merged(int... spans) {
+        SpanList list = new SpanList(2);
+        for (int i = 0; i < spans.length; i += 2)
+            list.add(spans[i], spans[i + 1]);
+        list.sortAndMerge();
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < list.size(); i++)
+            sb.append('[').append(list.start(i)).append(',').append(list.end(i)).append(')');
+        return sb.toString();
+    }
+
+    @Test
+    public void sortsAndJoinsOverlappingAndTouchingSpans() {
+        assertEquals("[0,4)[5,8)", merged(5, 8, 0, 3, 3, 4));
+        assertEquals("[0,2)[3,4)", merged(3, 4, 0, 2));
+        assertEquals("[0,6)", merged(0, 3, 2, 6));
+        assertEquals("", merged());
+    }
+
+    @Test
+    public void laterSpanSetsTheEnd() {
+        assertEquals("[0,4)", merged(0, 10, 2, 4));
+        assertEquals("[0,6)", merged(2, 4, 0, 10, 3, 6));
+        // equal starts below 128 sort by end, so the longer one wins
+        assertEquals("[1,9)", merged(1, 9, 1, 3));
+        assertEquals("[20,30)", merged(20, 30, 20, 25));
+    }
+
+    @Test
+    public void equalStartsFrom128OnKeepTheirOrder() {
+        // the later added one wins, longer or not
+        assertEquals("[200,205)", merged(200, 210, 200, 205));
+        assertEquals("[200,210)", merged(200, 205, 200, 210));
+        assertEquals("[127,135)", merged(127, 130, 128, 140, 128, 135));
+        assertEquals("[100,130)[300,302)", merged(300, 310, 100, 300, 300, 305, 300, 302, 127, 130, 127, 129));
+    }
+
+    @Test
+    public void segmentsLikeTheBaselineFrom128On() {
+        // the '?'s' separator and the mention's both start at the same offset past 127
+        String raw = repeat("word ", 30) + "...?(???)? @tomorrow_283: soooo";
+        String tokenized = repeat("word ", 30) + "...? (???) ? @tomorrow_283 : soooo";
+        assertEquals("text\t" + repeat("word ", 30).trim() + "\n"
+                   + "sep\t ...\n"
+                   + "text\t?\n"
+                   + "sep\t\n"
+                   + "text\t(?\n"
+                   + "sep\t??\n"
+                   + "text\t) ?\n"
+                   + "sep\t @tomorrow_283\n"
+                   + "text\t: soooo\n",
+                     Twokenizer.DEFAULT.simpleSegment(raw, tokenized));
+    }
+
+    @Test
+    public void questionMarkInsideUrlEndsItsSeparator() {
+        // the '?' is a separator of its own, inside the URL's, and ends it
+        String raw = "see https://example.com/a?b=c&d=e. , U.S.A. now";
+        String tokenized = "see https://example.com/a?b=c&d=e . , U.S.A. now";
+        assertEquals("text\tsee\n"
+                   + "sep\t https://example.com/a?\n"
+                   + "text\tb=c&d=e . , U.S.A. now\n",
+                     Twokenizer.DEFAULT.simpleSegment(raw, tokenized));
+    }
+
+    private static String repeat(String s, int n) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < n; i++)
+            sb.append(s);
+        return sb.toString();
+    }
+
+    @Test
+    public void anyWithin() {
+        int[] sorted = { 2, 5, 9 };
+        assertTrue(SpanList.anyWithin(sorted, 3, 5, 5));
+        assertTrue(SpanList.anyWithin(sorted, 3, 3, 6));
+        assertFalse(SpanList.anyWithin(sorted, 3, 6, 8));
+        assertFalse(SpanList.anyWithin(sorted, 2, 6, 9));
+        assertFalse(SpanList.anyWithin(sorted, 3, 4, 3));
+    }
+}
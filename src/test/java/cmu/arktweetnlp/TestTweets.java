@@ -0,0 +1,48 @@
+package cmu.arktweetnlp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import cmu.arktweetnlp.bench.TweetGenerator;
+
+/**
+ * The tests' shared fixture: the benchmarks' TweetGenerator, and any other
+ * randomness, under one fixed seed, so every test sees the same tweets from
+ * run to run and a failure can be replayed.
+ */
+final class TestTweets {
+
+    static final long SEED = 20261017L;
+
+    private TestTweets() {
+    }
+
+    /** A Random for the tests' own choices, seeded like the tweets. */
+    static Random random() {
+        return new Random(SEED);
+    }
+
+    /** n tweets of the given mix, up to 280 chars and HTML-escaped like the API's text. */
+    static List<String> tweets(String mix, int n) {
+        return tweets(mix, 280, n, true);
+    }
+
+    static List<String> tweets(String mix, int maxLength, int n, boolean escapeHtml) {
+        return tweets(mix, 1, maxLength, n, escapeHtml);
+    }
+
+    static List<String> tweets(String mix, int minLength, int maxLength, int n, boolean escapeHtml) {
+        return Arrays.asList(new TweetGenerator(SEED, mix, minLength, maxLength, escapeHtml).tweets(n));
+    }
+
+    /** perMix tweets of every mix, escaped, and of the default mix unescaped. */
+    static List<String> everyMix(int perMix) {
+        List<String> tweets = new ArrayList<String>();
+        for (String mix : TweetGenerator.MIXES.keySet())
+            tweets.addAll(tweets(mix, perMix));
+        tweets.addAll(tweets("default", 280, perMix, false));
+        return tweets;
+    }
+}
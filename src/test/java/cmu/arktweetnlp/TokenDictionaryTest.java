@@ -0,0 +1,144 @@
+package cmu.arktweetnlp;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+/**
+ * TokenDictionary's IDs: dense and in first-seen order, the same for every
+ * thread that interns a token at the same time, and the same after the
+ * dictionary has been written out and read back.
+ */
+public class TokenDictionaryTest {
+
+    @Test
+    public void denseIdsInFirstSeenOrder() {
+        TokenDictionary dict = new TokenDictionary();
+        assertEquals(0, dict.id("lol"));
+        assertEquals(1, dict.id(":)"));
+        assertEquals(0, dict.id("so lol", 3, 6));
+        assertEquals(2, dict.id("LOL"));
+        assertEquals(3, dict.size());
+        assertEquals(":)", dict.token(1));
+        assertEquals(-1, dict.find("new", 0, 3));
+        assertEquals(3, dict.size());
+        assertEquals(1, dict.find("x :) y", 2, 4));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void noTokenPastSize() {
+        TokenDictionary dict = new TokenDictionary();
+        dict.id("a");
+        dict.token(1);
+    }
+
+    @Test
+    public void growsKeepingEveryId() {
+        TokenDictionary dict = new TokenDictionary(1);
+        for (int i = 0; i < 100000; i++)
+            assertEquals(i, dict.id("t" + i));
+        for (int i = 0; i < 100000; i++) {
+            assertEquals(i, dict.id("t" + i));
+            assertEquals("t" + i, dict.token(i));
+        }
+        assertEquals(100000, dict.size());
+    }
+
+    @Test
+    public void tokenIdsAreTheTokensIds() {
+        TokenDictionary dict = new TokenDictionary();
+        String tweet = "RT @user: so much fun :) http://t.co/abc so much";
+        int[] ids = Twokenizer.DEFAULT.tokenIds(tweet, dict);
+        List<String> tokens = Twokenizer.DEFAULT.tokenize(tweet);
+        assertEquals(tokens.size(), ids.length);
+        for (int i = 0; i < ids.length; i++)
+            assertEquals(tokens.get(i), dict.token(ids[i]));
+        assertEquals(tokens.size() - 2, dict.size());  // "so" and "much" come twice
+    }
+
+    @Test
+    public void concurrentInterningAgreesOnEveryId() throws Exception {
+        final int threads = 8, distinct = 20000;
+        final TokenDictionary dict = new TokenDictionary(16);  // so it grows under contention
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<int[]>> results = new ArrayList<Future<int[]>>();
+            for (int t = 0; t < threads; t++) {
+                final long seed = TestTweets.SEED + t;
+                results.add(pool.submit(new Callable<int[]>() {
+                    @Override
+                    public int[] call() throws InterruptedException {
+                        // every thread interns all tokens, each in its own order
+                        List<Integer> order = new ArrayList<Integer>();
+                        for (int i = 0; i < distinct; i++)
+                            order.add(i);
+                        Collections.shuffle(order, new Random(seed));
+                        int[] ids = new int[distinct];
+                        start.await();
+                        for (int i : order)
+                            ids[i] = dict.id("token " + i);
+                        return ids;
+                    }
+                }));
+            }
+            start.countDown();
+            int[] first = results.get(0).get();
+            for (Future<int[]> result : results)
+                assertArrayEquals(first, result.get());
+
+            assertEquals(distinct, dict.size());
+            boolean[] seen = new boolean[distinct];
+            for (int i = 0; i < distinct; i++) {
+                assertEquals("token " + i, dict.token(first[i]));
+                seen[first[i]] = true;
+            }
+            for (boolean s : seen)
+                assertEquals(true, s);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void serializedDictionaryKeepsItsIds() throws Exception {
+        TokenDictionary dict = new TokenDictionary(4);
+        for (int i = 0; i < 1000; i++)
+            dict.id("t" + (i * 7919 % 1000));
+
+        TokenDictionary copy = roundTrip(dict);
+        assertEquals(dict.size(), copy.size());
+        for (int id = 0; id < dict.size(); id++) {
+            assertEquals(dict.token(id), copy.token(id));
+            assertEquals(id, copy.find(dict.token(id), 0, dict.token(id).length()));
+        }
+        // new tokens get the next IDs, on either side
+        assertEquals(1000, copy.id("new"));
+        assertEquals(1000, dict.id("new"));
+        assertEquals(0, roundTrip(new TokenDictionary()).size());
+    }
+
+    private static TokenDictionary roundTrip(TokenDictionary dict) throws IOException, ClassNotFoundException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(dict);
+        out.close();
+        return (TokenDictionary) new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+    }
+}
@@ -0,0 +1,151 @@
+package cmu.arktweetnlp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * TokenReader at its window boundaries: the tokens of a long text, read in
+ * windows of every size and in reads of any length, are the tokens of the
+ * whole text at once, with offsets into the whole text; only a run of
+ * non-whitespace longer than a window is cut, and never inside a surrogate pair.
+ */
+public class TokenReaderTest {
+
+    private static String document() {
+        StringBuilder sb = new StringBuilder();
+        List<String> tweets = TestTweets.tweets("default", 280, 200, false);
+        for (int i = 0; i < tweets.size(); i++)
+            sb.append(tweets.get(i)).append(i % 3 == 0 ? "\n" : i % 3 == 1 ? "  " : "\r\n\t");
+        return sb.toString();
+    }
+
+    private static int longestRun(String text) {
+        int longest = 0, run = 0;
+        for (int i = 0; i < text.length(); i++) {
+            run = CharTables.isWhitespace(text.charAt(i)) ? 0 : run + 1;
+            longest = Math.max(longest, run);
+        }
+        return longest;
+    }
+
+    @Test
+    public void sameTokensAsTheWholeTextInEveryWindowSize() throws IOException {
+        String text = document();
+        List<String> whole = Twokenizer.DEFAULT.tokenize(text);
+        for (int window = longestRun(text) + 1; window < 4 * 280; window += 37) {
+            assertEquals("window " + window, whole, tokens(new TokenReader(Twokenizer.DEFAULT, new StringReader(text), window)));
+            assertEquals("window " + window, whole, tokens(new TokenReader(Twokenizer.DEFAULT, CharBuffer.wrap(text), window)));
+        }
+    }
+
+    @Test
+    public void sameTokensFromReadsOfAnyLength() throws IOException {
+        String text = document();
+        List<String> whole = Twokenizer.DEFAULT.tokenize(text);
+        for (int read : new int[] { 1, 2, 7, 100 })
+            assertEquals("reads of " + read, whole, tokens(new TokenReader(Twokenizer.DEFAULT, new Trickle(text, read), 512)));
+    }
+
+    @Test
+    public void offsetsAreIntoTheWholeText() throws IOException {
+        final String text = document();
+        final List<String> seen = new ArrayList<String>();
+        long count = new TokenReader(Twokenizer.DEFAULT, new StringReader(text), 400).forEachToken(new TokenReader.Callback() {
+            @Override
+            public void token(CharSequence window, int start, int end, long offset) {
+                String token = window.subSequence(start, end).toString();
+                assertEquals(token, text.substring((int) offset, (int) offset + token.length()));
+                seen.add(token);
+            }
+        });
+        assertEquals(seen.size(), count);
+        assertEquals(Twokenizer.DEFAULT.tokenize(text), seen);
+    }
+
+    @Test
+    public void tokenStraddlingTwoWindows() throws IOException {
+        // the window ends inside the URL, so it is cut before and carried over whole
+        String text = "see http://example.com/a/b/c :) ok";
+        List<String> whole = Twokenizer.DEFAULT.tokenize(text);
+        for (int window = 27; window < text.length() + 2; window++)
+            assertEquals("window " + window, whole, tokens(new TokenReader(Twokenizer.DEFAULT, new StringReader(text), window)));
+    }
+
+    @Test
+    public void windowAfterTheFirstSeesTheWhitespaceBeforeIt() throws IOException {
+        // "e.g." is only protected after a space, here the one the window was cut at
+        String text = "xxxxxxxx e.g. yyyy";
+        assertEquals(Twokenizer.DEFAULT.tokenize(text), tokens(new TokenReader(Twokenizer.DEFAULT, new StringReader(text), 12)));
+    }
+
+    @Test
+    public void runLongerThanTheWindowIsCutAtItsEnd() throws IOException {
+        List<String> expected = new ArrayList<String>();
+        expected.add("abc");
+        expected.add("def");
+        expected.add("gh");
+        expected.add("i");
+        assertEquals(expected, tokens(new TokenReader(Twokenizer.DEFAULT, new StringReader("abcdefgh i"), 3)));
+    }
+
+    @Test
+    public void longRunIsNeverCutInsideASurrogatePair() throws IOException {
+        String text = "😀😀😀😀😀 x";
+        TokenReader reader = new TokenReader(Twokenizer.DEFAULT, new StringReader(text), 3);
+        StringBuilder joined = new StringBuilder();
+        while (reader.hasNext()) {
+            String token = reader.next();
+            assertFalse(token, Character.isHighSurrogate(token.charAt(token.length() - 1)));
+            assertFalse(token, Character.isLowSurrogate(token.charAt(0)));
+            joined.append(token);
+        }
+        assertEquals("😀😀😀😀😀x", joined.toString());
+    }
+
+    @Test
+    public void emptyAndBlankInput() throws IOException {
+        assertFalse(new TokenReader(Twokenizer.DEFAULT, new StringReader("")).hasNext());
+        assertFalse(new TokenReader(Twokenizer.DEFAULT, new StringReader(" \n\t "), 2).hasNext());
+        TokenReader reader = new TokenReader(Twokenizer.DEFAULT, new StringReader("   a"), 2);
+        assertTrue(reader.hasNext());
+        assertEquals("a", reader.next());
+        assertFalse(reader.hasNext());
+    }
+
+    private static List<String> tokens(TokenReader reader) {
+        List<String> tokens = new ArrayList<String>();
+        while (reader.hasNext())
+            tokens.add(reader.next());
+        return tokens;
+    }
+
+    // A Reader that gives at most chunk chars per read.
+    private static final class Trickle extends Reader {
+        private final Reader in;
+        private final int chunk;
+
+        Trickle(String text, int chunk) {
+            this.in = new StringReader(text);
+            this.chunk = chunk;
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            return in.read(cbuf, off, Math.min(len, chunk));
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
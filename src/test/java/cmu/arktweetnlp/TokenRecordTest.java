@@ -0,0 +1,135 @@
+package cmu.arktweetnlp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * TWKB records, as --binary writes them, read back with and without their
+ * text: the same tokens and segments, as the same UTF-8 byte ranges of the
+ * raw line, whether the line carries entities, emoji or nothing at all.
+ */
+public class TokenRecordTest {
+
+    private static List<String> lines() {
+        List<String> lines = new ArrayList<String>(Arrays.asList(
+            "", "   ", "hi", "RT @user: I &lt;3 this!!! http://t.co/abc :-)",
+            "café 😀😀 #tag… ❤️", "AT&amp;T &#x1F600; ok", "\t(T_T) 8); "));
+        lines.addAll(TestTweets.tweets("entities", 500));
+        return lines;
+    }
+
+    @Test
+    public void tokensRoundTripWithText() throws IOException {
+        roundTrip(false, true);
+    }
+
+    @Test
+    public void tokensRoundTripWithoutText() throws IOException {
+        roundTrip(false, false);
+    }
+
+    @Test
+    public void segmentsRoundTripWithText() throws IOException {
+        roundTrip(true, true);
+    }
+
+    @Test
+    public void segmentsRoundTripWithoutText() throws IOException {
+        roundTrip(true, false);
+    }
+
+    @Test(expected = IOException.class)
+    public void notARecordStream() throws IOException {
+        new TokenRecordReader(new ByteArrayInputStream("TWKA\2\0".getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    @Test(expected = EOFException.class)
+    public void streamCutInsideARecord() throws IOException {
+        byte[] stream = write(Arrays.asList("cut me short"), false, true);
+        TokenRecordReader reader = new TokenRecordReader(new ByteArrayInputStream(Arrays.copyOf(stream, stream.length - 1)));
+        reader.next();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void tokensOfAnotherText() throws IOException {
+        TokenSpans tokens = new TokenSpans();
+        Twokenizer.DEFAULT.tokenizeRawTweetText("one text", tokens);
+        new TokenRecordWriter(new ByteArrayOutputStream()).write(tokens, Twokenizer.DEFAULT.tokenizeAndSegment("another"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void attachedLineShorterThanTheRecord() throws IOException {
+        TokenRecordReader reader = new TokenRecordReader(new ByteArrayInputStream(write(Arrays.asList("a long line"), false, false)));
+        assertTrue(reader.next());
+        reader.attach(ByteBuffer.wrap("a long".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static void roundTrip(boolean segment, boolean withText) throws IOException {
+        List<String> lines = lines();
+        TokenRecordReader reader = new TokenRecordReader(new ByteArrayInputStream(write(lines, segment, withText)));
+        assertEquals(withText, reader.hasText());
+        TokenSpans tokens = new TokenSpans();
+        for (String line : lines) {
+            assertTrue(reader.next());
+            byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+            if (withText)
+                assertEquals(line, reader.textString());
+            else
+                reader.attach(ByteBuffer.wrap(bytes));
+
+            Segmentation segments = segment ? Twokenizer.DEFAULT.tokenizeAndSegmentRawTweetText(line, tokens) : null;
+            if (!segment)
+                Twokenizer.DEFAULT.tokenizeRawTweetText(line, tokens);
+            ByteSpans read = reader.tokens();
+            assertEquals(line, tokens.size(), read.size());
+            for (int i = 0; i < tokens.size(); i++) {
+                assertEquals(line, tokens.token(i), read.token(i));
+                assertEquals(line, utf8Length(line, tokens.start(i)), read.start(i));
+                assertEquals(line, utf8Length(line, tokens.end(i)), read.end(i));
+            }
+
+            assertEquals(line, segment ? segments.size() : 0, reader.segmentCount());
+            for (int i = 0; i < reader.segmentCount(); i++) {
+                assertEquals(line, segments.rawText(i), reader.segment(i));
+                assertEquals(line, segments.isSep(i), reader.isSep(i));
+                assertEquals(line, utf8Length(line, segments.rawStart(i)), reader.segmentStart(i));
+            }
+        }
+        assertFalse(reader.next());
+        assertEquals(0, reader.tokens().size());
+    }
+
+    // what --binary writes
+    private static byte[] write(List<String> lines, boolean segment, boolean withText) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        TokenRecordWriter writer = new TokenRecordWriter(bytes, withText);
+        TokenSpans tokens = new TokenSpans();
+        for (String line : lines) {
+            if (segment) {
+                writer.write(tokens, Twokenizer.DEFAULT.tokenizeAndSegmentRawTweetText(line, tokens));
+            } else {
+                Twokenizer.DEFAULT.tokenizeRawTweetText(line, tokens);
+                writer.write(tokens);
+            }
+        }
+        writer.close();
+        return bytes.toByteArray();
+    }
+
+    private static int utf8Length(String s, int end) {
+        return s.substring(0, end).getBytes(StandardCharsets.UTF_8).length;
+    }
+}
@@ -0,0 +1,86 @@
+package cmu.arktweetnlp;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import cmu.arktweetnlp.bench.TweetGenerator;
+
+/**
+ * The fused tokenizeAndSegment against the two steps it stands in for,
+ * tokenize and then simpleSegment: the same tokens and the same segments.
+ * Edge punctuation split off around an emoticon is where they used to part;
+ * only there does the fused call look for protected spans again.
+ */
+public class TokenizeAndSegmentTest {
+
+    private static final int PER_MIX = 300;
+
+    private static final String[] CASES = {
+        "(T_T)", "great for (T_T). good", "8);", "ok 8); fine", "(^_^)", "x (>_<) y", "\"(:\"", "'8)'",
+        "(http://t.co/x)", "[:P]", "*<3*", "«ಠ_ಠ»", "{;)}", "(#tag)", "(@user: hi)",
+        // split runs next to ones left alone, whose spans may start on the space before them
+        "(hi) U.S.A now", "a.b.c (T_T) x.y.z", "(a) (T_T) :) (b) 8);", ":) (T_T)", "(T_T) :)", "12:30 (12:30) 12:30", "so U.S.A,(x) ok",
+    };
+
+    private static List<String> corpus() {
+        List<String> texts = new ArrayList<String>(Arrays.asList(CASES));
+        for (String mix : TweetGenerator.MIXES.keySet())
+            texts.addAll(TestTweets.tweets(mix, 280, PER_MIX, false));
+        return texts;
+    }
+
+    @Test
+    public void emoticonInEdgePunctuation() {
+        Segmentation s = Twokenizer.DEFAULT.tokenizeAndSegment("great for (T_T). good");
+        assertEquals("great for ( T_T ) . good", s.tokenized());
+        assertEquals("text\tgreat for\nsep\t (T_T)\ntext\t. good\n", s.toString());
+
+        assertEquals("sep\t(T_T)\n", Twokenizer.DEFAULT.tokenizeAndSegment("(T_T)").toString());
+        assertEquals("text\t8 );\n", Twokenizer.DEFAULT.tokenizeAndSegment("8);").toString());
+    }
+
+    @Test
+    public void sameAsTwoSteps() {
+        assertSameAsTwoSteps(Twokenizer.DEFAULT);
+    }
+
+    @Test
+    public void sameAsTwoStepsWithScannerAndContractions() {
+        assertSameAsTwoSteps(Twokenizer.builder().engine(Twokenizer.Engine.SCANNER).splitContractions(true).build());
+    }
+
+    @Test
+    public void sameAsTwoStepsWithLexicon() {
+        assertSameAsTwoSteps(Twokenizer.builder().emoticonLexicon(EmoticonLexicon.defaults()).build());
+    }
+
+    private static void assertSameAsTwoSteps(Twokenizer tk) {
+        for (String text : corpus()) {
+            Segmentation fused = tk.tokenizeAndSegment(text);
+            String tokenized = join(tk.tokenize(text));
+            assertEquals("tokens of \"" + text + "\"", tokenized, fused.tokenized());
+            String twoSteps;
+            try {
+                twoSteps = tk.simpleSegment(text, tokenized);
+            } catch (RuntimeException e) {
+                continue;  // the two steps can fail to align, the fused call can't
+            }
+            assertEquals("segments of \"" + text + "\"", twoSteps, fused.toString());
+        }
+    }
+
+    private static String join(List<String> tokens) {
+        StringBuilder sb = new StringBuilder();
+        for (String token : tokens) {
+            if (sb.length() > 0)
+                sb.append(' ');
+            sb.append(token);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,146 @@
+package cmu.arktweetnlp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+import cmu.arktweetnlp.TokenizerMetrics.Stage;
+
+/**
+ * TokenizerMetrics counts what it is told: one timing per stage a call goes
+ * through, one match per protected span by class, one failure per
+ * segmentation that doesn't line up, and percentiles from its power-of-two
+ * buckets. Also over JMX.
+ */
+public class TokenizerMetricsTest {
+
+    private static Twokenizer measured(TokenizerMetrics metrics) {
+        return Twokenizer.builder().metrics(metrics).build();
+    }
+
+    @Test
+    public void tokenizeTimesItsStages() {
+        TokenizerMetrics metrics = new TokenizerMetrics();
+        Twokenizer tk = measured(metrics);
+        List<String> texts = TestTweets.tweets("default", 280, 100, false);
+        for (String text : texts)
+            tk.tokenize(text);
+        for (Stage stage : Arrays.asList(Stage.SQUEEZE, Stage.EDGE_PUNCT, Stage.PROTECTED, Stage.SPLIT))
+            assertEquals(stage.name(), texts.size(), metrics.count(stage));
+        for (Stage stage : Arrays.asList(Stage.UNESCAPE, Stage.SEPARATORS, Stage.ALIGN))
+            assertEquals(stage.name(), 0, metrics.count(stage));
+        assertTrue(metrics.totalNanos(Stage.PROTECTED) > 0);
+
+        tk.tokenizeRawTweetText("AT&amp;T &lt;3");
+        assertEquals(1, metrics.count(Stage.UNESCAPE));
+        assertEquals(texts.size() + 1, metrics.count(Stage.PROTECTED));
+    }
+
+    @Test
+    public void simpleSegmentTimesSeparatorsAndAlign() {
+        TokenizerMetrics metrics = new TokenizerMetrics();
+        Twokenizer tk = measured(metrics);
+        String text = "RT @user: so fun!!! http://t.co/abc";
+        tk.simpleSegment(text, "RT @user : so fun !!! http://t.co/abc");
+        assertEquals(1, metrics.count(Stage.SEPARATORS));
+        assertEquals(1, metrics.count(Stage.ALIGN));
+        assertEquals(0, metrics.getAlignmentFailures());
+    }
+
+    @Test
+    public void protectedMatchesByClass() {
+        TokenizerMetrics metrics = new TokenizerMetrics();
+        measured(metrics).tokenize("http://t.co/x :) #tag @user @other 12:30");
+        assertEquals(1, metrics.protectedMatches(TokenClass.URL));
+        assertEquals(1, metrics.protectedMatches(TokenClass.EMOTICON));
+        assertEquals(1, metrics.protectedMatches(TokenClass.HASHTAG));
+        assertEquals(2, metrics.protectedMatches(TokenClass.AT_MENTION));
+        assertEquals(1, metrics.protectedMatches(TokenClass.TIME_LIKE));
+        assertEquals(0, metrics.protectedMatches(TokenClass.EMAIL));
+        assertEquals(Long.valueOf(2), metrics.getProtectedMatches().get("AT_MENTION"));
+    }
+
+    @Test
+    public void alignmentFailures() {
+        TokenizerMetrics metrics = new TokenizerMetrics();
+        Twokenizer tk = measured(metrics);
+        try {
+            tk.simpleSegment("hello world", "goodbye moon");
+            fail();
+        } catch (RuntimeException e) {
+            // expected
+        }
+        assertEquals(1, metrics.getAlignmentFailures());
+        assertEquals(1, metrics.count(Stage.ALIGN));
+    }
+
+    @Test
+    public void percentiles() {
+        TokenizerMetrics metrics = new TokenizerMetrics();
+        for (int i = 0; i < 99; i++)
+            metrics.record(Stage.ALIGN, 100);
+        metrics.record(Stage.ALIGN, 5000);
+        assertEquals(100, metrics.count(Stage.ALIGN));
+        assertEquals(99 * 100 + 5000, metrics.totalNanos(Stage.ALIGN));
+        assertEquals(5000, metrics.maxNanos(Stage.ALIGN));
+        // 100 is in the bucket up to 127, 5000 in the one up to 8191, capped at the max
+        assertEquals(127, metrics.percentileNanos(Stage.ALIGN, 0.5));
+        assertEquals(127, metrics.percentileNanos(Stage.ALIGN, 0.99));
+        assertEquals(5000, metrics.percentileNanos(Stage.ALIGN, 1));
+        assertEquals(0, metrics.percentileNanos(Stage.SPLIT, 0.5));
+        assertEquals(Long.valueOf(127), metrics.getStageMedianNanos().get("ALIGN"));
+        assertEquals(Long.valueOf(5000), metrics.getStageMaxNanos().get("ALIGN"));
+    }
+
+    @Test
+    public void sharedAndReset() {
+        TokenizerMetrics metrics = new TokenizerMetrics();
+        measured(metrics).tokenize("one :)");
+        Twokenizer.builder().engine(Twokenizer.Engine.SCANNER).metrics(metrics).build().tokenize("two :(");
+        assertEquals(2, metrics.count(Stage.PROTECTED));
+        assertEquals(2, metrics.protectedMatches(TokenClass.EMOTICON));
+
+        metrics.reset();
+        for (Stage stage : Stage.values()) {
+            assertEquals(0, metrics.count(stage));
+            assertEquals(0, metrics.totalNanos(stage));
+            assertEquals(0, metrics.maxNanos(stage));
+        }
+        assertEquals(0, metrics.protectedMatches(TokenClass.EMOTICON));
+        assertEquals(Arrays.asList(Stage.values()).toString(), metrics.getStageCounts().keySet().toString());
+    }
+
+    @Test
+    public void overJmx() throws Exception {
+        TokenizerMetrics metrics = new TokenizerMetrics();
+        measured(metrics).tokenize("over jmx :)");
+        ObjectName name = metrics.register("TokenizerMetricsTest");
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            assertEquals(0L, server.getAttribute(name, "AlignmentFailures"));
+            Object counts = server.getAttribute(name, "StageCounts");
+            assertTrue(counts.toString(), counts.toString().contains("PROTECTED"));
+            server.invoke(name, "reset", null, null);
+            assertEquals(0, metrics.count(Stage.PROTECTED));
+        } finally {
+            server.unregisterMBean(name);
+        }
+    }
+
+    @Test
+    public void noMetricsByDefault() {
+        Map<String, Long> none = new TokenizerMetrics().getStageCounts();
+        assertEquals(Stage.values().length, none.size());
+        assertEquals(null, Twokenizer.builder().build().metrics());
+    }
+}
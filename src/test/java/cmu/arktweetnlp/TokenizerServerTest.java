@@ -0,0 +1,129 @@
+package cmu.arktweetnlp;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * How the client cuts its input into frames, and a server answering it: a
+ * frame ends after a whole line, whichever way the line ends, and never
+ * between the '\r' and the '\n' of a "\r\n".
+ */
+public class TokenizerServerTest {
+
+    private static int port;
+
+    @BeforeClass
+    public static void startServer() throws IOException {
+        ServerSocket free = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        port = free.getLocalPort();
+        free.close();
+        Thread server = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    new TokenizerServer(Twokenizer.DEFAULT, 2).serve(port);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        server.setDaemon(true);
+        server.start();
+    }
+
+    private static int linesEnd(String filled) {
+        byte[] bytes = filled.getBytes(StandardCharsets.UTF_8);
+        return TokenizerServer.linesEnd(bytes, bytes.length);
+    }
+
+    @Test
+    public void cutsAfterEveryLineEnd() {
+        assertEquals(0, linesEnd(""));
+        assertEquals(0, linesEnd("no line end"));
+        assertEquals(2, linesEnd("a\nb"));
+        assertEquals(3, linesEnd("a\r\nb"));
+        assertEquals(4, linesEnd("a\nb\n"));
+        assertEquals(2, linesEnd("a\rb"));
+        assertEquals(4, linesEnd("a\rb\rc"));
+    }
+
+    @Test
+    public void holdsBackATrailingCarriageReturn() {
+        assertEquals(0, linesEnd("a\r"));
+        assertEquals(2, linesEnd("a\nb\r"));
+        assertEquals(2, linesEnd("a\r\r"));
+    }
+
+    @Test
+    public void linesEndedByCarriageReturnsGoOutAsTheyComeIn() throws Exception {
+        // each read brings one chunk; a '\r' at the end of one may have its '\n' in the next
+        String response = roundTrip("one\rtwo\r", "\nthree\r", "four\n", "five\r\n", "six");
+        assertEquals("one\ntwo\nthree\nfour\nfive\nsix\n", response);
+    }
+
+    @Test
+    public void longInputOfCarriageReturnLines() throws Exception {
+        StringBuilder in = new StringBuilder(), expected = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            in.append("line ").append(i).append('\r');
+            expected.append("line ").append(i).append('\n');
+        }
+        assertEquals(expected.toString(), roundTrip(in.toString()));
+    }
+
+    private static String roundTrip(String... chunks) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int attempt = 0; ; attempt++) {
+            try {
+                TokenizerServer.client(port, TokenizerServer.TOKENIZE, new ChunkedInput(chunks), out);
+                return new String(out.toByteArray(), StandardCharsets.UTF_8);
+            } catch (ConnectException e) {
+                if (attempt == 100)
+                    throw e;
+                Thread.sleep(100);  // not listening yet
+            }
+        }
+    }
+
+    // Gives one chunk per read, as a pipe might.
+    private static final class ChunkedInput extends InputStream {
+        private final byte[][] chunks;
+        private int chunk = 0, at = 0;
+
+        ChunkedInput(String... chunks) {
+            this.chunks = new byte[chunks.length][];
+            for (int i = 0; i < chunks.length; i++)
+                this.chunks[i] = chunks[i].getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public int read() {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (chunk == chunks.length)
+                return -1;
+            int n = Math.min(len, chunks[chunk].length - at);
+            System.arraycopy(chunks[chunk], at, b, off, n);
+            at += n;
+            if (at == chunks[chunk].length) {
+                chunk++;
+                at = 0;
+            }
+            return n;
+        }
+    }
+}
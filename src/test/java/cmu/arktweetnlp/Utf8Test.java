@@ -0,0 +1,124 @@
+package cmu.arktweetnlp;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Utf8 against the JDK: the same chars as new String(bytes, UTF_8), valid
+ * input or not, from heap and direct buffers alike, and so the same tokens
+ * from tokenize(ByteBuffer, ByteSpans) as from tokenize(String).
+ */
+public class Utf8Test {
+
+    // the bytes around every boundary a lead or continuation byte has
+    private static final int[] BYTES = {
+        0x00, 0x41, 0x7f, 0x80, 0x8f, 0x90, 0x9f, 0xa0, 0xbf, 0xc0, 0xc1, 0xc2, 0xdf,
+        0xe0, 0xe1, 0xec, 0xed, 0xee, 0xef, 0xf0, 0xf1, 0xf3, 0xf4, 0xf5, 0xf7, 0xf8, 0xff,
+    };
+
+    private final ByteBuffer direct = ByteBuffer.allocateDirect(16);
+
+    @Test
+    public void decodesEveryShortSequenceAsTheJdkDoes() {
+        for (int length = 1; length <= 4; length++) {
+            int[] at = new int[length];
+            while (true) {
+                byte[] bytes = new byte[length];
+                for (int i = 0; i < length; i++)
+                    bytes[i] = (byte) BYTES[at[i]];
+                assertDecodesAsTheJdk(bytes);
+                int p = length - 1;
+                while (p >= 0 && ++at[p] == BYTES.length)
+                    at[p--] = 0;
+                if (p < 0)
+                    break;
+            }
+        }
+    }
+
+    @Test
+    public void decodesRandomBytesAsTheJdkDoes() {
+        Random random = TestTweets.random();
+        for (int t = 0; t < 50000; t++) {
+            byte[] bytes = new byte[random.nextInt(16)];
+            for (int i = 0; i < bytes.length; i++)
+                bytes[i] = (byte) (random.nextBoolean() ? 0x80 + random.nextInt(0x80) : random.nextInt(0x100));
+            assertDecodesAsTheJdk(bytes);
+        }
+    }
+
+    @Test
+    public void truncatedSequenceIsOneReplacement() {
+        assertEquals("�A", decode(bytes(0xe2, 0x82, 'A')));
+        assertEquals("�", decode(bytes(0xf0, 0x9f, 0x98)));
+        // an overlong lead takes no continuation bytes with it
+        assertEquals("���", decode(bytes(0xe0, 0x80, 0x80)));
+        // an encoded surrogate is one, whole
+        assertEquals("�A", decode(bytes(0xed, 0xa0, 0x80, 'A')));
+    }
+
+    @Test
+    public void tokensOfMalformedInputAreTheStringsTokens() {
+        byte[][] texts = {
+            bytes('o', 'k', ' ', 0xe2, 0x82, ' ', 'x', ' ', ':', ')', ' ', 0xed, 0xa0, 0x80, '!'),
+            bytes(0xf0, 0x9f, 0x98, 'h', 'i', ' ', 0xf0, 0x9f, 0x98, 0x80, ' ', '#', 't', 0xe2, 0x82, 'a', 'g'),
+            bytes('(', 0xc3, ')', ' ', 0xff, 0xfe, ' ', 'w', 'w', 'w', '.', 'x', '.', 'c', 'o', 'm', 0x80),
+        };
+        for (byte[] text : texts) {
+            ByteSpans spans = new ByteSpans();
+            Twokenizer.DEFAULT.tokenize(ByteBuffer.wrap(text), spans);
+            assertEquals(Twokenizer.DEFAULT.tokenize(new String(text, StandardCharsets.UTF_8)), spans.toList());
+        }
+    }
+
+    private void assertDecodesAsTheJdk(byte[] bytes) {
+        String expected = new String(bytes, StandardCharsets.UTF_8);
+        String heap = decode(bytes);
+        direct.clear();
+        direct.put(bytes).flip();
+        MappedText out = new MappedText(4);
+        Utf8.decode(direct, 0, bytes.length, out);
+        boolean valid = Utf8.isValid(direct, 0, bytes.length);
+        // (only spell out the bytes when something is off, there are half a million of them)
+        if (!expected.equals(heap) || !expected.equals(out.toString()) || valid != isValid(bytes)) {
+            assertEquals(hex(bytes), expected, heap);
+            assertEquals(hex(bytes) + " direct", expected, out.toString());
+            assertEquals(hex(bytes) + " valid", isValid(bytes), valid);
+        }
+    }
+
+    private static String decode(byte[] bytes) {
+        MappedText out = new MappedText(4);
+        Utf8.decode(ByteBuffer.wrap(bytes), 0, bytes.length, out);
+        return out.toString();
+    }
+
+    private static boolean isValid(byte[] bytes) {
+        try {
+            StandardCharsets.UTF_8.newDecoder().decode(ByteBuffer.wrap(bytes));
+            return true;
+        } catch (CharacterCodingException e) {
+            return false;
+        }
+    }
+
+    private static byte[] bytes(int... values) {
+        byte[] bytes = new byte[values.length];
+        for (int i = 0; i < values.length; i++)
+            bytes[i] = (byte) values[i];
+        return bytes;
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : bytes)
+            sb.append(String.format("%02x ", b & 0xff));
+        return sb.toString().trim();
+    }
+}
@@ -0,0 +1,323 @@
+package cmu.arktweetnlp.bench;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Makes up tweet-like text, offline and reproducibly: the same seed, mix and
+ * lengths always give the same tweets.
+ *
+ * A tweet is a sequence of pieces of some {@link Kind}, drawn with the weights
+ * of a mix, until it is about as long as asked for. Like real tweets, the
+ * output is HTML-escaped ("&lt;3", "AT&amp;T") unless that is switched off.
+ *
+ * From the command line:
+ * <pre>
+ * java cmu.arktweetnlp.bench.TweetGenerator [-seed N] [-count N] [-min N] [-max N] [-mix MIX] [-noescape]
+ * </pre>
+ * where MIX is one of the {@link #MIXES} or a list like "word=60,url=5,emoticon=10".
+ */
+public final class TweetGenerator {
+
+    public enum Kind {
+        WORD, URL, DOMAIN, EMAIL, EMOTICON, EAST_ASIAN_EMOTE, HASHTAG, MENTION, ENTITY, NUMBER, SMART_QUOTE, PUNCTUATION
+    }
+
+    /** Named mixes, as weights per Kind. */
+    public static final Map<String, String> MIXES;
+    static {
+        Map<String, String> mixes = new LinkedHashMap<String, String>();
+        mixes.put("default", "word=60,url=4,domain=2,email=1,emoticon=5,east_asian_emote=1,hashtag=5,mention=6,entity=3,number=4,smart_quote=3,punctuation=12");
+        mixes.put("plain", "word=85,number=3,punctuation=12");
+        mixes.put("entities", "word=40,entity=25,smart_quote=15,emoticon=5,punctuation=15");
+        mixes.put("links", "word=40,url=20,domain=15,email=10,mention=5,punctuation=10");
+        mixes.put("emotes", "word=40,emoticon=25,east_asian_emote=15,hashtag=5,punctuation=15");
+        MIXES = Collections.unmodifiableMap(mixes);
+    }
+
+    private static final String[] WORDS = {
+        "the", "a", "to", "I", "you", "and", "is", "it", "in", "of", "for", "on", "my", "me", "this", "that",
+        "so", "just", "be", "with", "at", "not", "have", "are", "lol", "love", "RT", "day", "today", "new",
+        "good", "now", "what", "like", "get", "time", "can't", "don't", "I'm", "it's", "we're", "they'll",
+        "omg", "haha", "tonight", "tomorrow", "game", "music", "video", "check", "out", "follow", "happy",
+        "Monday", "Twitter", "people", "really", "never", "always", "Thanks", "great", "gonna", "wanna",
+        "U.S.", "Mr.", "e.g.", "vs.", "ur", "u", "2day", "w/", "soooo", "NOOO", "yes", "please", "why",
+    };
+    private static final String[] TLDS = { "com", "org", "net", "edu", "io", "ly", "me", "tv" };
+    private static final String[] CC_TLDS = {
+        "co.uk", "de", "fr", "jp", "ru", "br", "es", "it", "nl", "ca", "au", "in", "com.au", "co.jp", "ch", "se",
+    };
+    private static final String[] EMOTICONS = {
+        ":)", ":-)", ":(", ":-(", ";)", ";-)", ":D", ":-D", ":P", ":p", ";P", "xD", "XD", ":/", ":'(", ":|",
+        "<3", "</3", "<33", "D:", "(:", "):", "=)", "=D", "^_^", "^^", "-_-", "o.O", "O_o", ">:(", "8)", ":*",
+    };
+    private static final String[] EAST_ASIAN_EMOTES = {
+        "(╯°□°）╯︵ ┻━┻", "ヽ(´ー｀)ノ", "＼(^o^)／", "(^_^)", "(>_<)", "ಠ_ಠ", "(◕‿◕)", "ƪ(˘⌣˘)ʃ",
+        "¯\\_(ツ)_/¯", "(*^▽^*)", "(T_T)", "(｡◕‿◕｡)", "ʘ‿ʘ", "(¬_¬)", "•_•", "♥‿♥",
+    };
+    private static final String[] ENTITIES = {
+        "&amp;", "&lt;", "&gt;", "&quot;", "&#39;", "&apos;", "&amp;amp;", "&amp;lt;", "&hellip;", "&nbsp;",
+        "&#8217;", "&#x2764;", "&copy;", "&eacute;", "&mdash;", "&bogus;",
+    };
+    private static final String[] PUNCTUATION = {
+        ".", ".", ",", ",", "!", "?", "...", "…", "!!", "?!", "!!!", ":", ";", "--", "—", "–", "-", "*",
+    };
+    private static final String[][] QUOTES = {
+        { "“", "”" }, { "‘", "’" }, { "«", "»" }, { "\"", "\"" }, { "''", "''" }, { "'", "'" },
+    };
+    private static final String ALNUM = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
+
+    private static final Kind[] KINDS = Kind.values();
+
+    private final Random random;
+    private final int[] cumulative = new int[KINDS.length];
+    private final int minLength;
+    private final int maxLength;
+    private final boolean escapeHtml;
+
+    public TweetGenerator(long seed, String mix, int minLength, int maxLength) {
+        this(seed, mix, minLength, maxLength, true);
+    }
+
+    public TweetGenerator(long seed, String mix, int minLength, int maxLength, boolean escapeHtml) {
+        if (minLength < 1 || maxLength < minLength)
+            throw new IllegalArgumentException("need 0 < minLength <= maxLength, got " + minLength + ", " + maxLength);
+        this.random = new Random(seed);
+        this.minLength = minLength;
+        this.maxLength = maxLength;
+        this.escapeHtml = escapeHtml;
+
+        int[] weights = parseMix(MIXES.containsKey(mix) ? MIXES.get(mix) : mix);
+        int total = 0;
+        for (int k = 0; k < KINDS.length; k++)
+            cumulative[k] = total += weights[k];
+        if (total == 0)
+            throw new IllegalArgumentException("mix has no positive weights: " + mix);
+    }
+
+    private static int[] parseMix(String mix) {
+        int[] weights = new int[KINDS.length];
+        for (String part : mix.split(",")) {
+            String[] kv = part.trim().split("=");
+            if (kv.length != 2)
+                throw new IllegalArgumentException("expected kind=weight, got '" + part + "' in " + mix);
+            Kind kind = Kind.valueOf(kv[0].trim().toUpperCase());
+            int weight = Integer.parseInt(kv[1].trim());
+            if (weight < 0)
+                throw new IllegalArgumentException("negative weight for " + kind);
+            weights[kind.ordinal()] = weight;
+        }
+        return weights;
+    }
+
+    /** n tweets. */
+    public String[] tweets(int n) {
+        String[] tweets = new String[n];
+        for (int i = 0; i < n; i++)
+            tweets[i] = next();
+        return tweets;
+    }
+
+    /** The next tweet, between minLength and maxLength chars long (or one over-long piece). */
+    public String next() {
+        int target = minLength + random.nextInt(maxLength - minLength + 1);
+        StringBuilder tweet = new StringBuilder(target + 16);
+        StringBuilder piece = new StringBuilder(32);
+        while (tweet.length() < target) {
+            piece.setLength(0);
+            Kind kind = nextKind();
+            append(kind, piece);
+            // punctuation mostly sticks to what comes before it
+            boolean attach = kind == Kind.PUNCTUATION && tweet.length() > 0 && random.nextInt(4) != 0;
+            int space = tweet.length() == 0 || attach ? 0 : 1;
+            if (tweet.length() > 0 && tweet.length() + space + piece.length() > maxLength)
+                break;
+            if (space > 0)
+                tweet.append(random.nextInt(20) == 0 ? "  " : " ");
+            tweet.append(piece);
+        }
+        return tweet.toString();
+    }
+
+    private Kind nextKind() {
+        int r = random.nextInt(cumulative[cumulative.length - 1]);
+        int k = 0;
+        while (cumulative[k] <= r)
+            k++;
+        return KINDS[k];
+    }
+
+    private void append(Kind kind, StringBuilder out) {
+        switch (kind) {
+        case WORD:
+            out.append(pick(WORDS));
+            break;
+        case URL:
+            switch (random.nextInt(4)) {
+            case 0:
+                out.append("http://t.co/");
+                alnum(10, out);
+                break;
+            case 1:
+                out.append("https://www.").append(word()).append('.').append(pick(TLDS)).append('/').append(word());
+                if (random.nextBoolean())
+                    escaped(out.append("?id=").append(random.nextInt(10000)), "&ref=").append(word());
+                break;
+            case 2:
+                out.append("bit.ly/");
+                alnum(6, out);
+                break;
+            default:
+                out.append("www.").append(word()).append(word()).append('.').append(pick(TLDS));
+            }
+            break;
+        case DOMAIN:
+            out.append(word()).append(random.nextBoolean() ? "-" : "").append(word()).append('.').append(pick(CC_TLDS));
+            if (random.nextInt(3) == 0)
+                out.append('/').append(word());
+            break;
+        case EMAIL:
+            out.append(word()).append(random.nextBoolean() ? "." : "_").append(word())
+               .append('@').append(word()).append('.').append(pick(TLDS));
+            break;
+        case EMOTICON:
+            escaped(out, pick(EMOTICONS));
+            break;
+        case EAST_ASIAN_EMOTE:
+            escaped(out, pick(EAST_ASIAN_EMOTES));
+            break;
+        case HASHTAG:
+            out.append('#').append(word());
+            if (random.nextBoolean())
+                out.append(capitalized(word()));
+            if (random.nextInt(4) == 0)
+                out.append(random.nextInt(100));
+            break;
+        case MENTION:
+            if (random.nextInt(5) == 0)
+                out.append("RT ");
+            out.append(random.nextInt(10) == 0 ? '＠' : '@').append(word());
+            if (random.nextBoolean())
+                out.append('_').append(random.nextInt(1000));
+            if (random.nextInt(4) == 0)
+                out.append(':');
+            break;
+        case ENTITY:
+            out.append(pick(ENTITIES));
+            break;
+        case NUMBER:
+            switch (random.nextInt(6)) {
+            case 0:
+                out.append(random.nextInt(1000)).append(',').append(100 + random.nextInt(900));
+                break;
+            case 1:
+                out.append(random.nextInt(100)).append('.').append(random.nextInt(100));
+                break;
+            case 2:
+                out.append('$').append(random.nextInt(100)).append('.').append(10 + random.nextInt(90));
+                break;
+            case 3:
+                out.append(1 + random.nextInt(12)).append(':').append(10 + random.nextInt(50));
+                if (random.nextBoolean())
+                    out.append(random.nextBoolean() ? "pm" : "am");
+                break;
+            case 4:
+                out.append(random.nextInt(101)).append('%');
+                break;
+            default:
+                out.append(random.nextInt(10000));
+            }
+            break;
+        case SMART_QUOTE:
+            if (random.nextInt(3) == 0) {
+                // a curly apostrophe in a contraction
+                out.append(pick(new String[] { "don’t", "can’t", "it’s", "I’m", "you’re", "we’ll" }));
+            } else {
+                String[] quote = QUOTES[random.nextInt(QUOTES.length)];
+                escaped(out, quote[0]).append(word());
+                if (random.nextBoolean())
+                    out.append(' ').append(word());
+                escaped(out, quote[1]);
+            }
+            break;
+        case PUNCTUATION:
+            out.append(pick(PUNCTUATION));
+            break;
+        }
+    }
+
+    /** Appends s, HTML-escaped the way Twitter does it if escaping is on. */
+    private StringBuilder escaped(StringBuilder out, String s) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (escapeHtml && c == '<')
+                out.append("&lt;");
+            else if (escapeHtml && c == '>')
+                out.append("&gt;");
+            else if (escapeHtml && c == '&')
+                out.append("&amp;");
+            else if (escapeHtml && c == '"')
+                out.append("&quot;");
+            else
+                out.append(c);
+        }
+        return out;
+    }
+
+    private String word() {
+        String w = WORDS[random.nextInt(WORDS.length)];
+        // only plain lower case words make good host names, hashtags and the like
+        while (!w.matches("[a-z]+"))
+            w = WORDS[random.nextInt(WORDS.length)];
+        return w;
+    }
+
+    private static String capitalized(String w) {
+        return Character.toUpperCase(w.charAt(0)) + w.substring(1);
+    }
+
+    private void alnum(int n, StringBuilder out) {
+        for (int i = 0; i < n; i++)
+            out.append(ALNUM.charAt(random.nextInt(ALNUM.length())));
+    }
+
+    private String pick(String[] choices) {
+        return choices[random.nextInt(choices.length)];
+    }
+
+    public static void main(String[] args) throws IOException {
+        long seed = 42;
+        int count = 10000, min = 20, max = 140;
+        String mix = "default";
+        boolean escape = true;
+        for (int a = 0; a < args.length; a++) {
+            if (args[a].equals("-seed") && a + 1 < args.length)
+                seed = Long.parseLong(args[++a]);
+            else if (args[a].equals("-count") && a + 1 < args.length)
+                count = Integer.parseInt(args[++a]);
+            else if (args[a].equals("-min") && a + 1 < args.length)
+                min = Integer.parseInt(args[++a]);
+            else if (args[a].equals("-max") && a + 1 < args.length)
+                max = Integer.parseInt(args[++a]);
+            else if (args[a].equals("-mix") && a + 1 < args.length)
+                mix = args[++a];
+            else if (args[a].equals("-noescape"))
+                escape = false;
+            else
+                throw new IllegalArgumentException("unknown argument " + args[a] + "; known mixes: " + MIXES.keySet()
+                        + ", kinds: " + Arrays.toString(KINDS));
+        }
+        TweetGenerator generator = new TweetGenerator(seed, mix, min, max, escape);
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out, "UTF-8"));
+        for (int i = 0; i < count; i++)
+            out.append(generator.next()).append('\n');
+        out.flush();
+    }
+}